@@ -31,6 +31,7 @@ public class SyncConfig {
   private String emailDomain;
   private boolean removeRequiredActions;
   private int auditEventRepositoryCapacity;
+  private int concurrency = 1;
   private List<String> enabledApps = new ArrayList<>();
 
   public String getEmailDomain() {
@@ -57,6 +58,18 @@ public class SyncConfig {
     this.auditEventRepositoryCapacity = auditEventRepositoryCapacity;
   }
 
+  /**
+   * Number of applications which are synced concurrently. With
+   * <code>1</code> (default) the applications are synced one after another.
+   */
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  public void setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
   public List<String> getEnabledApps() {
     return enabledApps;
   }
@@ -43,6 +43,9 @@ public class SyncInfoContributor implements InfoContributor {
     Map<String, Object> syncDetails = new HashMap<>();
     syncDetails.put("apps", appNames);
     syncDetails.put("lastSync", syncTask.getLastSyncTime());
+    Map<String, Long> durations = new HashMap<>();
+    syncTask.getLastSyncDurations().forEach((name, duration) -> durations.put(name, duration.toMillis()));
+    syncDetails.put("lastSyncMillis", durations);
     builder.withDetail("sync", syncDetails);
   }
 }
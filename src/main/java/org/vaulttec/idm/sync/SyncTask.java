@@ -17,17 +17,32 @@
  */
 package org.vaulttec.idm.sync;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.vaulttec.idm.sync.app.Application;
 import org.vaulttec.idm.sync.idp.IdentityProvider;
+import org.vaulttec.idm.sync.idp.IdpSnapshot;
 import org.vaulttec.idm.sync.idp.model.IdpGroup;
 import org.vaulttec.idm.sync.idp.model.IdpUser;
 import org.vaulttec.util.StringUtils;
@@ -40,6 +55,8 @@ public class SyncTask {
   private final IdentityProvider idp;
   private final List<Application> applications;
   private final SyncConfig syncConfig;
+  private final Map<String, Duration> lastSyncDurations = new ConcurrentHashMap<>();
+  private ExecutorService executor;
   private Instant lastSyncTime;
 
   SyncTask(IdentityProvider idp, List<Application> applications, SyncConfig syncConfig) {
@@ -52,22 +69,53 @@ public class SyncTask {
     return lastSyncTime;
   }
 
+  /**
+   * Returns the duration of the last sync of each application (by name).
+   */
+  public Map<String, Duration> getLastSyncDurations() {
+    return Collections.unmodifiableMap(lastSyncDurations);
+  }
+
+  /**
+   * Syncs the enabled applications with the identity provider.
+   * <p>
+   * The identity provider's groups and users needed by the applications are
+   * retrieved only once per sync into an {@link IdpSnapshot}. Every
+   * application syncs its own copy of the groups matching its group search.
+   * The users' required actions are removed (if enabled) before any
+   * application is synced.
+   * <p>
+   * With a {@link SyncConfig#getConcurrency() concurrency} greater than one the
+   * applications are synced concurrently and the users' attributes modified by
+   * the applications are written back to the identity provider once all
+   * applications are finished. So an application doesn't see the attributes
+   * written by another application before the next sync.
+   */
   @Scheduled(fixedRateString = "${sync.rate}")
   public void sync() {
     LOG.info("Start syncing...");
     if (idp.authenticate()) {
-      for (Application app : applications) {
-        if (syncConfig.getEnabledApps().contains("*") || syncConfig.getEnabledApps().contains(app.getId())) {
-          LOG.info("Syncing '{}'", app.getName());
-          List<IdpGroup> groups = idp.getGroups(app.getGroupSearch());
-          if (groups != null && !groups.isEmpty()) {
-            Map<String, IdpUser> users = retrieveMembersForGroups(groups);
-            if (users != null) {
-              addMissingEmail(users);
-              removeRequiredActions(users);
-              app.sync(groups);
-              updateModifiedUserAttributes(users);
-            }
+      List<Application> apps = applications.stream().filter(this::isEnabled).collect(Collectors.toList());
+      IdpSnapshot snapshot = IdpSnapshot.retrieve(idp,
+          apps.stream().map(Application::getGroupSearch).collect(Collectors.toCollection(LinkedHashSet::new)));
+      if (syncConfig.isRemoveRequiredActions()) {
+        removeRequiredActions(snapshot, apps);
+      }
+      if (syncConfig.getConcurrency() > 1 && apps.size() > 1) {
+        IdpSnapshot appSnapshot = snapshot;
+        List<CompletableFuture<Map<String, IdpUser>>> appUsers = new ArrayList<>(apps.size());
+        for (Application app : apps) {
+          appUsers.add(CompletableFuture.supplyAsync(() -> syncApplication(app, appSnapshot), getExecutor()));
+        }
+        writeBack(snapshot, appUsers.stream().map(CompletableFuture::join).filter(Objects::nonNull)
+            .collect(Collectors.toList()));
+      } else {
+        for (Application app : apps) {
+          Map<String, IdpUser> users = syncApplication(app, snapshot);
+          if (users != null) {
+
+            // The next application sees the attributes written by this one
+            snapshot = snapshot.withUserAttributes(writeBack(snapshot, List.of(users)));
           }
         }
       }
@@ -76,27 +124,62 @@ public class SyncTask {
     LOG.info("Finished syncing...");
   }
 
+  private boolean isEnabled(Application app) {
+    return syncConfig.getEnabledApps().contains("*") || syncConfig.getEnabledApps().contains(app.getId());
+  }
+
   /**
-   * Returns a map with all users which are members of the given list of groups.
-   * <p>
-   * These groups and users or linked with each other by the attributes
-   * <code>IdpGroup.members</code> and <code>IdpUser.groups</code>.
+   * Syncs the given application and returns its users for writing back their
+   * modified attributes - or <code>null</code> if the application's groups or
+   * users couldn't be retrieved or the sync failed.
    */
-  private Map<String, IdpUser> retrieveMembersForGroups(List<IdpGroup> groups) {
+  private Map<String, IdpUser> syncApplication(Application app, IdpSnapshot snapshot) {
+    LOG.info("Syncing '{}'", app.getName());
+    long start = System.nanoTime();
+    try {
+      List<IdpGroup> groups = snapshot.getGroups(app.getGroupSearch());
+      if (groups != null && !groups.isEmpty()) {
+        Map<String, IdpUser> users = getMembers(groups);
+        addMissingEmail(users);
+        app.sync(groups);
+        return users;
+      }
+    } catch (RuntimeException e) {
+      LOG.error("Syncing '{}' failed", app.getName(), e);
+    } finally {
+      Duration duration = Duration.ofNanos(System.nanoTime() - start);
+      lastSyncDurations.put(app.getName(), duration);
+      LOG.info("Finished syncing '{}' in {} ms", app.getName(), duration.toMillis());
+    }
+    return null;
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sync-");
+      threadFactory.setDaemon(true);
+      executor = Executors.newFixedThreadPool(syncConfig.getConcurrency(), threadFactory);
+    }
+    return executor;
+  }
+
+  /**
+   * Returns a map with all users (by id) which are members of the given list
+   * of groups.
+   */
+  private Map<String, IdpUser> getMembers(List<IdpGroup> groups) {
     Map<String, IdpUser> users = new HashMap<>();
     for (IdpGroup group : groups) {
-      List<IdpUser> members = idp.getGroupMembers(group);
-      if (members == null) {
-        return null;
-      } else {
-        for (IdpUser member : members) {
-          if (!users.containsKey(member.getId())) {
-            users.put(member.getId(), member);
-          }
-          IdpUser user = users.get(member.getId());
-          user.addGroup(group);
-          group.addMember(user);
-        }
+      for (IdpUser member : group.getMembers()) {
+        users.putIfAbsent(member.getId(), member);
       }
     }
     return users;
@@ -110,18 +193,74 @@ public class SyncTask {
     }
   }
 
-  private void removeRequiredActions(Map<String, IdpUser> users) {
-    for (IdpUser user : users.values()) {
-      if (!user.getRequiredActions().isEmpty() && syncConfig.isRemoveRequiredActions()) {
-        idp.removeRequiredActions(user);
+  /**
+   * Writes the modifications of the given applications' users back
+   * to the identity provider. Each application works on its own copy of a
+   * user, so the attributes modified by the different applications are merged
+   * and every user is updated only once. If multiple applications modified the
+   * same attribute then the value of the last application (in the order of the
+   * given list) is written.
+   *
+   * @return the attributes (by user id) written to the identity provider
+   */
+  private Map<String, Map<String, List<String>>> writeBack(IdpSnapshot snapshot,
+      List<Map<String, IdpUser>> appUsers) {
+    Map<String, IdpUser> users = new LinkedHashMap<>();
+    Map<String, Map<String, List<String>>> modifiedAttributes = new LinkedHashMap<>();
+    for (Map<String, IdpUser> usersOfApp : appUsers) {
+      for (IdpUser user : usersOfApp.values()) {
+        users.putIfAbsent(user.getId(), user);
+        if (user.isAttributesModified()) {
+          modifiedAttributes.computeIfAbsent(user.getId(), id -> new HashMap<>())
+              .putAll(getModifiedAttributes(user, snapshot.getUserAttributes(user.getId())));
+        }
+      }
+    }
+    Map<String, Map<String, List<String>>> writtenAttributes = new HashMap<>();
+    modifiedAttributes.forEach((id, attributes) -> {
+      if (!attributes.isEmpty() && idp.updateUserAttributes(users.get(id), attributes)) {
+        writtenAttributes.put(id, attributes);
+      }
+    });
+    return writtenAttributes;
+  }
+
+  /**
+   * Returns the attributes of the given user which were added, changed or
+   * (with a <code>null</code> value) removed compared to the given original
+   * ones.
+   */
+  private Map<String, List<String>> getModifiedAttributes(IdpUser user, Map<String, List<String>> original) {
+    Map<String, List<String>> current = user.getAttributes() != null ? user.getAttributes() : Map.of();
+    Map<String, List<String>> modified = new HashMap<>();
+    current.forEach((name, values) -> {
+      if (!Objects.equals(values, original.get(name))) {
+        modified.put(name, values);
+      }
+    });
+    original.keySet().stream().filter(name -> !current.containsKey(name)).forEach(name -> modified.put(name, null));
+    return modified;
+  }
+
+  /**
+   * Removes the required actions of the members of the given applications'
+   * groups before any application is synced - once per user.
+   */
+  private void removeRequiredActions(IdpSnapshot snapshot, List<Application> apps) {
+    Map<String, IdpUser> users = new LinkedHashMap<>();
+    for (Application app : apps) {
+      List<IdpGroup> groups = snapshot.getGroups(app.getGroupSearch());
+      if (groups != null) {
+        getMembers(groups).forEach(users::putIfAbsent);
       }
     }
+    removeRequiredActions(users);
   }
 
-  private void updateModifiedUserAttributes(Map<String, IdpUser> users) {
+  private void removeRequiredActions(Map<String, IdpUser> users) {
     for (IdpUser user : users.values()) {
-      if (user.isAttributesModified()) {
-        idp.updateUserAttributes(user, user.getAttributes());
+      if (!user.getRequiredActions().isEmpty() && syncConfig.isRemoveRequiredActions()) {
+        idp.removeRequiredActions(user);
       }
     }
   }
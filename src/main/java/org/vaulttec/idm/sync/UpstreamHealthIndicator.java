@@ -0,0 +1,54 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health.Builder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the readiness of the upstreams warmed up by the
+ * {@link UpstreamWarmUp}: <code>UP</code> if all upstreams are ready,
+ * <code>OUT_OF_SERVICE</code> while the warm-up is in progress and
+ * <code>DOWN</code> if any upstream is unavailable.
+ */
+@Component
+public class UpstreamHealthIndicator extends AbstractHealthIndicator {
+
+  private final UpstreamWarmUp warmUp;
+
+  UpstreamHealthIndicator(UpstreamWarmUp warmUp) {
+    super("Upstream health check failed");
+    this.warmUp = warmUp;
+  }
+
+  @Override
+  protected void doHealthCheck(Builder builder) {
+    Map<String, UpstreamWarmUp.State> states = warmUp.getStates();
+    if (states.containsValue(UpstreamWarmUp.State.UNAVAILABLE)) {
+      builder.down();
+    } else if (states.containsValue(UpstreamWarmUp.State.PENDING)) {
+      builder.outOfService();
+    } else {
+      builder.up();
+    }
+    states.forEach((id, state) -> builder.withDetail(id, state));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.vaulttec.idm.sync.app.Application;
+import org.vaulttec.idm.sync.idp.IdentityProvider;
+
+/**
+ * Warms up the connections to the identity provider and the enabled
+ * applications after startup, so the first sync doesn't pay for the connection
+ * setup, TLS handshakes and JIT compilation.
+ * <p>
+ * Every upstream is probed in the background via a cheap authenticated API
+ * call. Unavailable upstreams are probed again every
+ * {@value #RETRY_INTERVAL_SECONDS} seconds until all upstreams are ready. The
+ * readiness is reported by the {@link UpstreamHealthIndicator}.
+ */
+@Component
+public class UpstreamWarmUp {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UpstreamWarmUp.class);
+  static final int RETRY_INTERVAL_SECONDS = 30;
+
+  public enum State {
+    PENDING, READY, UNAVAILABLE
+  }
+
+  private final Map<String, BooleanSupplier> probes = new LinkedHashMap<>();
+  private final Map<String, State> states = Collections.synchronizedMap(new LinkedHashMap<>());
+  private ScheduledExecutorService executor;
+
+  UpstreamWarmUp(IdentityProvider idp, List<Application> applications, SyncConfig syncConfig) {
+    probes.put(idp.getId(), idp::probe);
+    for (Application app : applications) {
+      if (syncConfig.getEnabledApps().contains("*") || syncConfig.getEnabledApps().contains(app.getId())) {
+        probes.put(app.getId(), app::probe);
+      }
+    }
+    probes.keySet().forEach(id -> states.put(id, State.PENDING));
+  }
+
+  /**
+   * Returns the state of every upstream by its ID.
+   */
+  public Map<String, State> getStates() {
+    synchronized (states) {
+      return new LinkedHashMap<>(states);
+    }
+  }
+
+  @EventListener(ApplicationStartedEvent.class)
+  public synchronized void start() {
+    if (executor == null) {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("upstream-warm-up-");
+      threadFactory.setDaemon(true);
+      // One thread for scheduling plus one per upstream probed concurrently
+      executor = Executors.newScheduledThreadPool(probes.size() + 1, threadFactory);
+      executor.scheduleWithFixedDelay(this::probeUpstreams, 0, RETRY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Probes all upstreams which aren't ready yet concurrently. When all of them
+   * are ready the warm-up is finished.
+   */
+  void probeUpstreams() {
+    Map<String, CompletableFuture<Boolean>> results = new LinkedHashMap<>();
+    probes.forEach((id, probe) -> {
+      if (states.get(id) != State.READY) {
+        results.put(id, CompletableFuture.supplyAsync(() -> probe(id, probe), executor));
+      }
+    });
+    results.forEach((id, result) -> states.put(id, result.join() ? State.READY : State.UNAVAILABLE));
+    if (!states.containsValue(State.PENDING) && !states.containsValue(State.UNAVAILABLE)) {
+      LOG.info("Warmed up upstreams {}", states.keySet());
+      executor.shutdown();
+    }
+  }
+
+  private boolean probe(String id, BooleanSupplier probe) {
+    long start = System.currentTimeMillis();
+    try {
+      if (probe.getAsBoolean()) {
+        LOG.debug("Upstream '{}' ready after {} ms", id, System.currentTimeMillis() - start);
+        return true;
+      }
+    } catch (RuntimeException e) {
+      LOG.debug("Probing upstream '{}' failed", id, e);
+    }
+    LOG.warn("Upstream '{}' unavailable - probing again in {} s", id, RETRY_INTERVAL_SECONDS);
+    return false;
+  }
+}
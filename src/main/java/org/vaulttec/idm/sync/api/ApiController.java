@@ -34,6 +34,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.vaulttec.idm.sync.app.Application;
+import org.vaulttec.idm.sync.app.http.RequestPriority;
 import org.vaulttec.idm.sync.app.model.AppApplication;
 import org.vaulttec.idm.sync.app.model.AppOrganization;
 import org.vaulttec.idm.sync.app.model.AppStatistics;
@@ -43,6 +44,11 @@ import org.vaulttec.idm.sync.idp.model.IdpGroup;
 import org.vaulttec.idm.sync.idp.model.IdpGroupRepresentation;
 import org.vaulttec.idm.sync.idp.model.IdpUser;
 
+/**
+ * Read-only REST API. The upstream requests of the API are sent with
+ * {@link RequestPriority#API} (or {@link RequestPriority#STATISTICS}) so they
+ * don't compete with the sync for the upstream servers' budget.
+ */
 @RestController
 @RequestMapping("/api")
 public class ApiController {
@@ -68,10 +74,12 @@ public class ApiController {
       @RequestParam(name = "search", required = false) String search) {
     Application application = getApplication(appId);
     LOG.debug("Getting groups for application '{}'", application.getName());
-    if (idp.authenticate()) {
-      return getOrganisations(application, search).values();
-    }
-    return null;
+    return RequestPriority.callWithPriority(RequestPriority.API, () -> {
+      if (idp.authenticate()) {
+        return getOrganisations(application, search).values();
+      }
+      return null;
+    });
   }
 
   private Application getApplication(String appId) {
@@ -106,10 +114,12 @@ public class ApiController {
       @PathVariable("orgName") String orgName) {
     Application application = getApplication(appId);
     LOG.debug("Getting members of organization '{}' of application '{}'", orgName, application.getName());
-    if (idp.authenticate()) {
-      return getOrganisationMembers(application, orgName).values();
-    }
-    return null;
+    return RequestPriority.callWithPriority(RequestPriority.API, () -> {
+      if (idp.authenticate()) {
+        return getOrganisationMembers(application, orgName).values();
+      }
+      return null;
+    });
   }
 
   private Map<String, AppUser> getOrganisationMembers(Application application, String orgName) {
@@ -150,10 +160,12 @@ public class ApiController {
   public @ResponseBody List<AppStatistics> getOrganizationsStatistics(@PathVariable("appId") String appId) {
     Application application = getApplication(appId);
     LOG.debug("Getting statistics for application '{}'", application.getName());
-    if (idp.authenticate()) {
-      return application.getStatistics();
-    }
-    return null;
+    return RequestPriority.callWithPriority(RequestPriority.STATISTICS, () -> {
+      if (idp.authenticate()) {
+        return application.getStatistics();
+      }
+      return null;
+    });
   }
 
   @GetMapping("/{appId}/users")
@@ -161,10 +173,12 @@ public class ApiController {
       @RequestParam(name = "search", required = false) String search) {
     Application application = getApplication(appId);
     LOG.debug("Getting users for application '{}'", application.getName());
-    if (idp.authenticate()) {
-      return getUsers(application, search).values();
-    }
-    return null;
+    return RequestPriority.callWithPriority(RequestPriority.API, () -> {
+      if (idp.authenticate()) {
+        return getUsers(application, search).values();
+      }
+      return null;
+    });
   }
 
   private Map<String, AppUser> getUsers(Application application, String search) {
@@ -17,48 +17,211 @@
  */
 package org.vaulttec.idm.sync.app;
 
-import java.net.InetSocketAddress;
-import java.net.Proxy;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import org.springframework.web.client.HttpClientErrorException.TooManyRequests;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import org.vaulttec.idm.sync.app.http.Bulkhead;
+import org.vaulttec.idm.sync.app.http.CallNotPermittedException;
+import org.vaulttec.idm.sync.app.http.CircuitBreaker;
+import org.vaulttec.idm.sync.app.http.CircuitBreakerInterceptor;
+import org.vaulttec.idm.sync.app.http.CompiledUriTemplate;
+import org.vaulttec.idm.sync.app.http.CompressionInterceptor;
+import org.vaulttec.idm.sync.app.http.ConditionalGetCache;
+import org.vaulttec.idm.sync.app.http.JdkClientHttpRequestFactory;
+import org.vaulttec.idm.sync.app.http.MetricsInterceptor;
+import org.vaulttec.idm.sync.app.http.RateLimitInterceptor;
+import org.vaulttec.idm.sync.app.http.RateLimiter;
+import org.vaulttec.idm.sync.app.http.RequestAbort;
+import org.vaulttec.idm.sync.app.http.RequestPriority;
+import org.vaulttec.idm.sync.app.http.RequestTimeouts;
+import org.vaulttec.idm.sync.app.http.RestClientMetrics;
+import org.vaulttec.idm.sync.app.http.RetryPolicy;
+import org.vaulttec.idm.sync.app.http.SingleFlightInterceptor;
+import org.vaulttec.util.BoundedExecutor;
+import org.vaulttec.util.VirtualThreads;
 
 public abstract class AbstractRestClient extends AbstractClient {
 
   private static final Logger LOG = LoggerFactory.getLogger(AbstractRestClient.class);
+  private static final int MAX_URI_TEMPLATES = 1000;
 
   protected final RestTemplate restTemplate;
+  protected final RestClientSettings settings;
+  protected final RateLimiter rateLimiter;
+  protected final RetryPolicy retryPolicy;
+  protected final CircuitBreaker circuitBreaker;
+  protected final Bulkhead bulkhead;
+  protected final ConditionalGetCache responseCache;
+  protected final RestClientMetrics metrics;
   protected HttpEntity<String> authenticationEntity;
+  private final Map<String, CompiledUriTemplate> uriTemplates = new ConcurrentHashMap<>();
   protected int retryWaitSeconds;
+  private volatile ExecutorService pagingExecutor;
+  private volatile Executor asyncExecutor;
 
-  public AbstractRestClient(String serverUrl, int perPage, int retryWaitSeconds, String proxyHost, int proxyPort) {
+  public AbstractRestClient(String serverUrl, int perPage, int retryWaitSeconds, String proxyHost, int proxyPort,
+      RestClientSettings settings) {
     super(serverUrl, perPage);
     this.retryWaitSeconds = retryWaitSeconds;
-    this.restTemplate = createRestTemplate(proxyHost, proxyPort);
+    this.settings = settings;
+    this.restTemplate = createRestTemplate(proxyHost, proxyPort, settings);
+    this.metrics = settings.isMetricsEnabled() && settings.getMeterRegistry() != null
+        ? new RestClientMetrics(settings.getMeterRegistry(), getName(), serverUrl, getApiPath())
+        : null;
+    this.rateLimiter = new RateLimiter(serverUrl, settings.getRateLimitPermitsPerSecond(),
+        settings.isRateLimitAdaptive());
+    this.retryPolicy = settings.getRetryPolicy();
+    this.circuitBreaker = new CircuitBreaker(serverUrl, settings.getCircuitBreakerFailureThreshold(),
+        settings.getCircuitBreakerOpenDurationMillis(), settings.getCircuitBreakerHalfOpenCalls());
+    this.bulkhead = new Bulkhead(serverUrl, settings.getBulkheadMaxConcurrentCalls(),
+        settings.getBulkheadMaxWaitMillis());
+    restTemplate.getInterceptors().add(0, new CircuitBreakerInterceptor(circuitBreaker, bulkhead));
+
+    // Wait for the rate limiter before taking a bulkhead slot, otherwise a
+    // pause (e.g. after a 429 response) holds the slots and the other requests
+    // are rejected by the bulkhead
+    restTemplate.getInterceptors().add(0, new RateLimitInterceptor(rateLimiter, retryWaitSeconds, metrics));
+
+    // Coalesce identical requests before they use any of the upstream's
+    // permits
+    if (settings.isSingleFlightEnabled()) {
+      restTemplate.getInterceptors().add(0, new SingleFlightInterceptor());
+    }
+    if (settings.getCacheMaxEntries() > 0) {
+      this.responseCache = new ConditionalGetCache(settings.getCacheMaxEntries());
+      restTemplate.getInterceptors().add(responseCache);
+    } else {
+      this.responseCache = null;
+    }
+
+    // Time the requests without the waits for the rate limiter and bulkhead
+    if (metrics != null) {
+      restTemplate.getInterceptors().add(new MetricsInterceptor(metrics));
+    }
+
+    // Decompress before the response is seen by the other interceptors
+    if (settings.isCompressionEnabled()) {
+      restTemplate.getInterceptors().add(new CompressionInterceptor(metrics));
+    }
   }
 
-  protected RestTemplate createRestTemplate(String proxyHost, int proxyPort) {
+  /**
+   * Creates a {@link RestTemplate} backed by a pool of keep-alive connections
+   * or by a HTTP/2 client (depending on the settings' transport). The socket
+   * timeout of every request depends on the {@link RequestTimeouts.Profile} it
+   * is sent with.
+   */
+  protected RestTemplate createRestTemplate(String proxyHost, int proxyPort, RestClientSettings settings) {
+    RequestTimeouts timeouts = new RequestTimeouts(settings.getReadTimeoutMillis(), settings.getWriteTimeoutMillis(),
+        settings.getListingTimeoutMillis());
+    if (settings.getTransport() == RestClientSettings.Transport.HTTP2) {
+      return new RestTemplate(new JdkClientHttpRequestFactory(java.net.http.HttpClient.Version.HTTP_2, proxyHost,
+          proxyPort, settings.getConnectTimeoutMillis(), timeouts));
+    }
+    RequestConfig requestConfig = createRequestConfig(settings);
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(createHttpClient(proxyHost, proxyPort,
+        settings)) {
+      @Override
+      protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+        HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+        RequestAbort.register(request::abort);
+        return request;
+      }
+
+      @Override
+      protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.copy(requestConfig)
+            .setSocketTimeout(timeouts.getTimeoutMillis(httpMethod)).build());
+        return context;
+      }
+    });
+  }
+
+  protected RequestConfig createRequestConfig(RestClientSettings settings) {
+    return RequestConfig.custom().setConnectTimeout(settings.getConnectTimeoutMillis())
+        .setSocketTimeout(settings.getReadTimeoutMillis())
+        .setConnectionRequestTimeout(settings.getConnectionRequestTimeoutMillis()).build();
+  }
+
+  protected PoolingHttpClientConnectionManager createConnectionManager(RestClientSettings settings) {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(settings.getMaxConnections());
+    connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+    return connectionManager;
+  }
+
+  protected HttpClient createHttpClient(String proxyHost, int proxyPort, RestClientSettings settings) {
+    PoolingHttpClientConnectionManager connectionManager = createConnectionManager(settings);
+    RequestConfig requestConfig = createRequestConfig(settings);
+
+    // Use system properties (e.g. "http.proxyHost") like the JDK's
+    // HttpURLConnection does if no explicit proxy is given. Compression is
+    // negotiated by the CompressionInterceptor (to count the transferred
+    // bytes).
+    HttpClientBuilder builder = HttpClientBuilder.create().useSystemProperties()
+        .setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig).evictExpiredConnections()
+        .evictIdleConnections(settings.getIdleConnectionTimeoutSeconds(), TimeUnit.SECONDS)
+        .disableContentCompression();
     if (proxyHost != null) {
-      SimpleClientHttpRequestFactory clientHttpReq = new SimpleClientHttpRequestFactory();
-      Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
-      clientHttpReq.setProxy(proxy);
-      return new RestTemplate(clientHttpReq);
+      builder.setProxy(new HttpHost(proxyHost, proxyPort));
     }
-    return new RestTemplate();
+    return builder.build();
+  }
+
+  /**
+   * Returns the client's name used with its metrics, e.g. <code>gitlab</code>
+   * for the <code>GitLabClient</code>.
+   */
+  protected String getName() {
+    return getClass().getSimpleName().replaceFirst("Client$", "").toLowerCase();
+  }
+
+  /**
+   * Returns the metrics of the client's API calls (or <code>null</code> if
+   * disabled).
+   */
+  public RestClientMetrics getMetrics() {
+    return metrics;
   }
 
   protected String getApiUrl(String apiCall) {
@@ -78,169 +241,430 @@ public abstract class AbstractRestClient extends AbstractClient {
     return uriVariables;
   }
 
+  /**
+   * Expands the given URL template with the given variables. The template is
+   * compiled once and cached by this client (the number of templates is limited
+   * by the API calls the client makes).
+   */
+  protected URI expandUrl(String url, Map<String, String> uriVariables) {
+    CompiledUriTemplate template = uriTemplates.get(url);
+    if (template == null) {
+      template = CompiledUriTemplate.compile(url);
+      if (uriTemplates.size() < MAX_URI_TEMPLATES) {
+        uriTemplates.putIfAbsent(url, template);
+      }
+    }
+    return template.expand(uriVariables);
+  }
+
+  /**
+   * Creates the (read-only) headers used with every API call. These are shared
+   * by the entities of all calls.
+   */
   protected void prepareAuthenticationEntity(String headerName, String headerValue) {
     HttpHeaders headers = new HttpHeaders();
     headers.setContentType(MediaType.APPLICATION_JSON);
     headers.set(headerName, headerValue);
-    authenticationEntity = new HttpEntity<String>(headers);
+    authenticationEntity = new HttpEntity<String>(HttpHeaders.readOnlyHttpHeaders(headers));
   }
 
   protected <T> T makeReadApiCall(String apiCall, ParameterizedTypeReference<T> typeReference,
       Map<String, String> uriVariables) {
     String url = getApiUrl(apiCall);
-    for (int retries = 1; retries >= 0; retries--) {
-      try {
-        ResponseEntity<T> response = restTemplate.exchange(url, HttpMethod.GET, authenticationEntity, typeReference,
-            uriVariables);
-        return response.getBody();
-      } catch (TooManyRequests e) {
-
-        // API rate limit exceeded: we have to wait and retry
-        sleep(retryWaitSeconds);
-      } catch (Exception e) {
-        logException(HttpMethod.GET, uriVariables, url, e);
-        return null;
-      }
+    try {
+      URI uri = expandUrl(url, uriVariables);
+      return executeWithRetry(HttpMethod.GET, url,
+          () -> restTemplate.exchange(uri, HttpMethod.GET, authenticationEntity, typeReference).getBody());
+    } catch (Exception e) {
+      logException(HttpMethod.GET, uriVariables, url, e);
+      return null;
     }
-    return null;
   }
 
   protected <T> List<T> makeReadListApiCall(String apiCall, ParameterizedTypeReference<List<T>> typeReference,
       Map<String, String> uriVariables) {
-    String url = getApiUrl(apiCall);
-    for (int retries = 1; retries >= 0; retries--) {
-      try {
-        ResponseEntity<List<T>> response = restTemplate.exchange(url, HttpMethod.GET, authenticationEntity,
-            typeReference, uriVariables);
-        return response.getBody();
-      } catch (TooManyRequests e) {
-
-        // API rate limit exceeded: we have to wait and retry
-        sleep(retryWaitSeconds);
-      } catch (Exception e) {
-        logException(HttpMethod.GET, uriVariables, url, e);
-        return null;
-      }
+    return RequestTimeouts.callWithProfile(RequestTimeouts.Profile.LISTING,
+        () -> makeReadApiCall(apiCall, typeReference, uriVariables));
+  }
+
+  /**
+   * Retrieves a (paged) listing and hands over the entities of each page to the
+   * given consumer as soon as the page is available (in page order). So the
+   * caller doesn't have to keep the whole listing in memory.
+   * <p>
+   * This default implementation retrieves the listing as a whole via
+   * {@link #makeReadListApiCall(String, ParameterizedTypeReference, Map)}.
+   *
+   * @return <code>false</code> if retrieving the listing failed (the consumer
+   *         may have received some of the pages before)
+   */
+  protected <T> boolean makeReadPagedApiCall(String apiCall, ParameterizedTypeReference<List<T>> typeReference,
+      Map<String, String> uriVariables, Consumer<List<T>> pageConsumer) {
+    List<T> entities = makeReadListApiCall(apiCall, typeReference, uriVariables);
+    if (entities == null) {
+      return false;
     }
-    return null;
+    pageConsumer.accept(entities);
+    return true;
   }
 
   protected boolean makeWriteApiCall(String apiCall, HttpMethod method, Map<String, String> uriVariables) {
-    String url = getApiUrl(apiCall);
-    for (int retries = 1; retries >= 0; retries--) {
-      try {
-        restTemplate.exchange(url, method, authenticationEntity, Void.class, uriVariables);
-        return true;
-      } catch (TooManyRequests e) {
-
-        // API rate limit exceeded: we have to wait and retry
-        sleep(retryWaitSeconds);
-      } catch (Exception e) {
-        logException(method, uriVariables, url, e);
-        return false;
-      }
-    }
-    return false;
+    return makeWriteApiCall(apiCall, method, authenticationEntity, uriVariables);
   }
 
   protected <T> T makeWriteApiCall(String apiCall, Class<T> type, Map<String, String> uriVariables) {
-    String url = getApiUrl(apiCall);
-    for (int retries = 1; retries >= 0; retries--) {
-      try {
-        return restTemplate.postForObject(url, authenticationEntity, type, uriVariables);
-      } catch (TooManyRequests e) {
-
-        // API rate limit exceeded: we have to wait and retry
-        sleep(retryWaitSeconds);
-      } catch (Exception e) {
-        logException(HttpMethod.POST, uriVariables, url, e);
-        return null;
-      }
-    }
-    return null;
+    return makeWriteApiCall(apiCall, authenticationEntity, type, uriVariables);
   }
 
   protected boolean makeWriteApiCall(String apiCall, HttpMethod method, HttpEntity<String> entity,
       Map<String, String> uriVariables) {
     String url = getApiUrl(apiCall);
-    for (int retries = 1; retries >= 0; retries--) {
-      try {
-        restTemplate.exchange(url, method, entity, Void.class, uriVariables);
-        return true;
-      } catch (TooManyRequests e) {
-
-        // API rate limit exceeded: we have to wait and retry
-        sleep(retryWaitSeconds);
-      } catch (Exception e) {
-        logException(method, uriVariables, url, e);
-        return false;
-      }
+    try {
+      URI uri = expandUrl(url, uriVariables);
+      executeWithRetry(method, url, () -> restTemplate.exchange(uri, method, entity, Void.class));
+      return true;
+    } catch (Exception e) {
+      logException(method, uriVariables, url, e);
+      return false;
     }
-    return false;
   }
 
   protected <T> T makeWriteApiCall(String apiCall, HttpEntity<String> entity, Class<T> type,
       Map<String, String> uriVariables) {
     String url = getApiUrl(apiCall);
-    for (int retries = 1; retries >= 0; retries--) {
-      try {
-        return restTemplate.postForObject(url, entity, type, uriVariables);
-      } catch (TooManyRequests e) {
-
-        // API rate limit exceeded: we have to wait and retry
-        sleep(retryWaitSeconds);
-      } catch (Exception e) {
-        logException(HttpMethod.POST, uriVariables, url, e);
-        return null;
-      }
+    try {
+      URI uri = expandUrl(url, uriVariables);
+      return executeWithRetry(HttpMethod.POST, url, () -> restTemplate.postForObject(uri, entity, type));
+    } catch (Exception e) {
+      logException(HttpMethod.POST, uriVariables, url, e);
+      return null;
     }
-    return null;
   }
 
   protected <T> T makeWriteApiCall(String apiCall, HttpEntity<String> entity, Class<T> type) {
     String url = getApiUrl(apiCall);
-    for (int retries = 1; retries >= 0; retries--) {
+    try {
+      URI uri = expandUrl(url, Collections.emptyMap());
+      return executeWithRetry(HttpMethod.POST, url, () -> restTemplate.postForObject(uri, entity, type));
+    } catch (Exception e) {
+      logException(HttpMethod.POST, null, url, e);
+      return null;
+    }
+  }
+
+  /**
+   * Retrieves the given URL (a page of a listing) via GET with retries
+   * according to the {@link RetryPolicy} and with the listing timeout.
+   */
+  protected <T> ResponseEntity<T> exchangeWithRetry(String url, ParameterizedTypeReference<T> typeReference,
+      Map<String, String> uriVariables) {
+    URI uri = expandUrl(url, uriVariables);
+    return executeWithRetry(HttpMethod.GET, url, () -> RequestTimeouts.callWithProfile(
+        RequestTimeouts.Profile.LISTING,
+        () -> restTemplate.exchange(uri, HttpMethod.GET, authenticationEntity, typeReference)));
+  }
+
+  protected <T> ResponseEntity<T> exchangeWithRetry(URI uri, ParameterizedTypeReference<T> typeReference) {
+    return exchangeWithRetry(uri, uri.toString(), typeReference);
+  }
+
+  /**
+   * Retrieves the given URI (e.g. a <code>rel="next"</code> link) which
+   * corresponds to the given URL template. The template is used to record the
+   * call's metrics.
+   */
+  protected <T> ResponseEntity<T> exchangeWithRetry(URI uri, String url,
+      ParameterizedTypeReference<T> typeReference) {
+    return executeWithRetry(HttpMethod.GET, uri.toString(), url, () -> RequestTimeouts.callWithProfile(
+        RequestTimeouts.Profile.LISTING,
+        () -> restTemplate.exchange(uri, HttpMethod.GET, authenticationEntity, typeReference)));
+  }
+
+  /**
+   * Executes the given API call and retries it according to the
+   * {@link RetryPolicy}. If the call isn't retried (anymore) then the last
+   * exception is rethrown.
+   */
+  protected <T> T executeWithRetry(HttpMethod method, String url, Supplier<T> call) {
+    return executeWithRetry(method, url, url, call);
+  }
+
+  private <T> T executeWithRetry(HttpMethod method, String url, String urlTemplate, Supplier<T> call) {
+    String endpoint = metrics != null ? metrics.getEndpoint(urlTemplate) : null;
+    long start = System.currentTimeMillis();
+    for (int attempt = 1;; attempt++) {
       try {
-        return restTemplate.postForObject(url, entity, type);
-      } catch (TooManyRequests e) {
-
-        // API rate limit exceeded: we have to wait and retry
-        sleep(retryWaitSeconds);
-      } catch (Exception e) {
-        logException(HttpMethod.POST, null, url, e);
-        return null;
+        return metrics != null ? metrics.callWithEndpoint(endpoint, call) : call.get();
+      } catch (RestClientException e) {
+        long delay = retryPolicy.getRetryDelayMillis(method, e, attempt, System.currentTimeMillis() - start);
+        if (delay < 0 || RequestAbort.isCurrentAborted()) {
+          throw e;
+        }
+        if (metrics != null) {
+          metrics.recordRetry(method.name(), endpoint);
+        }
+        LOG.warn("API call {} '{}' failed with {} - retrying in {} ms (attempt {})", method.name(), url,
+            e.getMessage(), delay, attempt + 1);
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
       }
     }
-    return null;
   }
 
-  protected void checkRateLimitRemaining(String rateLimitRemainingValue, String rateLimitResetInSeconds) {
-    int rateLimitWaitSeconds;
+  /**
+   * Opens {@link RestClientSettings#getWarmUpConnections()} pooled connections
+   * (incl. TLS handshakes) to the server by sending the given (cheap and
+   * authenticated) API call concurrently. The calls aren't coalesced (via
+   * <code>Cache-Control: no-cache</code>) nor retried, so an unavailable server
+   * doesn't delay the startup.
+   *
+   * @return <code>false</code> if any of the calls failed
+   */
+  protected boolean warmUp(String apiCall, Map<String, String> uriVariables) {
+    int connections = settings.getWarmUpConnections();
+    if (connections <= 0) {
+      return true;
+    }
+    LOG.debug("Warming up {} connections to '{}'", connections, serverUrl);
+    String url = getApiUrl(apiCall);
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(authenticationEntity.getHeaders());
+    headers.setCacheControl(CacheControl.noCache());
+    HttpEntity<String> entity = new HttpEntity<>(headers);
+    List<CompletableFuture<Void>> futures = new ArrayList<>(connections);
     try {
-      rateLimitWaitSeconds = Integer.parseInt(rateLimitResetInSeconds);
-    } catch (NumberFormatException e) {
-      rateLimitWaitSeconds = retryWaitSeconds;  // default wait time
+      URI uri = expandUrl(url, uriVariables);
+      for (int i = 0; i < connections; i++) {
+        futures.add(supplyAsync(() -> {
+          restTemplate.exchange(uri, HttpMethod.GET, entity, Void.class);
+          return null;
+        }));
+      }
+      // Wait for all connections before a failure is reported
+      join(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+      return true;
+    } catch (Exception e) {
+      logException(HttpMethod.GET, uriVariables, url, e);
+      return false;
     }
+  }
+
+  protected boolean isConcurrentPaging() {
+    return settings.getPagingConcurrency() > 1;
+  }
+
+  /**
+   * Retrieves the pages <code>firstPage</code> to <code>lastPage</code>
+   * (inclusive) via the given page reader and returns their entities in page
+   * order.
+   *
+   * @see #readPages(int, int, IntFunction, Consumer)
+   */
+  protected <T> List<T> readPages(int firstPage, int lastPage, IntFunction<List<T>> pageReader) {
+    List<T> entities = new ArrayList<>();
+    readPages(firstPage, lastPage, pageReader, entities::addAll);
+    return entities;
+  }
+
+  /**
+   * Retrieves the pages <code>firstPage</code> to <code>lastPage</code>
+   * (inclusive) via the given page reader and hands over their entities to the
+   * given consumer in page order.
+   * <p>
+   * The pages are retrieved concurrently by a pool of
+   * {@link RestClientSettings#getPagingConcurrency()} threads. Only this number
+   * of pages is requested ahead of the page handed over to the consumer, so the
+   * number of requests in flight (and of pages kept in memory) is bounded. If
+   * the retrieval of any page fails then the corresponding exception is
+   * rethrown.
+   */
+  protected <T> void readPages(int firstPage, int lastPage, IntFunction<List<T>> pageReader,
+      Consumer<List<T>> pageConsumer) {
+    int windowSize = settings.getPagingConcurrency();
+    Deque<CompletableFuture<List<T>>> futures = new ArrayDeque<>(windowSize);
+    int nextPage = firstPage;
     try {
-      if (Integer.parseInt(rateLimitRemainingValue) < perPage) {
-        sleep(rateLimitWaitSeconds);
+      while (nextPage <= lastPage || !futures.isEmpty()) {
+        while (nextPage <= lastPage && futures.size() < windowSize) {
+          futures.add(readPageAsync(nextPage++, pageReader));
+        }
+        List<T> pageEntities = join(futures.poll());
+
+        // Keep the window filled while the consumer processes the page
+        if (nextPage <= lastPage) {
+          futures.add(readPageAsync(nextPage++, pageReader));
+        }
+        if (pageEntities != null) {
+          pageConsumer.accept(pageEntities);
+        }
       }
-    } catch (NumberFormatException e) {
-      // Ignore
+    } finally {
+      futures.forEach(future -> future.cancel(false));
     }
   }
 
-  protected void sleep(int sleepSeconds) {
-    LOG.debug("Sleeping {} seconds due to rate limit", sleepSeconds);
+  /**
+   * Retrieves pages starting with <code>firstPage</code> for listings where the
+   * number of pages is unknown and returns their entities in page order.
+   *
+   * @see #readPagesSpeculatively(int, IntFunction, Consumer)
+   */
+  protected <T> List<T> readPagesSpeculatively(int firstPage, IntFunction<List<T>> pageReader) {
+    List<T> entities = new ArrayList<>();
+    readPagesSpeculatively(firstPage, pageReader, entities::addAll);
+    return entities;
+  }
+
+  /**
+   * Retrieves pages starting with <code>firstPage</code> for listings where the
+   * number of pages is unknown. In each round
+   * {@link RestClientSettings#getPagingConcurrency()} pages are requested
+   * concurrently and handed over to the given consumer in page order. The
+   * retrieval stops with the first page which contains less than
+   * <code>perPage</code> entries.
+   */
+  protected <T> void readPagesSpeculatively(int firstPage, IntFunction<List<T>> pageReader,
+      Consumer<List<T>> pageConsumer) {
+    int batchSize = settings.getPagingConcurrency();
+    for (int page = firstPage;; page += batchSize) {
+      for (List<T> pageEntities : readPageList(page, page + batchSize - 1, pageReader)) {
+        if (pageEntities == null) {
+          return;
+        }
+        pageConsumer.accept(pageEntities);
+        if (pageEntities.size() < perPage) {
+          return;
+        }
+      }
+    }
+  }
+
+  private <T> List<List<T>> readPageList(int firstPage, int lastPage, IntFunction<List<T>> pageReader) {
+    List<CompletableFuture<List<T>>> futures = new ArrayList<>(lastPage - firstPage + 1);
+    for (int page = firstPage; page <= lastPage; page++) {
+      futures.add(readPageAsync(page, pageReader));
+    }
+    List<List<T>> pages = new ArrayList<>(futures.size());
     try {
-      Thread.sleep(sleepSeconds * 1000);
-    } catch (InterruptedException e1) {
-      // Ignore
+      for (CompletableFuture<List<T>> future : futures) {
+        pages.add(join(future));
+      }
+    } catch (RuntimeException e) {
+      futures.forEach(future -> future.cancel(false));
+      throw e;
+    }
+    return pages;
+  }
+
+  /**
+   * Retrieves the given page in the background. If the page isn't available
+   * within {@link RestClientSettings#getPagingPageDeadlineMillis()} (counted
+   * from the start of its retrieval) then its request in flight is aborted and
+   * the returned future fails with a {@link ResourceAccessException}, so a
+   * single slow page can't stall the whole listing.
+   */
+  private <T> CompletableFuture<List<T>> readPageAsync(int page, IntFunction<List<T>> pageReader) {
+    int deadline = settings.getPagingPageDeadlineMillis();
+    Supplier<List<T>> call = deadline > 0 ? () -> readPageWithDeadline(page, pageReader, deadline)
+        : () -> pageReader.apply(page);
+    return CompletableFuture.supplyAsync(RequestPriority.propagate(call), getPagingExecutor());
+  }
+
+  private <T> List<T> readPageWithDeadline(int page, IntFunction<List<T>> pageReader, int deadline) {
+    RequestAbort abort = new RequestAbort();
+    CompletableFuture.delayedExecutor(deadline, TimeUnit.MILLISECONDS).execute(abort::abort);
+    try {
+      List<T> entities = abort.call(() -> pageReader.apply(page));
+      if (!abort.isAborted()) {
+        return entities;
+      }
+    } catch (RuntimeException e) {
+      if (!abort.isAborted()) {
+        throw e;
+      }
+    }
+    if (metrics != null) {
+      metrics.recordPageTimeout();
+    }
+    throw new ResourceAccessException("Page " + page + " not retrieved within " + deadline + " ms");
+  }
+
+  /**
+   * Waits for the given future and rethrows the exception of a failed call
+   * unwrapped.
+   */
+  protected static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
     }
   }
 
+  private ExecutorService getPagingExecutor() {
+    if (pagingExecutor == null) {
+      synchronized (this) {
+        if (pagingExecutor == null) {
+          CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+              getClass().getSimpleName() + "-paging-");
+          threadFactory.setDaemon(true);
+          pagingExecutor = Executors.newFixedThreadPool(settings.getPagingConcurrency(), threadFactory);
+        }
+      }
+    }
+    return pagingExecutor;
+  }
+
+  /**
+   * Executes the given call of the async API with the settings' custom
+   * executor, with virtual threads or with a pool of platform threads (see
+   * {@link RestClientSettings#getAsyncMode()}). At most
+   * {@link RestClientSettings#getAsyncConcurrency()} calls are executed
+   * concurrently. The call keeps the caller's {@link RequestPriority}.
+   */
+  protected <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+    return CompletableFuture.supplyAsync(RequestPriority.propagate(call), getAsyncExecutor());
+  }
+
+  private Executor getAsyncExecutor() {
+    if (asyncExecutor == null) {
+      synchronized (this) {
+        if (asyncExecutor == null) {
+          int concurrency = Math.max(1, settings.getAsyncConcurrency());
+          if (settings.getAsyncExecutor() != null) {
+            asyncExecutor = settings.getAsyncExecutor();
+          } else if (settings.getAsyncMode() == RestClientSettings.AsyncMode.VIRTUAL && VirtualThreads.isSupported()) {
+            asyncExecutor = new BoundedExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor(), concurrency);
+          } else {
+            if (settings.getAsyncMode() == RestClientSettings.AsyncMode.VIRTUAL) {
+              LOG.warn("Virtual threads not supported by Java {} - using platform threads",
+                  System.getProperty("java.version"));
+            }
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+                getClass().getSimpleName() + "-async-");
+            threadFactory.setDaemon(true);
+            asyncExecutor = Executors.newFixedThreadPool(concurrency, threadFactory);
+          }
+        }
+      }
+    }
+    return asyncExecutor;
+  }
+
   private void logException(HttpMethod method, Map<String, String> uriVariables, String url, Exception e) {
-    if (e instanceof RestClientResponseException) {
+    if (e.getCause() instanceof CallNotPermittedException) {
+
+      // Don't flood the log while the circuit breaker is open
+      LOG.debug("API call {} '{}' {} rejected: {}", method.name(), url, uriVariables != null ? uriVariables : "",
+          e.getCause().getMessage());
+    } else if (e instanceof RestClientResponseException) {
       LOG.error("API call {} '{}' {} failed with {}: {}", method.name(), url, uriVariables != null ? uriVariables : "",
           e.getMessage(), ((RestClientResponseException) e).getResponseBodyAsString());
     } else if (e instanceof RestClientException) {
@@ -38,4 +38,14 @@ public interface Application {
   boolean sync(List<IdpGroup> groups);
 
   List<AppStatistics> getStatistics();
+
+  /**
+   * Opens connections to the application's server and checks the access via a
+   * cheap API call. By default the application is always available.
+   *
+   * @return <code>false</code> if the server isn't available
+   */
+  default boolean probe() {
+    return true;
+  }
 }
@@ -0,0 +1,596 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.springframework.util.StringUtils;
+import org.vaulttec.idm.sync.app.http.ExponentialBackoffRetryPolicy;
+import org.vaulttec.idm.sync.app.http.RetryPolicy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Settings of the HTTP transport used by an {@link AbstractRestClient}.
+ * <p>
+ * The settings are read from the <code>transport</code>,
+ * <code>connection.*</code>, <code>paging.*</code>, <code>rateLimit.*</code>,
+ * <code>retry.*</code>, <code>circuitBreaker.*</code>,
+ * <code>bulkhead.*</code>, <code>cache.*</code>, <code>compression.*</code>,
+ * <code>singleFlight.*</code>, <code>async.*</code>, <code>lean.*</code>,
+ * <code>metrics.*</code> and <code>warmUp.*</code> entries of an app's (or
+ * the IdP's) <code>config</code> map. Missing entries fall back to the
+ * defaults defined here.
+ */
+public class RestClientSettings {
+
+  public enum Transport {
+
+    /**
+     * Pool of keep-alive HTTP/1.1 connections (Apache HttpClient).
+     */
+    HTTP1,
+
+    /**
+     * HTTP/2 with requests multiplexed over a single connection per host (JDK
+     * HttpClient). Falls back to HTTP/1.1 if not supported by the server.
+     */
+    HTTP2;
+
+    public static Transport fromName(String name) {
+      for (Transport transport : values()) {
+        if (transport.name().equalsIgnoreCase(name.trim())) {
+          return transport;
+        }
+      }
+      throw new IllegalStateException("Unsupported transport '" + name + "'");
+    }
+  }
+
+  public enum AsyncMode {
+
+    /**
+     * Fixed pool of platform threads.
+     */
+    PLATFORM,
+
+    /**
+     * A virtual thread per call (Java 21+) with the number of concurrent calls
+     * limited by a semaphore. Falls back to {@link #PLATFORM} on older Java
+     * versions.
+     */
+    VIRTUAL;
+
+    public static AsyncMode fromName(String name) {
+      for (AsyncMode mode : values()) {
+        if (mode.name().equalsIgnoreCase(name.trim())) {
+          return mode;
+        }
+      }
+      throw new IllegalStateException("Unsupported async mode '" + name + "'");
+    }
+  }
+
+  private Transport transport = Transport.HTTP1;
+  private int maxConnections = 20;
+  private int maxConnectionsPerRoute = 10;
+  private int connectTimeoutMillis = 5000;
+  private int readTimeoutMillis = 60000;
+  private int writeTimeoutMillis = 15000;
+  private int listingTimeoutMillis = 120000;
+  private int connectionRequestTimeoutMillis = 10000;
+  private int idleConnectionTimeoutSeconds = 30;
+  private int pagingConcurrency = 1;
+  private int pagingPageDeadlineMillis = 300000;
+  private boolean pagingKeyset = false;
+  private int rateLimitPermitsPerSecond = 0;
+  private boolean rateLimitAdaptive = true;
+  private int retryMaxAttempts = 3;
+  private int retryInitialBackoffMillis = 500;
+  private int retryMaxBackoffMillis = 10000;
+  private int retryTimeBudgetMillis = 60000;
+  private RetryPolicy retryPolicy;
+  private int circuitBreakerFailureThreshold = 5;
+  private int circuitBreakerOpenDurationMillis = 30000;
+  private int circuitBreakerHalfOpenCalls = 1;
+  private int bulkheadMaxConcurrentCalls = 10;
+  private int bulkheadMaxWaitMillis = 10000;
+  private int cacheMaxEntries = 500;
+  private boolean compressionEnabled = true;
+  private boolean singleFlightEnabled = true;
+  private AsyncMode asyncMode = AsyncMode.PLATFORM;
+  private int asyncConcurrency = 4;
+  private Executor asyncExecutor;
+  private boolean leanEnabled = false;
+  private boolean metricsEnabled = true;
+  private MeterRegistry meterRegistry = Metrics.globalRegistry;
+  private int warmUpConnections = 2;
+
+  public static RestClientSettings fromConfig(Map<String, String> config) {
+    RestClientSettings settings = new RestClientSettings();
+    if (StringUtils.hasText(config.get("transport"))) {
+      settings.setTransport(Transport.fromName(config.get("transport")));
+    }
+    settings.setMaxConnections(getInt(config, "connection.maxTotal", settings.getMaxConnections()));
+    settings.setMaxConnectionsPerRoute(getInt(config, "connection.maxPerRoute", settings.getMaxConnectionsPerRoute()));
+    settings.setConnectTimeoutMillis(getInt(config, "connection.connectTimeout", settings.getConnectTimeoutMillis()));
+    settings.setReadTimeoutMillis(getInt(config, "connection.readTimeout", settings.getReadTimeoutMillis()));
+    settings.setWriteTimeoutMillis(getInt(config, "connection.writeTimeout", settings.getWriteTimeoutMillis()));
+    settings.setListingTimeoutMillis(
+        getInt(config, "connection.listingTimeout", settings.getListingTimeoutMillis()));
+    settings.setConnectionRequestTimeoutMillis(
+        getInt(config, "connection.requestTimeout", settings.getConnectionRequestTimeoutMillis()));
+    settings.setIdleConnectionTimeoutSeconds(
+        getInt(config, "connection.idleTimeout", settings.getIdleConnectionTimeoutSeconds()));
+    settings.setPagingConcurrency(getInt(config, "paging.concurrency", settings.getPagingConcurrency()));
+    settings.setPagingPageDeadlineMillis(
+        getInt(config, "paging.pageDeadline", settings.getPagingPageDeadlineMillis()));
+    settings.setPagingKeyset(getBoolean(config, "paging.keyset", settings.isPagingKeyset()));
+    settings.setRateLimitPermitsPerSecond(
+        getInt(config, "rateLimit.permitsPerSecond", settings.getRateLimitPermitsPerSecond()));
+    settings.setRateLimitAdaptive(getBoolean(config, "rateLimit.adaptive", settings.isRateLimitAdaptive()));
+    settings.setRetryMaxAttempts(getInt(config, "retry.maxAttempts", settings.getRetryMaxAttempts()));
+    settings.setRetryInitialBackoffMillis(
+        getInt(config, "retry.initialBackoff", settings.getRetryInitialBackoffMillis()));
+    settings.setRetryMaxBackoffMillis(getInt(config, "retry.maxBackoff", settings.getRetryMaxBackoffMillis()));
+    settings.setRetryTimeBudgetMillis(getInt(config, "retry.timeBudget", settings.getRetryTimeBudgetMillis()));
+    settings.setCircuitBreakerFailureThreshold(
+        getInt(config, "circuitBreaker.failureThreshold", settings.getCircuitBreakerFailureThreshold()));
+    settings.setCircuitBreakerOpenDurationMillis(
+        getInt(config, "circuitBreaker.openDuration", settings.getCircuitBreakerOpenDurationMillis()));
+    settings.setCircuitBreakerHalfOpenCalls(
+        getInt(config, "circuitBreaker.halfOpenCalls", settings.getCircuitBreakerHalfOpenCalls()));
+    settings.setBulkheadMaxConcurrentCalls(
+        getInt(config, "bulkhead.maxConcurrentCalls", settings.getBulkheadMaxConcurrentCalls()));
+    settings.setBulkheadMaxWaitMillis(getInt(config, "bulkhead.maxWait", settings.getBulkheadMaxWaitMillis()));
+    settings.setCacheMaxEntries(getInt(config, "cache.maxEntries", settings.getCacheMaxEntries()));
+    settings.setCompressionEnabled(getBoolean(config, "compression.enabled", settings.isCompressionEnabled()));
+    settings.setSingleFlightEnabled(getBoolean(config, "singleFlight.enabled", settings.isSingleFlightEnabled()));
+    if (StringUtils.hasText(config.get("async.mode"))) {
+      settings.setAsyncMode(AsyncMode.fromName(config.get("async.mode")));
+    }
+    settings.setAsyncConcurrency(getInt(config, "async.concurrency", settings.getAsyncConcurrency()));
+    settings.setLeanEnabled(getBoolean(config, "lean.enabled", settings.isLeanEnabled()));
+    settings.setMetricsEnabled(getBoolean(config, "metrics.enabled", settings.isMetricsEnabled()));
+    settings.setWarmUpConnections(getInt(config, "warmUp.connections", settings.getWarmUpConnections()));
+    return settings;
+  }
+
+  protected static int getInt(Map<String, String> config, String key, int defaultValue) {
+    String value = config.get(key);
+    return StringUtils.hasText(value) ? Integer.parseInt(value.trim()) : defaultValue;
+  }
+
+  protected static boolean getBoolean(Map<String, String> config, String key, boolean defaultValue) {
+    String value = config.get(key);
+    return StringUtils.hasText(value) ? Boolean.parseBoolean(value.trim()) : defaultValue;
+  }
+
+  public Transport getTransport() {
+    return transport;
+  }
+
+  public void setTransport(Transport transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * Maximum number of pooled connections.
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * Maximum number of pooled connections to a single host (route).
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  /**
+   * Socket timeout, i.e. the maximum period of inactivity while waiting for
+   * response data. Used for reading single entities.
+   */
+  public int getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  /**
+   * Socket timeout used for writes (creating, updating or deleting single
+   * entities).
+   */
+  public int getWriteTimeoutMillis() {
+    return writeTimeoutMillis;
+  }
+
+  public void setWriteTimeoutMillis(int writeTimeoutMillis) {
+    this.writeTimeoutMillis = writeTimeoutMillis;
+  }
+
+  /**
+   * Socket timeout used for the pages of a listing.
+   */
+  public int getListingTimeoutMillis() {
+    return listingTimeoutMillis;
+  }
+
+  public void setListingTimeoutMillis(int listingTimeoutMillis) {
+    this.listingTimeoutMillis = listingTimeoutMillis;
+  }
+
+  /**
+   * Maximum time to wait for a free connection from the pool.
+   */
+  public int getConnectionRequestTimeoutMillis() {
+    return connectionRequestTimeoutMillis;
+  }
+
+  public void setConnectionRequestTimeoutMillis(int connectionRequestTimeoutMillis) {
+    this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+  }
+
+  /**
+   * Pooled connections which are idle longer than this are closed by a
+   * background thread.
+   */
+  public int getIdleConnectionTimeoutSeconds() {
+    return idleConnectionTimeoutSeconds;
+  }
+
+  public void setIdleConnectionTimeoutSeconds(int idleConnectionTimeoutSeconds) {
+    this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds;
+  }
+
+  /**
+   * Maximum number of pages of a paged listing which are retrieved
+   * concurrently. A value of <code>1</code> retrieves one page after another.
+   */
+  public int getPagingConcurrency() {
+    return pagingConcurrency;
+  }
+
+  public void setPagingConcurrency(int pagingConcurrency) {
+    this.pagingConcurrency = pagingConcurrency;
+  }
+
+  /**
+   * Maximum time (incl. retries) to wait for a page which is retrieved
+   * concurrently. If exceeded the listing fails - <code>0</code> means no
+   * deadline.
+   */
+  public int getPagingPageDeadlineMillis() {
+    return pagingPageDeadlineMillis;
+  }
+
+  public void setPagingPageDeadlineMillis(int pagingPageDeadlineMillis) {
+    this.pagingPageDeadlineMillis = pagingPageDeadlineMillis;
+  }
+
+  /**
+   * If <code>true</code> large collections are retrieved via keyset-based
+   * pagination (if supported by the server, e.g. GitLab). In contrast to
+   * offset-based pagination the response time per page doesn't degrade with
+   * the page number.
+   */
+  public boolean isPagingKeyset() {
+    return pagingKeyset;
+  }
+
+  public void setPagingKeyset(boolean pagingKeyset) {
+    this.pagingKeyset = pagingKeyset;
+  }
+
+  /**
+   * Maximum number of requests per second sent to the server. A value of
+   * <code>0</code> doesn't limit the rate (unless adapted to the server's rate
+   * limit).
+   */
+  public int getRateLimitPermitsPerSecond() {
+    return rateLimitPermitsPerSecond;
+  }
+
+  public void setRateLimitPermitsPerSecond(int rateLimitPermitsPerSecond) {
+    this.rateLimitPermitsPerSecond = rateLimitPermitsPerSecond;
+  }
+
+  /**
+   * If <code>true</code> then the rate of requests is adapted to the remaining
+   * request budget announced by the server's rate limit headers.
+   */
+  public boolean isRateLimitAdaptive() {
+    return rateLimitAdaptive;
+  }
+
+  public void setRateLimitAdaptive(boolean rateLimitAdaptive) {
+    this.rateLimitAdaptive = rateLimitAdaptive;
+  }
+
+  /**
+   * Maximum number of attempts of a failed API call (including the first one).
+   */
+  public int getRetryMaxAttempts() {
+    return retryMaxAttempts;
+  }
+
+  public void setRetryMaxAttempts(int retryMaxAttempts) {
+    this.retryMaxAttempts = retryMaxAttempts;
+  }
+
+  /**
+   * Delay before the first retry - doubled with each further retry.
+   */
+  public int getRetryInitialBackoffMillis() {
+    return retryInitialBackoffMillis;
+  }
+
+  public void setRetryInitialBackoffMillis(int retryInitialBackoffMillis) {
+    this.retryInitialBackoffMillis = retryInitialBackoffMillis;
+  }
+
+  public int getRetryMaxBackoffMillis() {
+    return retryMaxBackoffMillis;
+  }
+
+  public void setRetryMaxBackoffMillis(int retryMaxBackoffMillis) {
+    this.retryMaxBackoffMillis = retryMaxBackoffMillis;
+  }
+
+  /**
+   * Maximum time spent on an API call including all retries. A value of
+   * <code>0</code> means no limit.
+   */
+  public int getRetryTimeBudgetMillis() {
+    return retryTimeBudgetMillis;
+  }
+
+  public void setRetryTimeBudgetMillis(int retryTimeBudgetMillis) {
+    this.retryTimeBudgetMillis = retryTimeBudgetMillis;
+  }
+
+  /**
+   * Returns the custom retry policy (if set) or an
+   * {@link ExponentialBackoffRetryPolicy} created from the retry settings.
+   */
+  public RetryPolicy getRetryPolicy() {
+    if (retryPolicy != null) {
+      return retryPolicy;
+    }
+    return new ExponentialBackoffRetryPolicy(retryMaxAttempts, retryInitialBackoffMillis, retryMaxBackoffMillis,
+        retryTimeBudgetMillis);
+  }
+
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Number of consecutive failed requests which open the circuit breaker. A
+   * value of <code>0</code> disables the circuit breaker.
+   */
+  public int getCircuitBreakerFailureThreshold() {
+    return circuitBreakerFailureThreshold;
+  }
+
+  public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+    this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+  }
+
+  /**
+   * Time the circuit breaker rejects all requests before trial requests are
+   * permitted.
+   */
+  public int getCircuitBreakerOpenDurationMillis() {
+    return circuitBreakerOpenDurationMillis;
+  }
+
+  public void setCircuitBreakerOpenDurationMillis(int circuitBreakerOpenDurationMillis) {
+    this.circuitBreakerOpenDurationMillis = circuitBreakerOpenDurationMillis;
+  }
+
+  /**
+   * Number of successful trial requests which close the circuit breaker again.
+   */
+  public int getCircuitBreakerHalfOpenCalls() {
+    return circuitBreakerHalfOpenCalls;
+  }
+
+  public void setCircuitBreakerHalfOpenCalls(int circuitBreakerHalfOpenCalls) {
+    this.circuitBreakerHalfOpenCalls = circuitBreakerHalfOpenCalls;
+  }
+
+  /**
+   * Maximum number of concurrent requests to the server. A value of
+   * <code>0</code> means unlimited.
+   */
+  public int getBulkheadMaxConcurrentCalls() {
+    return bulkheadMaxConcurrentCalls;
+  }
+
+  public void setBulkheadMaxConcurrentCalls(int bulkheadMaxConcurrentCalls) {
+    this.bulkheadMaxConcurrentCalls = bulkheadMaxConcurrentCalls;
+  }
+
+  /**
+   * Maximum time a request waits for one of the concurrent requests to finish.
+   */
+  public int getBulkheadMaxWaitMillis() {
+    return bulkheadMaxWaitMillis;
+  }
+
+  public void setBulkheadMaxWaitMillis(int bulkheadMaxWaitMillis) {
+    this.bulkheadMaxWaitMillis = bulkheadMaxWaitMillis;
+  }
+
+  /**
+   * Maximum number of GET responses cached for conditional requests (via
+   * <code>ETag</code> or <code>Last-Modified</code>). A value of
+   * <code>0</code> disables the cache.
+   */
+  public int getCacheMaxEntries() {
+    return cacheMaxEntries;
+  }
+
+  public void setCacheMaxEntries(int cacheMaxEntries) {
+    this.cacheMaxEntries = cacheMaxEntries;
+  }
+
+  /**
+   * If <code>true</code> then compressed responses (gzip or deflate) are
+   * requested from the server.
+   */
+  public boolean isCompressionEnabled() {
+    return compressionEnabled;
+  }
+
+  public void setCompressionEnabled(boolean compressionEnabled) {
+    this.compressionEnabled = compressionEnabled;
+  }
+
+  /**
+   * If <code>true</code> then identical concurrent GET requests are sent only
+   * once and share the response.
+   */
+  public boolean isSingleFlightEnabled() {
+    return singleFlightEnabled;
+  }
+
+  public void setSingleFlightEnabled(boolean singleFlightEnabled) {
+    this.singleFlightEnabled = singleFlightEnabled;
+  }
+
+  public AsyncMode getAsyncMode() {
+    return asyncMode;
+  }
+
+  public void setAsyncMode(AsyncMode asyncMode) {
+    this.asyncMode = asyncMode;
+  }
+
+  /**
+   * Maximum number of concurrent calls of the async API (if no custom executor
+   * is set).
+   */
+  public int getAsyncConcurrency() {
+    return asyncConcurrency;
+  }
+
+  public void setAsyncConcurrency(int asyncConcurrency) {
+    this.asyncConcurrency = asyncConcurrency;
+  }
+
+  /**
+   * Returns the custom executor of the async API (if set).
+   */
+  public Executor getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  public void setAsyncExecutor(Executor asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  /**
+   * If <code>true</code> then lighter representations are requested from the
+   * server where available, e.g. GitLab's simple project representations.
+   */
+  public boolean isLeanEnabled() {
+    return leanEnabled;
+  }
+
+  public void setLeanEnabled(boolean leanEnabled) {
+    this.leanEnabled = leanEnabled;
+  }
+
+  /**
+   * If <code>true</code> then the latency, response size, retries and rate
+   * limiting of the API calls are recorded as Micrometer metrics.
+   */
+  public boolean isMetricsEnabled() {
+    return metricsEnabled;
+  }
+
+  public void setMetricsEnabled(boolean metricsEnabled) {
+    this.metricsEnabled = metricsEnabled;
+  }
+
+  /**
+   * Returns the registry the metrics are recorded in. Defaults to Micrometer's
+   * global registry which Spring Boot adds its own registry to (so the metrics
+   * are available via the actuator's <code>metrics</code> endpoint).
+   */
+  public MeterRegistry getMeterRegistry() {
+    return meterRegistry;
+  }
+
+  public void setMeterRegistry(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Number of connections opened at startup by concurrent probe calls (limited
+   * by {@link #getAsyncConcurrency()}) - <code>0</code> disables the warm-up.
+   */
+  public int getWarmUpConnections() {
+    return warmUpConnections;
+  }
+
+  public void setWarmUpConnections(int warmUpConnections) {
+    this.warmUpConnections = warmUpConnections;
+  }
+
+  @Override
+  public String toString() {
+    return "transport=" + transport + ", maxConnections=" + maxConnections + ", maxConnectionsPerRoute="
+        + maxConnectionsPerRoute + ", connectTimeoutMillis=" + connectTimeoutMillis + ", readTimeoutMillis="
+        + readTimeoutMillis + ", writeTimeoutMillis=" + writeTimeoutMillis + ", listingTimeoutMillis="
+        + listingTimeoutMillis + ", connectionRequestTimeoutMillis=" + connectionRequestTimeoutMillis
+        + ", idleConnectionTimeoutSeconds=" + idleConnectionTimeoutSeconds + ", pagingConcurrency=" + pagingConcurrency
+        + ", pagingPageDeadlineMillis=" + pagingPageDeadlineMillis + ", pagingKeyset=" + pagingKeyset
+        + ", rateLimitPermitsPerSecond=" + rateLimitPermitsPerSecond + ", rateLimitAdaptive=" + rateLimitAdaptive
+        + ", retryPolicy=[" + getRetryPolicy() + "], circuitBreakerFailureThreshold=" + circuitBreakerFailureThreshold
+        + ", circuitBreakerOpenDurationMillis=" + circuitBreakerOpenDurationMillis + ", circuitBreakerHalfOpenCalls="
+        + circuitBreakerHalfOpenCalls + ", bulkheadMaxConcurrentCalls=" + bulkheadMaxConcurrentCalls
+        + ", bulkheadMaxWaitMillis=" + bulkheadMaxWaitMillis + ", cacheMaxEntries=" + cacheMaxEntries
+        + ", compressionEnabled=" + compressionEnabled + ", singleFlightEnabled=" + singleFlightEnabled
+        + ", asyncMode=" + asyncMode + ", asyncConcurrency=" + asyncConcurrency + ", leanEnabled=" + leanEnabled
+        + ", metricsEnabled=" + metricsEnabled + ", warmUpConnections=" + warmUpConnections;
+  }
+}
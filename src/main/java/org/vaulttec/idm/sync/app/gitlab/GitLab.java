@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -112,22 +113,59 @@ public class GitLab extends AbstractApplication {
     return false;
   }
 
+  /**
+   * Syncs the GitLab users page by page while they are retrieved. Only the
+   * creation of new users and the deletion of users with temporary email are
+   * deferred until all users are retrieved (deleting users while paging would
+   * shift the following pages).
+   */
   protected Map<String, GLUser> syncUsers(Map<String, GLUser> targetUsers, Map<String, GLUser> allUsers) {
-    List<GLUser> sourceUsers = client.getUsers(null);
-    if (sourceUsers != null) {
-      sourceUsers.stream().forEach(u -> allUsers.put(u.getId(), u));
-      Map<String, GLUser> syncedUsers = new HashMap<>();
-
-      // Delete users with temporary email created during first SSO access
-      List<GLUser> deletedUsers = new ArrayList<>();
+    Map<String, GLUser> syncedUsers = new HashMap<>();
+    Set<String> existingUsernames = new HashSet<>();
+    List<GLUser> deletedUsers = new ArrayList<>();
+    boolean retrieved = client.getUsers(null, sourceUsers -> {
       for (GLUser sourceUser : sourceUsers) {
+        allUsers.put(sourceUser.getId(), sourceUser);
+
+        // Users with temporary email created during first SSO access are deleted
+        // later on
         if (sourceUser.getEmail().startsWith("temp-email-for-oauth-")
             && sourceUser.getEmail().endsWith("@gitlab.localhost")) {
-          client.deleteUser(sourceUser, true);
           deletedUsers.add(sourceUser);
+          continue;
         }
+        GLUser targetUser = targetUsers.get(sourceUser.getUsername());
+        if (targetUser != null) {
+
+          // Unblock existing users associated with GitLab group now
+          if (sourceUser.getState() == GLState.BLOCKED) {
+            if (client.unblockUser(sourceUser)) {
+              publishSyncEvent(GitLabEvents.userUnblocked(sourceUser));
+            }
+            sourceUser.setState(GLState.ACTIVE);
+          }
+          syncedUsers.put(sourceUser.getUsername(), sourceUser);
+          updateUserIdAttribute(targetUser.getIdpUser(), sourceUser);
+          existingUsernames.add(sourceUser.getUsername());
+        } else if (isValidUser(sourceUser)) {
+
+          // Block existing users which are not associated with GitLab groups anymore
+          if (sourceUser.getState() == GLState.ACTIVE) {
+            if (client.blockUser(sourceUser)) {
+              publishSyncEvent(GitLabEvents.userBlocked(sourceUser));
+            }
+            sourceUser.setState(GLState.BLOCKED);
+          }
+          syncedUsers.put(sourceUser.getUsername(), sourceUser);
+        }
+      }
+    });
+    if (retrieved) {
+
+      // Delete users with temporary email created during first SSO access
+      for (GLUser deletedUser : deletedUsers) {
+        client.deleteUser(deletedUser, true);
       }
-      sourceUsers.removeAll(deletedUsers);
 
       // Merge identities of deleted user with the corresponding primary user
       for (GLUser deletedUser : deletedUsers) {
@@ -136,8 +174,8 @@ public class GitLab extends AbstractApplication {
         String deletedUsername = deletedUser.getUsername().substring(0, deletedUser.getUsername().length() - 1);
 
         // Search for the primary user
-        for (GLUser sourceUser : sourceUsers) {
-          if (sourceUser.getUsername().equals(deletedUsername)) {
+        for (GLUser sourceUser : allUsers.values()) {
+          if (sourceUser.getUsername().equals(deletedUsername) && !deletedUsers.contains(sourceUser)) {
             for (GLIdentity deletedIdentity : deletedUser.getIdentities()) {
               client.addIdentityToUser(sourceUser, deletedIdentity.getProvider(), deletedIdentity.getExternUid());
             }
@@ -145,27 +183,9 @@ public class GitLab extends AbstractApplication {
         }
       }
 
-      // Unblock existing users associated with GitLab group now
-      for (GLUser sourceUser : sourceUsers) {
-        GLUser targetUser = targetUsers.get(sourceUser.getUsername());
-        if (targetUser != null) {
-          if (sourceUser.getState() == GLState.BLOCKED) {
-            if (client.unblockUser(sourceUser)) {
-              publishSyncEvent(GitLabEvents.userUnblocked(sourceUser));
-            }
-            sourceUser.setState(GLState.ACTIVE);
-          }
-          syncedUsers.put(sourceUser.getUsername(), sourceUser);
-          updateUserIdAttribute(targetUser.getIdpUser(), sourceUser);
-        }
-      }
-
-      // Mark existing users (by removing from list of current users) and create
-      // non-existing ones
+      // Create non-existing users
       for (GLUser targetUser : targetUsers.values()) {
-        if (sourceUsers.contains(targetUser)) {
-          sourceUsers.remove(targetUser);
-        } else {
+        if (!existingUsernames.contains(targetUser.getUsername())) {
           if (StringUtils.hasText(targetUser.getProvider()) && !StringUtils.hasText(targetUser.getExternUid())) {
             LOG.warn("New user '{}' not created - missing required external user ID for provider '{}'",
                 targetUser.getUsername(), targetUser.getProvider());
@@ -182,19 +202,6 @@ public class GitLab extends AbstractApplication {
           }
         }
       }
-
-      // Block existing users which are not associated with GitLab groups anymore
-      for (GLUser sourceUser : sourceUsers) {
-        if (isValidUser(sourceUser)) {
-          if (sourceUser.getState() == GLState.ACTIVE) {
-            if (client.blockUser(sourceUser)) {
-              publishSyncEvent(GitLabEvents.userBlocked(sourceUser));
-            }
-            sourceUser.setState(GLState.BLOCKED);
-          }
-          syncedUsers.put(sourceUser.getUsername(), sourceUser);
-        }
-      }
       return syncedUsers;
     }
     return null;
@@ -379,6 +386,11 @@ public class GitLab extends AbstractApplication {
     }
   }
 
+  @Override
+  public boolean probe() {
+    return client.probe();
+  }
+
   @Override
   public List<AppStatistics> getStatistics() {
     List<AppStatistics> statistics = new ArrayList<>();
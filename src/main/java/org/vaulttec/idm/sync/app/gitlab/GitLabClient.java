@@ -19,18 +19,23 @@ package org.vaulttec.idm.sync.app.gitlab;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClientException;
 import org.vaulttec.idm.sync.app.AbstractRestClient;
+import org.vaulttec.idm.sync.app.RestClientSettings;
 import org.vaulttec.util.LinkHeader;
 import org.vaulttec.idm.sync.app.gitlab.model.GLGroup;
 import org.vaulttec.idm.sync.app.gitlab.model.GLPermission;
@@ -50,10 +55,13 @@ public class GitLabClient extends AbstractRestClient {
   };
 
   GitLabClient(String serverUrl, int perPage, int retryWaitSeconds, String personalAccessToken, String proxyHost,
-      int proxyPort) {
-    super(serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort);
-    LOG.debug("Init: serverUrl={}, perPage={}, retryWaitSeconds={}, proxyHost={}, proxyPort={}", serverUrl, perPage,
-        retryWaitSeconds, proxyHost, proxyPort);
+      int proxyPort, RestClientSettings settings) {
+    super(serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort, settings);
+    LOG.debug("Init: serverUrl={}, perPage={}, retryWaitSeconds={}, proxyHost={}, proxyPort={}, settings=[{}]",
+        serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort, settings);
+
+    // Read the users (and members) via streaming instead of data binding
+    restTemplate.getMessageConverters().add(0, GitLabJsonReaders.createConverter());
     prepareAuthenticationEntity("PRIVATE-TOKEN", personalAccessToken);
   }
 
@@ -65,29 +73,87 @@ public class GitLabClient extends AbstractRestClient {
   @Override
   protected <T> List<T> makeReadListApiCall(String apiCall, ParameterizedTypeReference<List<T>> typeReference,
       Map<String, String> uriVariables) {
+    List<T> entities = new ArrayList<>();
+    return makeReadPagedApiCall(apiCall, typeReference, uriVariables, entities::addAll) ? entities : null;
+  }
+
+  @Override
+  protected <T> boolean makeReadPagedApiCall(String apiCall, ParameterizedTypeReference<List<T>> typeReference,
+      Map<String, String> uriVariables, Consumer<List<T>> pageConsumer) {
     String url = getApiUrl(apiCall + (apiCall.contains("?") ? "&" : "?") + "per_page={perPage}");
     uriVariables.put("perPage", perPageAsString());
     try {
-      List<T> entities;
-      ResponseEntity<List<T>> response = restTemplate.exchange(url, HttpMethod.GET, authenticationEntity, typeReference,
-          uriVariables);
+      ResponseEntity<List<T>> response = exchangeWithRetry(url, typeReference, uriVariables);
+      pageConsumer.accept(response.getBody());
       LinkHeader linkHeader = LinkHeader.parse(response.getHeaders(), "page", "per_page");
-      if (linkHeader == null || !linkHeader.hasLink(LinkHeader.Rel.NEXT)) {
-        entities = response.getBody();
-      } else {
-        entities = new ArrayList<>(response.getBody());
-        do {
-          URI nextResourceUri = linkHeader.getLink(LinkHeader.Rel.NEXT).resourceUri();
-          response = restTemplate.exchange(nextResourceUri, HttpMethod.GET, authenticationEntity, typeReference);
-          entities.addAll(response.getBody());
-          linkHeader = LinkHeader.parse(response.getHeaders(), "page", "per_page");
-        } while (linkHeader != null && linkHeader.hasLink(LinkHeader.Rel.NEXT));
+      if (linkHeader != null && linkHeader.hasLink(LinkHeader.Rel.NEXT)) {
+        int lastPage = getLastPage(response.getHeaders(), linkHeader);
+        if (isConcurrentPaging() && lastPage > 1) {
+
+          // Retrieve the remaining pages concurrently
+          String pageUrl = url + "&page={page}";
+          readPages(2, lastPage, page -> {
+            Map<String, String> pageUriVariables = new HashMap<>(uriVariables);
+            pageUriVariables.put("page", Integer.toString(page));
+            return exchangeWithRetry(pageUrl, typeReference, pageUriVariables).getBody();
+          }, pageConsumer);
+        } else {
+          do {
+            URI nextResourceUri = linkHeader.getLink(LinkHeader.Rel.NEXT).resourceUri();
+            response = exchangeWithRetry(nextResourceUri, url, typeReference);
+            pageConsumer.accept(response.getBody());
+            linkHeader = LinkHeader.parse(response.getHeaders(), "page", "per_page");
+          } while (linkHeader != null && linkHeader.hasLink(LinkHeader.Rel.NEXT));
+        }
       }
-      return entities;
+      return true;
     } catch (RestClientException e) {
       LOG.error("API call {} '{}' {} failed", "GET", url, uriVariables, e);
     }
-    return null;
+    return false;
+  }
+
+  /**
+   * Returns the number of the last page from the response header
+   * <code>X-Total-Pages</code> or from the <code>rel="last"</code> link. GitLab
+   * omits both for listings with more than 10,000 entries - in this case
+   * <code>-1</code> is returned.
+   */
+  protected int getLastPage(HttpHeaders headers, LinkHeader linkHeader) {
+    String totalPages = headers.getFirst("X-Total-Pages");
+    if (StringUtils.hasText(totalPages)) {
+      try {
+        return Integer.parseInt(totalPages.trim());
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+    }
+    if (linkHeader.hasLink(LinkHeader.Rel.LAST)) {
+      return linkHeader.getLink(LinkHeader.Rel.LAST).page();
+    }
+    return -1;
+  }
+
+  /**
+   * Appends the parameters for <a href=
+   * "https://docs.gitlab.com/ee/api/rest/#keyset-based-pagination">keyset-based
+   * pagination</a> (if enabled) to the given API call. The pages are then
+   * retrieved by following the <code>rel="next"</code> links. GitLab falls back
+   * to offset-based pagination for resources which don't support keyset-based
+   * pagination.
+   */
+  protected String withKeysetPagination(String apiCall) {
+    if (settings.isPagingKeyset()) {
+      return apiCall + (apiCall.contains("?") ? "&" : "?") + "pagination=keyset&order_by=id&sort=asc";
+    }
+    return apiCall;
+  }
+
+  /**
+   * Warms up the connections to GitLab via its version API.
+   */
+  public boolean probe() {
+    return warmUp("/version", createUriVariables());
   }
 
   public List<GLUser> getUsers(String search) {
@@ -98,15 +164,47 @@ public class GitLabClient extends AbstractRestClient {
       apiCall += "&search={search}";
       uriVariables.put("search", search);
     }
-    return makeReadListApiCall(apiCall, RESPONSE_TYPE_USERS, uriVariables);
+    return makeReadListApiCall(withKeysetPagination(apiCall), RESPONSE_TYPE_USERS, uriVariables);
+  }
+
+  /**
+   * Async variant of {@link #getUsers(String)}.
+   */
+  public CompletableFuture<List<GLUser>> getUsersAsync(String search) {
+    return supplyAsync(() -> getUsers(search));
+  }
+
+  /**
+   * Retrieves the users page by page and hands over each page to the given
+   * consumer as soon as it's available.
+   *
+   * @return <code>false</code> if retrieving the users failed
+   */
+  public boolean getUsers(String search, Consumer<List<GLUser>> pageConsumer) {
+    LOG.debug("Retrieving users page by page: search={}", search);
+    String apiCall = "/users?exclude_internal=true";
+    Map<String, String> uriVariables = createUriVariables();
+    if (StringUtils.hasText(search)) {
+      apiCall += "&search={search}";
+      uriVariables.put("search", search);
+    }
+    return makeReadPagedApiCall(withKeysetPagination(apiCall), RESPONSE_TYPE_USERS, uriVariables, pageConsumer);
   }
 
   public List<GLGroup> getGroupsWithMembers(String search, boolean withStatistics) {
     LOG.debug("Retrieving groups with members: search={}, withStatistics={}", search, withStatistics);
     List<GLGroup> groups = getGroups(search, withStatistics);
     if (groups != null) {
+
+      // Retrieve the members of all groups concurrently but add them in the
+      // caller's thread
+      List<CompletableFuture<List<GLUser>>> groupMembers = new ArrayList<>(groups.size());
       for (GLGroup group : groups) {
-        List<GLUser> members = getGroupMembers(group);
+        groupMembers.add(getGroupMembersAsync(group));
+      }
+      for (int i = 0; i < groups.size(); i++) {
+        GLGroup group = groups.get(i);
+        List<GLUser> members = join(groupMembers.get(i));
         if (members != null) {
           for (GLUser member : members) {
             member.addGroup(group);
@@ -130,6 +228,13 @@ public class GitLabClient extends AbstractRestClient {
     return makeReadListApiCall(apiCall, RESPONSE_TYPE_GROUPS, uriVariables);
   }
 
+  /**
+   * Async variant of {@link #getGroups(String, boolean)}.
+   */
+  public CompletableFuture<List<GLGroup>> getGroupsAsync(String search, boolean withStatistics) {
+    return supplyAsync(() -> getGroups(search, withStatistics));
+  }
+
   public List<GLUser> getGroupMembers(GLGroup group) {
     if (group == null || !StringUtils.hasText(group.getId())) {
       throw new IllegalStateException("GitLab group with valid ID required");
@@ -140,6 +245,13 @@ public class GitLabClient extends AbstractRestClient {
     return makeReadListApiCall(apiCall, RESPONSE_TYPE_USERS, uriVariables);
   }
 
+  /**
+   * Async variant of {@link #getGroupMembers(GLGroup)}.
+   */
+  public CompletableFuture<List<GLUser>> getGroupMembersAsync(GLGroup group) {
+    return supplyAsync(() -> getGroupMembers(group));
+  }
+
   public boolean addMemberToGroup(GLGroup group, GLUser user, GLPermission permission) {
     if (group == null || !StringUtils.hasText(group.getId())) {
       throw new IllegalStateException("GitLab group with valid ID required");
@@ -270,7 +382,21 @@ public class GitLabClient extends AbstractRestClient {
       apiCall += "&search={search}";
       uriVariables.put("search", search);
     }
-    return makeReadListApiCall(apiCall, RESPONSE_TYPE_PROJECTS, uriVariables);
+
+    // The simple representation still contains the project's ID, path, name
+    // and description
+    if (settings.isLeanEnabled()) {
+      apiCall += "&simple=true";
+    }
+    return makeReadListApiCall(withKeysetPagination(apiCall), RESPONSE_TYPE_PROJECTS, uriVariables);
+  }
+
+  /**
+   * Async variant of {@link #getProjectsFromGroup(GLGroup, String, boolean)}.
+   */
+  public CompletableFuture<List<GLProject>> getProjectsFromGroupAsync(GLGroup group, String search,
+      boolean withShared) {
+    return supplyAsync(() -> getProjectsFromGroup(group, search, withShared));
   }
 
   public List<GLUser> getProjectUsers(GLProject project) {
@@ -283,6 +409,13 @@ public class GitLabClient extends AbstractRestClient {
     return makeReadListApiCall(apiCall, RESPONSE_TYPE_USERS, uriVariables);
   }
 
+  /**
+   * Async variant of {@link #getProjectUsers(GLProject)}.
+   */
+  public CompletableFuture<List<GLUser>> getProjectUsersAsync(GLProject project) {
+    return supplyAsync(() -> getProjectUsers(project));
+  }
+
   public boolean removeMemberFromProject(GLProject project, GLUser user) {
     if (project == null || !StringUtils.hasText(project.getId())) {
       throw new IllegalStateException("GitLab project with valid ID required");
@@ -0,0 +1,108 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.gitlab;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vaulttec.idm.sync.app.gitlab.model.GLIdentity;
+import org.vaulttec.idm.sync.app.gitlab.model.GLPermission;
+import org.vaulttec.idm.sync.app.gitlab.model.GLState;
+import org.vaulttec.idm.sync.app.gitlab.model.GLUser;
+import org.vaulttec.idm.sync.app.http.JsonListHttpMessageConverter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming readers for the GitLab listings retrieved during a sync (users and
+ * group members). Only the fields used by the sync are read - all others are
+ * skipped without being materialized.
+ */
+public final class GitLabJsonReaders {
+
+  private GitLabJsonReaders() {
+  }
+
+  public static JsonListHttpMessageConverter createConverter() {
+    return new JsonListHttpMessageConverter().addReader(GLUser.class, GitLabJsonReaders::readUser);
+  }
+
+  public static GLUser readUser(JsonParser parser) throws IOException {
+    GLUser user = new GLUser();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      switch (field) {
+      case "id":
+        user.setId(parser.getValueAsString());
+        break;
+      case "username":
+        user.setUsername(parser.getValueAsString());
+        break;
+      case "name":
+        user.setName(parser.getValueAsString());
+        break;
+      case "email":
+        user.setEmail(parser.getValueAsString());
+        break;
+      case "is_admin":
+      case "admin":
+        user.setAdmin(parser.getValueAsBoolean());
+        break;
+      case "bot":
+        user.setBot(token == JsonToken.VALUE_NULL ? null : parser.getValueAsBoolean());
+        break;
+      case "state":
+        user.setState(token == JsonToken.VALUE_NULL ? null : GLState.fromJson(parser.getText()));
+        break;
+      case "access_level":
+      case "permission":
+        user.setPermission(token == JsonToken.VALUE_NULL ? null : GLPermission.fromAccessLevel(parser.getText()));
+        break;
+      case "identities":
+        user.setIdentities(token == JsonToken.VALUE_NULL ? null : readIdentities(parser));
+        break;
+      default:
+        parser.skipChildren();
+      }
+    }
+    return user;
+  }
+
+  private static List<GLIdentity> readIdentities(JsonParser parser) throws IOException {
+    List<GLIdentity> identities = new ArrayList<>(1);
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      GLIdentity identity = new GLIdentity();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("provider".equals(field)) {
+          identity.setProvider(parser.getValueAsString());
+        } else if ("extern_uid".equals(field) || "externUid".equals(field)) {
+          identity.setExternUid(parser.getValueAsString());
+        } else {
+          parser.skipChildren();
+        }
+      }
+      identities.add(identity);
+    }
+    return identities;
+  }
+}
@@ -18,6 +18,7 @@
 package org.vaulttec.idm.sync.app.gitlab.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,7 +50,8 @@ public class GLUser {
   private String provider;
   private String externUid;
   private List<GLIdentity> identities;
-  private Map<String, GLGroup> groups = new HashMap<>();
+  // Created on demand because only a few of the retrieved users are group members
+  private Map<String, GLGroup> groups;
 
   public GLUser() {
     this.idpUser = null;
@@ -170,14 +172,17 @@ public class GLUser {
   }
 
   public Map<String, GLGroup> getGroups() {
-    return groups;
+    return groups != null ? groups : Collections.emptyMap();
   }
 
   public GLGroup getGroup(String path) {
-    return groups.get(path);
+    return groups != null ? groups.get(path) : null;
   }
 
   public void addGroup(GLGroup group) {
+    if (groups == null) {
+      groups = new HashMap<>();
+    }
     this.groups.put(group.getPath(), group);
   }
 
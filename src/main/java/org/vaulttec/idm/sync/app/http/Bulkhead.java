@@ -0,0 +1,169 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent requests to an upstream server, so a slow
+ * server can't tie up more threads than this.
+ * <p>
+ * The slots are handed out by {@link RequestPriority}: a request only gets a
+ * slot if no request of a higher priority is waiting, and the lower priorities
+ * can only use the slots not reserved for the higher ones (see
+ * {@link RequestPriority#getReservedShare()}).
+ */
+public class Bulkhead {
+
+  private final String name;
+  private final int maxConcurrentCalls;
+  private final long maxWaitMillis;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  private final int[] waitingCalls = new int[RequestPriority.values().length];
+  private int concurrentCalls;
+
+  /**
+   * @param maxConcurrentCalls maximum number of requests in flight - values
+   *                           <code>&lt;= 0</code> mean unlimited
+   * @param maxWaitMillis      maximum time a request waits for a free slot
+   */
+  public Bulkhead(String name, int maxConcurrentCalls, long maxWaitMillis) {
+    this.name = name;
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  /**
+   * Waits (up to the max wait time) for a free slot with the highest priority
+   * and returns <code>false</code> if none is available.
+   *
+   * @see #tryAcquire(RequestPriority)
+   */
+  public boolean tryAcquire() throws InterruptedException {
+    return tryAcquire(RequestPriority.SYNC_WRITE);
+  }
+
+  /**
+   * Waits (up to the max wait time) for a free slot available to the given
+   * priority and returns <code>false</code> if none is available. Every
+   * acquired slot has to be returned via {@link #release()}.
+   */
+  public boolean tryAcquire(RequestPriority priority) throws InterruptedException {
+    if (maxConcurrentCalls <= 0) {
+      return true;
+    }
+    long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    lock.lockInterruptibly();
+    try {
+      waitingCalls[priority.ordinal()]++;
+      boolean acquired = false;
+      try {
+        while (!isAvailable(priority)) {
+          if (remainingNanos <= 0) {
+            return false;
+          }
+          remainingNanos = released.awaitNanos(remainingNanos);
+        }
+        concurrentCalls++;
+        acquired = true;
+        return true;
+      } finally {
+        waitingCalls[priority.ordinal()]--;
+
+        // Wake up the lower priorities held back by this (timed out or
+        // interrupted) waiter
+        if (!acquired) {
+          released.signalAll();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isAvailable(RequestPriority priority) {
+    if (concurrentCalls >= getMaxConcurrentCalls(priority)) {
+      return false;
+    }
+    for (int i = 0; i < priority.ordinal(); i++) {
+      if (waitingCalls[i] > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void release() {
+    if (maxConcurrentCalls > 0) {
+      lock.lock();
+      try {
+        concurrentCalls--;
+        released.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of requests currently in flight.
+   */
+  public int getConcurrentCalls() {
+    lock.lock();
+    try {
+      return concurrentCalls;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of requests waiting for a free slot.
+   */
+  public int getWaitingCalls() {
+    lock.lock();
+    try {
+      int calls = 0;
+      for (int waiting : waitingCalls) {
+        calls += waiting;
+      }
+      return calls;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getMaxConcurrentCalls() {
+    return maxConcurrentCalls;
+  }
+
+  /**
+   * Returns the number of slots available to the given priority (at least
+   * one).
+   */
+  public int getMaxConcurrentCalls(RequestPriority priority) {
+    return Math.max(1, (int) (maxConcurrentCalls * (1 - priority.getReservedShare())));
+  }
+
+  public String getName() {
+    return name;
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a request isn't sent because the upstream's {@link CircuitBreaker}
+ * is open or its {@link Bulkhead} is full.
+ */
+public class CallNotPermittedException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public CallNotPermittedException(String message) {
+    super(message);
+  }
+}
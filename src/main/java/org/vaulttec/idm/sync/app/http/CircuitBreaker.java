@@ -0,0 +1,144 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker which stops sending requests to an upstream server which is
+ * failing repeatedly.
+ * <p>
+ * In state {@link State#CLOSED} all requests are permitted. After the
+ * configured number of consecutive failures the breaker changes to
+ * {@link State#OPEN} and rejects all requests. When the open duration has
+ * elapsed the breaker changes to {@link State#HALF_OPEN} and permits a limited
+ * number of trial requests. If all of them succeed then the breaker is closed
+ * again - otherwise it's opened again.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int failureThreshold;
+  private final long openDurationNanos;
+  private final int halfOpenCalls;
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAtNanos;
+  private int halfOpenPermits;
+  private int halfOpenSuccesses;
+
+  /**
+   * @param failureThreshold   number of consecutive failures which open the
+   *                           breaker - values <code>&lt;= 0</code> disable the
+   *                           breaker
+   * @param openDurationMillis time the breaker stays open before trial
+   *                           requests are permitted
+   * @param halfOpenCalls      number of successful trial requests which close
+   *                           the breaker again
+   */
+  public CircuitBreaker(String name, int failureThreshold, long openDurationMillis, int halfOpenCalls) {
+    this.name = name;
+    this.failureThreshold = failureThreshold;
+    this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+  }
+
+  /**
+   * Returns <code>true</code> if a request is permitted. Every permitted
+   * request has to be reported via {@link #onSuccess()}, {@link #onFailure()}
+   * or {@link #releasePermission()}.
+   */
+  public boolean tryAcquirePermission() {
+    return tryAcquirePermission(System.nanoTime());
+  }
+
+  synchronized boolean tryAcquirePermission(long now) {
+    if (failureThreshold <= 0) {
+      return true;
+    }
+    if (state == State.OPEN) {
+      if (now - openedAtNanos < openDurationNanos) {
+        return false;
+      }
+      LOG.info("Circuit breaker of '{}' is half-open - permitting {} trial request(s)", name, halfOpenCalls);
+      state = State.HALF_OPEN;
+      halfOpenPermits = halfOpenCalls;
+      halfOpenSuccesses = 0;
+    }
+    if (state == State.HALF_OPEN) {
+      if (halfOpenPermits <= 0) {
+        return false;
+      }
+      halfOpenPermits--;
+    }
+    return true;
+  }
+
+  public synchronized void onSuccess() {
+    if (state == State.CLOSED) {
+      consecutiveFailures = 0;
+    } else if (state == State.HALF_OPEN && ++halfOpenSuccesses >= halfOpenCalls) {
+      LOG.info("Circuit breaker of '{}' is closed again", name);
+      state = State.CLOSED;
+      consecutiveFailures = 0;
+    }
+  }
+
+  public void onFailure() {
+    onFailure(System.nanoTime());
+  }
+
+  synchronized void onFailure(long now) {
+    if (failureThreshold <= 0) {
+      return;
+    }
+    if ((state == State.CLOSED && ++consecutiveFailures >= failureThreshold) || state == State.HALF_OPEN) {
+      LOG.warn("Circuit breaker of '{}' is open - rejecting requests for {} ms", name,
+          TimeUnit.NANOSECONDS.toMillis(openDurationNanos));
+      state = State.OPEN;
+      openedAtNanos = now;
+    }
+  }
+
+  /**
+   * Returns the permission of a request which wasn't sent (so neither succeeded
+   * nor failed).
+   */
+  public synchronized void releasePermission() {
+    if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls - halfOpenSuccesses) {
+      halfOpenPermits++;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public String getName() {
+    return name;
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Sends every request through the given {@link CircuitBreaker} and
+ * {@link Bulkhead}. Rejected requests fail immediately with a
+ * {@link CallNotPermittedException}.
+ * <p>
+ * I/O errors and <code>5xx</code> responses are reported as failures to the
+ * circuit breaker, all other responses as successes. The bulkhead's slot is
+ * held until the response is closed, i.e. its body is read.
+ */
+public class CircuitBreakerInterceptor implements ClientHttpRequestInterceptor {
+
+  private final CircuitBreaker circuitBreaker;
+  private final Bulkhead bulkhead;
+
+  public CircuitBreakerInterceptor(CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+    this.circuitBreaker = circuitBreaker;
+    this.bulkhead = bulkhead;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      throw new CallNotPermittedException("Circuit breaker of '" + circuitBreaker.getName() + "' is open: "
+          + request.getMethodValue() + " " + request.getURI());
+    }
+    boolean acquired = false;
+    try {
+      acquired = bulkhead.tryAcquire(RequestPriority.current(request.getMethod()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (!acquired) {
+      circuitBreaker.releasePermission();
+      throw new CallNotPermittedException("Bulkhead of '" + bulkhead.getName() + "' is full ("
+          + bulkhead.getMaxConcurrentCalls() + " concurrent requests): " + request.getMethodValue() + " "
+          + request.getURI());
+    }
+    ClientHttpResponse response;
+    try {
+      response = execution.execute(request, body);
+    } catch (IOException | RuntimeException e) {
+      bulkhead.release();
+      circuitBreaker.onFailure();
+      throw e;
+    }
+    BulkheadResponse bulkheadResponse = new BulkheadResponse(response, bulkhead);
+    try {
+      if (response.getRawStatusCode() >= HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+        circuitBreaker.onFailure();
+      } else {
+        circuitBreaker.onSuccess();
+      }
+    } catch (IOException | RuntimeException e) {
+      bulkheadResponse.close();
+      circuitBreaker.onFailure();
+      throw e;
+    }
+    return bulkheadResponse;
+  }
+
+  /**
+   * Returns the bulkhead's slot when the response is closed.
+   */
+  private static class BulkheadResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse delegate;
+    private final Bulkhead bulkhead;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    BulkheadResponse(ClientHttpResponse delegate, Bulkhead bulkhead) {
+      this.delegate = delegate;
+      this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      return delegate.getBody();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public HttpStatus getStatusCode() throws IOException {
+      return delegate.getStatusCode();
+    }
+
+    @Override
+    public int getRawStatusCode() throws IOException {
+      return delegate.getRawStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return delegate.getStatusText();
+    }
+
+    @Override
+    public void close() {
+      try {
+        delegate.close();
+      } finally {
+        if (released.compareAndSet(false, true)) {
+          bulkhead.release();
+        }
+      }
+    }
+  }
+}
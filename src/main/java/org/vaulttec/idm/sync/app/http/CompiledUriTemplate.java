@@ -0,0 +1,126 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.util.UriUtils;
+
+/**
+ * URI template (e.g. <code>http://host/api/groups/{groupId}?search={search}</code>)
+ * which is parsed once and expanded without the per-call parsing done by
+ * {@link org.springframework.web.client.RestTemplate}'s
+ * {@link org.springframework.web.util.UriTemplateHandler}.
+ * <p>
+ * Variable values are encoded like the RestTemplate's default
+ * {@link org.springframework.web.util.DefaultUriBuilderFactory.EncodingMode#URI_COMPONENT
+ * URI_COMPONENT} mode does - as path segment (within the path) or as query
+ * parameter (within the query). The literal parts of the template have to be
+ * valid URI characters already.
+ */
+public final class CompiledUriTemplate {
+
+  private final String template;
+  private final String[] literals;
+  private final String[] variableNames;
+  private final boolean[] queryVariables;
+  private final int literalsLength;
+
+  private CompiledUriTemplate(String template, List<String> literals, List<String> variableNames,
+      List<Boolean> queryVariables) {
+    this.template = template;
+    this.literals = literals.toArray(new String[0]);
+    this.variableNames = variableNames.toArray(new String[0]);
+    this.queryVariables = new boolean[queryVariables.size()];
+    for (int i = 0; i < this.queryVariables.length; i++) {
+      this.queryVariables[i] = queryVariables.get(i);
+    }
+    this.literalsLength = literals.stream().mapToInt(String::length).sum();
+  }
+
+  public static CompiledUriTemplate compile(String template) {
+    List<String> literals = new ArrayList<>();
+    List<String> variableNames = new ArrayList<>();
+    List<Boolean> queryVariables = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    boolean query = false;
+    for (int i = 0; i < template.length(); i++) {
+      char c = template.charAt(i);
+      if (c == '{') {
+        int end = template.indexOf('}', i);
+        if (end < 0) {
+          throw new IllegalArgumentException("Unclosed variable in URI template '" + template + "'");
+        }
+
+        // Strip a variable's pattern (e.g. "{id:\\d+}")
+        String name = template.substring(i + 1, end);
+        int colon = name.indexOf(':');
+        literals.add(literal.toString());
+        variableNames.add((colon < 0 ? name : name.substring(0, colon)).trim());
+        queryVariables.add(query);
+        literal.setLength(0);
+        i = end;
+      } else {
+        if (c == '?') {
+          query = true;
+        }
+        literal.append(c);
+      }
+    }
+    literals.add(literal.toString());
+    return new CompiledUriTemplate(template, literals, variableNames, queryVariables);
+  }
+
+  public String getTemplate() {
+    return template;
+  }
+
+  public String[] getVariableNames() {
+    return variableNames.clone();
+  }
+
+  /**
+   * Expands the template with the given variables. Missing variables are
+   * rejected and <code>null</code> values are expanded to an empty string.
+   */
+  public URI expand(Map<String, ?> uriVariables) {
+    StringBuilder uri = new StringBuilder(literalsLength + 16 * variableNames.length);
+    for (int i = 0; i < variableNames.length; i++) {
+      uri.append(literals[i]);
+      String name = variableNames[i];
+      if (uriVariables == null || !uriVariables.containsKey(name)) {
+        throw new IllegalArgumentException("Map has no value for '" + name + "'");
+      }
+      Object value = uriVariables.get(name);
+      String text = value != null ? value.toString() : "";
+      uri.append(queryVariables[i] ? UriUtils.encodeQueryParam(text, StandardCharsets.UTF_8)
+          : UriUtils.encodePathSegment(text, StandardCharsets.UTF_8));
+    }
+    uri.append(literals[variableNames.length]);
+    return URI.create(uri.toString());
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+}
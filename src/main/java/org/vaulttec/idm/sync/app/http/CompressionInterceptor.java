@@ -0,0 +1,169 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Requests compressed responses via <code>Accept-Encoding: gzip, deflate</code>
+ * and decompresses the response bodies. The number of bytes transferred and
+ * decompressed are recorded in the given {@link RestClientMetrics} (if any).
+ * <p>
+ * This interceptor has to be the last one, so the other interceptors see the
+ * decompressed response. The underlying HTTP client must not decompress the
+ * responses itself.
+ */
+public class CompressionInterceptor implements ClientHttpRequestInterceptor {
+
+  private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+  private final RestClientMetrics metrics;
+
+  public CompressionInterceptor() {
+    this(null);
+  }
+
+  public CompressionInterceptor(RestClientMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+    return new DecompressingResponse(execution.execute(request, body), request.getMethodValue(),
+        metrics != null ? metrics.getCurrentEndpoint(request.getURI()) : null);
+  }
+
+  private class DecompressingResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse delegate;
+    private final String method;
+    private final String endpoint;
+    private final String encoding;
+    private HttpHeaders headers;
+    private CountingInputStream compressedBody;
+    private CountingInputStream rawBody;
+
+    DecompressingResponse(ClientHttpResponse delegate, String method, String endpoint) {
+      this.delegate = delegate;
+      this.method = method;
+      this.endpoint = endpoint;
+      String contentEncoding = delegate.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+      this.encoding = contentEncoding != null ? contentEncoding.trim().toLowerCase() : null;
+    }
+
+    private boolean isCompressed() {
+      return "gzip".equals(encoding) || "x-gzip".equals(encoding) || "deflate".equals(encoding);
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (rawBody == null) {
+        compressedBody = new CountingInputStream(delegate.getBody());
+        if (!isCompressed()) {
+          rawBody = compressedBody;
+        } else if ("deflate".equals(encoding)) {
+          rawBody = new CountingInputStream(inflate(compressedBody));
+        } else {
+          rawBody = new CountingInputStream(gunzip(compressedBody));
+        }
+      }
+      return rawBody;
+    }
+
+    /**
+     * Returns an empty stream for empty (e.g. <code>204 No Content</code>)
+     * bodies which can't be read by {@link GZIPInputStream}.
+     */
+    private InputStream gunzip(InputStream body) throws IOException {
+      PushbackInputStream pushback = new PushbackInputStream(body, 1);
+      int b = pushback.read();
+      if (b < 0) {
+        return InputStream.nullInputStream();
+      }
+      pushback.unread(b);
+      return new GZIPInputStream(pushback);
+    }
+
+    /**
+     * HTTP's "deflate" is a zlib stream but some servers send raw deflate data
+     * - so the zlib header is checked.
+     */
+    private InputStream inflate(InputStream body) throws IOException {
+      PushbackInputStream pushback = new PushbackInputStream(body, 2);
+      byte[] header = pushback.readNBytes(2);
+      pushback.unread(header);
+      boolean zlib = header.length == 2 && (header[0] & 0x0f) == 8
+          && ((header[0] & 0xff) << 8 | (header[1] & 0xff)) % 31 == 0;
+      return new InflaterInputStream(pushback, new Inflater(!zlib));
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      if (headers == null) {
+        if (isCompressed()) {
+          HttpHeaders decompressedHeaders = new HttpHeaders();
+          decompressedHeaders.putAll(delegate.getHeaders());
+          decompressedHeaders.remove(HttpHeaders.CONTENT_ENCODING);
+          decompressedHeaders.remove(HttpHeaders.CONTENT_LENGTH);
+          headers = HttpHeaders.readOnlyHttpHeaders(decompressedHeaders);
+        } else {
+          headers = delegate.getHeaders();
+        }
+      }
+      return headers;
+    }
+
+    @Override
+    public HttpStatus getStatusCode() throws IOException {
+      return delegate.getStatusCode();
+    }
+
+    @Override
+    public int getRawStatusCode() throws IOException {
+      return delegate.getRawStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return delegate.getStatusText();
+    }
+
+    @Override
+    public void close() {
+      if (metrics != null && rawBody != null && !rawBody.recorded) {
+        rawBody.recorded = true;
+        metrics.recordCompression(method, endpoint, compressedBody.count, rawBody.count);
+      }
+      delegate.close();
+    }
+  }
+}
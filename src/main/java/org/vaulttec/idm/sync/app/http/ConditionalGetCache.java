@@ -0,0 +1,223 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+/**
+ * HTTP cache for GET requests which uses the response's validators
+ * (<code>ETag</code> and <code>Last-Modified</code>) to send conditional
+ * requests (<code>If-None-Match</code> and <code>If-Modified-Since</code>).
+ * If the server responds with <code>304 Not Modified</code> then the cached
+ * body is returned as <code>200 OK</code> response.
+ * <p>
+ * The response bodies are cached instead of the deserialized entities because
+ * the entities are modified during a sync. The cache keeps the most recently
+ * used URLs only. Responses are cached per URL and <code>Accept</code> header.
+ * Requests with <code>Cache-Control: no-cache</code> (e.g. warm-up probes)
+ * bypass the cache.
+ */
+public class ConditionalGetCache implements ClientHttpRequestInterceptor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConditionalGetCache.class);
+
+  /**
+   * Headers of a <code>304 Not Modified</code> response which don't replace the
+   * cached ones.
+   */
+  private static final Set<String> CONTENT_HEADERS = Set.of(HttpHeaders.CONTENT_LENGTH.toLowerCase(),
+      HttpHeaders.CONTENT_TYPE.toLowerCase(), HttpHeaders.CONTENT_ENCODING.toLowerCase(),
+      HttpHeaders.TRANSFER_ENCODING.toLowerCase());
+
+  private final Map<String, Entry> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param maxEntries maximum number of cached responses
+   */
+  public ConditionalGetCache(int maxEntries) {
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    if (request.getMethod() != HttpMethod.GET || isNoCache(request.getHeaders())) {
+      return execution.execute(request, body);
+    }
+    URI uri = request.getURI();
+    String key = uri + " " + request.getHeaders().getAccept();
+    Entry cached = get(key);
+    if (cached != null) {
+      if (cached.etag != null) {
+        request.getHeaders().setIfNoneMatch(cached.etag);
+      }
+      if (cached.lastModified != null) {
+        request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+      }
+    }
+    ClientHttpResponse response = execution.execute(request, body);
+    int status = response.getRawStatusCode();
+    if (status == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+      hits.incrementAndGet();
+      LOG.debug("Not modified: {}", uri);
+      HttpHeaders headers = new HttpHeaders();
+      headers.putAll(cached.headers);
+      response.getHeaders().forEach((name, values) -> {
+        if (!CONTENT_HEADERS.contains(name.toLowerCase())) {
+          headers.put(name, values);
+        }
+      });
+      response.close();
+      return new CachedResponse(headers, cached.body);
+    }
+    misses.incrementAndGet();
+    if (status != HttpStatus.OK.value()) {
+      return response;
+    }
+    HttpHeaders headers = response.getHeaders();
+    String etag = headers.getETag();
+    String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+    if (etag == null && lastModified == null) {
+      remove(key);
+      return response;
+    }
+    byte[] responseBody;
+    try {
+      responseBody = StreamUtils.copyToByteArray(response.getBody());
+    } finally {
+      response.close();
+    }
+    HttpHeaders cachedHeaders = HttpHeaders.readOnlyHttpHeaders(headers);
+    put(key, new Entry(etag, lastModified, cachedHeaders, responseBody));
+    return new CachedResponse(cachedHeaders, responseBody);
+  }
+
+  private static boolean isNoCache(HttpHeaders headers) {
+    String cacheControl = headers.getCacheControl();
+    return cacheControl != null && cacheControl.contains("no-cache");
+  }
+
+  private synchronized Entry get(String key) {
+    return entries.get(key);
+  }
+
+  private synchronized void put(String key, Entry entry) {
+    entries.put(key, entry);
+  }
+
+  private synchronized void remove(String key) {
+    entries.remove(key);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Number of requests answered with <code>304 Not Modified</code>.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private static class Entry {
+    private final String etag;
+    private final String lastModified;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    Entry(String etag, String lastModified, HttpHeaders headers, byte[] body) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.headers = headers;
+      this.body = body;
+    }
+  }
+
+  private static class CachedResponse implements ClientHttpResponse {
+
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    CachedResponse(HttpHeaders headers, byte[] body) {
+      this.headers = headers;
+      this.body = body;
+    }
+
+    @Override
+    public InputStream getBody() {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public HttpStatus getStatusCode() {
+      return HttpStatus.OK;
+    }
+
+    @Override
+    public int getRawStatusCode() {
+      return HttpStatus.OK.value();
+    }
+
+    @Override
+    public String getStatusText() {
+      return HttpStatus.OK.getReasonPhrase();
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.NoHttpResponseException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
+
+/**
+ * {@link RetryPolicy} with exponential backoff and jitter.
+ * <p>
+ * Retried are
+ * <ul>
+ * <li><code>429 Too Many Requests</code> and
+ * <code>503 Service Unavailable</code> (the server didn't process the
+ * request),</li>
+ * <li>failed connection attempts,</li>
+ * <li>for idempotent methods only: <code>502 Bad Gateway</code>,
+ * <code>504 Gateway Timeout</code> and connections reset by the server (the
+ * request may have been processed already).</li>
+ * </ul>
+ * The delay is taken from the response's <code>Retry-After</code> header (if
+ * any) or doubled with each attempt (starting with the initial backoff, capped
+ * by the max backoff). Half of the delay is randomized to spread the retries
+ * of concurrent calls. No retry is made if it would exceed the call's time
+ * budget.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+  private static final Set<HttpMethod> IDEMPOTENT_METHODS = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD,
+      HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.OPTIONS);
+
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final long timeBudgetMillis;
+
+  public ExponentialBackoffRetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis,
+      long timeBudgetMillis) {
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  @Override
+  public long getRetryDelayMillis(HttpMethod method, RestClientException exception, int attempt,
+      long elapsedMillis) {
+    if (attempt >= maxAttempts || !isRetryable(method, exception)) {
+      return -1;
+    }
+    long delay = getRetryAfterMillis(exception);
+    if (delay < 0) {
+      long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+      delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+    if (timeBudgetMillis > 0 && elapsedMillis + delay > timeBudgetMillis) {
+      return -1;
+    }
+    return delay;
+  }
+
+  protected boolean isRetryable(HttpMethod method, RestClientException exception) {
+    boolean idempotent = IDEMPOTENT_METHODS.contains(method);
+    if (exception instanceof RestClientResponseException) {
+      int status = ((RestClientResponseException) exception).getRawStatusCode();
+      if (status == HttpStatus.TOO_MANY_REQUESTS.value() || status == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+        return true;
+      }
+      return idempotent
+          && (status == HttpStatus.BAD_GATEWAY.value() || status == HttpStatus.GATEWAY_TIMEOUT.value());
+    }
+    if (exception instanceof ResourceAccessException) {
+      for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof ConnectException) {
+          return true;
+        }
+        if (cause instanceof SocketException || cause instanceof NoHttpResponseException) {
+          return idempotent;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the delay requested by the <code>Retry-After</code> header (in
+   * seconds or as HTTP date) or <code>-1</code> if there's none.
+   */
+  protected long getRetryAfterMillis(RestClientException exception) {
+    if (exception instanceof RestClientResponseException) {
+      HttpHeaders headers = ((RestClientResponseException) exception).getResponseHeaders();
+      String retryAfter = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+      if (StringUtils.hasText(retryAfter)) {
+        try {
+          return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+          try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+          } catch (DateTimeParseException e2) {
+            // Ignore
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return "maxAttempts=" + maxAttempts + ", initialBackoffMillis=" + initialBackoffMillis + ", maxBackoffMillis="
+        + maxBackoffMillis + ", timeBudgetMillis=" + timeBudgetMillis;
+  }
+}
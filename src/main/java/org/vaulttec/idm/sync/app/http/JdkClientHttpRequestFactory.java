@@ -0,0 +1,215 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * {@link ClientHttpRequestFactory} based on the JDK's {@link HttpClient}.
+ * <p>
+ * With {@link HttpClient.Version#HTTP_2} concurrent requests to the same host
+ * are multiplexed over a single connection. The protocol version negotiated
+ * with a host is logged when it's seen for the first time (or changes).
+ */
+public class JdkClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JdkClientHttpRequestFactory.class);
+
+  /**
+   * Headers which are set by the {@link HttpClient} itself and are rejected
+   * when set by the caller.
+   */
+  private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host",
+      "upgrade");
+
+  private final HttpClient httpClient;
+  private final RequestTimeouts timeouts;
+  private final Map<String, HttpClient.Version> negotiatedVersions = new ConcurrentHashMap<>();
+
+  /**
+   * @param timeouts timeouts for receiving the response headers - per
+   *                 {@link RequestTimeouts.Profile} of the calling thread
+   */
+  public JdkClientHttpRequestFactory(HttpClient.Version version, String proxyHost, int proxyPort,
+      int connectTimeoutMillis, RequestTimeouts timeouts) {
+    HttpClient.Builder builder = HttpClient.newBuilder().version(version)
+        .connectTimeout(Duration.ofMillis(connectTimeoutMillis)).followRedirects(HttpClient.Redirect.NEVER);
+    if (proxyHost != null) {
+      builder.proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)));
+    } else {
+      builder.proxy(ProxySelector.getDefault());
+    }
+    this.httpClient = builder.build();
+    this.timeouts = timeouts;
+  }
+
+  @Override
+  public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+    return new JdkClientHttpRequest(uri, httpMethod, Duration.ofMillis(timeouts.getTimeoutMillis(httpMethod)));
+  }
+
+  private void logNegotiatedVersion(URI uri, HttpClient.Version version) {
+    String authority = uri.getScheme() + "://" + uri.getAuthority();
+    HttpClient.Version previous = negotiatedVersions.put(authority, version);
+    if (previous != version) {
+      LOG.info("Negotiated protocol {} with '{}'", version, authority);
+    }
+  }
+
+  private class JdkClientHttpRequest extends AbstractClientHttpRequest {
+
+    private final URI uri;
+    private final HttpMethod method;
+    private final Duration timeout;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+    JdkClientHttpRequest(URI uri, HttpMethod method, Duration timeout) {
+      this.uri = uri;
+      this.method = method;
+      this.timeout = timeout;
+    }
+
+    @Override
+    public String getMethodValue() {
+      return method.name();
+    }
+
+    @Override
+    public URI getURI() {
+      return uri;
+    }
+
+    @Override
+    protected OutputStream getBodyInternal(HttpHeaders headers) throws IOException {
+      return body;
+    }
+
+    @Override
+    protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+      byte[] bytes = body.toByteArray();
+      HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(timeout).method(method.name(),
+          bytes.length > 0 ? HttpRequest.BodyPublishers.ofByteArray(bytes) : HttpRequest.BodyPublishers.noBody());
+      headers.forEach((name, values) -> {
+        if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+          values.forEach(value -> builder.header(name, value));
+        }
+      });
+      CompletableFuture<HttpResponse<InputStream>> future = httpClient.sendAsync(builder.build(),
+          HttpResponse.BodyHandlers.ofInputStream());
+      RequestAbort.register(() -> future.cancel(true));
+      try {
+        HttpResponse<InputStream> response = future.get();
+        logNegotiatedVersion(uri, response.version());
+        return new JdkClientHttpResponse(response);
+      } catch (CancellationException e) {
+        throw new IOException("Request aborted: " + uri, e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Request failed: " + uri, e.getCause());
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        Thread.currentThread().interrupt();
+        throw new IOException("Request interrupted: " + uri, e);
+      }
+    }
+  }
+
+  static class JdkClientHttpResponse implements ClientHttpResponse {
+
+    private final HttpResponse<InputStream> response;
+    private HttpHeaders headers;
+
+    JdkClientHttpResponse(HttpResponse<InputStream> response) {
+      this.response = response;
+    }
+
+    @Override
+    public HttpStatus getStatusCode() throws IOException {
+      return HttpStatus.valueOf(response.statusCode());
+    }
+
+    @Override
+    public int getRawStatusCode() throws IOException {
+      return response.statusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      HttpStatus status = HttpStatus.resolve(response.statusCode());
+      return status != null ? status.getReasonPhrase() : "";
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      if (headers == null) {
+        HttpHeaders responseHeaders = new HttpHeaders();
+        for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+          // Skip HTTP/2 pseudo headers
+          if (!entry.getKey().startsWith(":")) {
+            responseHeaders.addAll(entry.getKey(), entry.getValue());
+          }
+        }
+        headers = HttpHeaders.readOnlyHttpHeaders(responseHeaders);
+      }
+      return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      return response.body();
+    }
+
+    @Override
+    public void close() {
+      try {
+        response.body().close();
+      } catch (IOException e) {
+        // Ignore
+      }
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads JSON arrays into a {@link List} via Jackson's streaming
+ * {@link JsonParser} for the element types a {@link JsonElementReader} is
+ * registered for. In contrast to data binding only the fields picked by the
+ * element reader are processed - all others are skipped.
+ * <p>
+ * This converter is read-only and only supports the generic
+ * <code>List&lt;T&gt;</code> types used with a
+ * {@link org.springframework.core.ParameterizedTypeReference}. For all other
+ * types the next converter of the
+ * {@link org.springframework.web.client.RestTemplate} is used.
+ */
+public class JsonListHttpMessageConverter implements GenericHttpMessageConverter<Object> {
+
+  private static final List<MediaType> SUPPORTED_MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON,
+      new MediaType("application", "*+json"));
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+  private final Map<Class<?>, JsonElementReader<?>> readers = new HashMap<>();
+
+  /**
+   * Reads a JSON object into an instance of the element type. The given parser
+   * is positioned at the object's {@link JsonToken#START_OBJECT} and has to be
+   * left at the corresponding {@link JsonToken#END_OBJECT}.
+   */
+  @FunctionalInterface
+  public interface JsonElementReader<T> {
+    T read(JsonParser parser) throws IOException;
+  }
+
+  public <T> JsonListHttpMessageConverter addReader(Class<T> elementType, JsonElementReader<T> reader) {
+    readers.put(elementType, reader);
+    return this;
+  }
+
+  @Override
+  public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+    return getReader(type) != null && canRead(mediaType);
+  }
+
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  private boolean canRead(MediaType mediaType) {
+    if (mediaType == null) {
+      return true;
+    }
+    for (MediaType supportedMediaType : SUPPORTED_MEDIA_TYPES) {
+      if (supportedMediaType.includes(mediaType)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private JsonElementReader<?> getReader(Type type) {
+    if (type instanceof ParameterizedType) {
+      ParameterizedType parameterizedType = (ParameterizedType) type;
+      if (parameterizedType.getRawType() == List.class) {
+        return readers.get(parameterizedType.getActualTypeArguments()[0]);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+      throws IOException, HttpMessageNotReadableException {
+    JsonElementReader<?> reader = getReader(type);
+    if (reader == null) {
+      throw new HttpMessageNotReadableException("Unsupported type " + type, inputMessage);
+    }
+    try (InputStream body = inputMessage.getBody()) {
+      return readList(body, reader);
+    } catch (JsonProcessingException e) {
+      throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e, inputMessage);
+    }
+  }
+
+  /**
+   * Reads the JSON array from the given stream with the given element reader.
+   */
+  public <T> List<T> readList(InputStream body, JsonElementReader<T> reader) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new JsonParseException(parser, "Expected JSON array");
+      }
+      List<T> elements = new ArrayList<>();
+      JsonToken token;
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+        if (token == JsonToken.START_OBJECT) {
+          elements.add(reader.read(parser));
+        } else if (token == JsonToken.VALUE_NULL) {
+          elements.add(null);
+        } else {
+          throw new JsonParseException(parser, "Expected JSON object but got " + token);
+        }
+      }
+      return elements;
+    }
+  }
+
+  @Override
+  public Object read(Class<? extends Object> clazz, HttpInputMessage inputMessage)
+      throws IOException, HttpMessageNotReadableException {
+    throw new HttpMessageNotReadableException("Unsupported type " + clazz, inputMessage);
+  }
+
+  @Override
+  public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  public void write(Object t, Type type, MediaType contentType, HttpOutputMessage outputMessage)
+      throws IOException, HttpMessageNotWritableException {
+    throw new HttpMessageNotWritableException("Writing not supported");
+  }
+
+  @Override
+  public void write(Object t, MediaType contentType, HttpOutputMessage outputMessage)
+      throws IOException, HttpMessageNotWritableException {
+    throw new HttpMessageNotWritableException("Writing not supported");
+  }
+
+  @Override
+  public List<MediaType> getSupportedMediaTypes() {
+    return SUPPORTED_MEDIA_TYPES;
+  }
+}
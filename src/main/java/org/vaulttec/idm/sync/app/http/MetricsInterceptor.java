@@ -0,0 +1,122 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Records the duration, status and response body size of every request in the
+ * given {@link RestClientMetrics}. Requests aborted by their socket timeout are
+ * recorded with status <code>TIMEOUT</code>. The duration covers the request until the
+ * response headers are received - without the time waited for the rate limiter
+ * or the bulkhead (the preceding interceptors).
+ * <p>
+ * This interceptor has to precede the {@link CompressionInterceptor}, so the
+ * size of the decompressed body is recorded.
+ */
+public class MetricsInterceptor implements ClientHttpRequestInterceptor {
+
+  private final RestClientMetrics metrics;
+
+  public MetricsInterceptor(RestClientMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    String method = request.getMethodValue();
+    String endpoint = metrics.getCurrentEndpoint(request.getURI());
+    long start = System.nanoTime();
+    ClientHttpResponse response;
+    try {
+      response = execution.execute(request, body);
+    } catch (IOException | RuntimeException e) {
+      metrics.recordRequest(method, endpoint, isTimeout(e) ? "TIMEOUT" : "IO_ERROR", System.nanoTime() - start);
+      throw e;
+    }
+    metrics.recordRequest(method, endpoint, Integer.toString(response.getRawStatusCode()),
+        System.nanoTime() - start);
+    return new MeteredResponse(response, method, endpoint);
+  }
+
+  private static boolean isTimeout(Exception e) {
+    return e instanceof SocketTimeoutException || e instanceof HttpTimeoutException;
+  }
+
+  private class MeteredResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse delegate;
+    private final String method;
+    private final String endpoint;
+    private CountingInputStream body;
+
+    MeteredResponse(ClientHttpResponse delegate, String method, String endpoint) {
+      this.delegate = delegate;
+      this.method = method;
+      this.endpoint = endpoint;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        body = new CountingInputStream(delegate.getBody());
+      }
+      return body;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public HttpStatus getStatusCode() throws IOException {
+      return delegate.getStatusCode();
+    }
+
+    @Override
+    public int getRawStatusCode() throws IOException {
+      return delegate.getRawStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return delegate.getStatusText();
+    }
+
+    @Override
+    public void close() {
+      if (body != null && !body.recorded) {
+        body.recorded = true;
+        metrics.recordResponseSize(method, endpoint, body.count);
+      }
+      delegate.close();
+    }
+  }
+}
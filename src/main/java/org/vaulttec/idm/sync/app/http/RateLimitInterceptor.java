@@ -0,0 +1,112 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StringUtils;
+
+/**
+ * Sends every request through the given {@link RateLimiter} and feeds the rate
+ * limit headers of the responses back to it. Supported are GitLab's
+ * <code>RateLimit-Remaining</code> / <code>RateLimit-Reset</code> (reset as
+ * Unix time) and Mattermost's <code>X-Ratelimit-Remaining</code> /
+ * <code>X-Ratelimit-Reset</code> (reset in seconds). A
+ * <code>429 Too Many Requests</code> response pauses the limiter for the
+ * duration given by <code>Retry-After</code> (or the default wait time).
+ * <p>
+ * The time waited for the limiter and the <code>429</code> responses are
+ * recorded in the given {@link RestClientMetrics} (if any).
+ */
+public class RateLimitInterceptor implements ClientHttpRequestInterceptor {
+
+  private static final String[][] RATE_LIMIT_HEADERS = { { "RateLimit-Remaining", "RateLimit-Reset" },
+      { "X-Ratelimit-Remaining", "X-Ratelimit-Reset" } };
+
+  /**
+   * Reset values above this are Unix timestamps instead of seconds.
+   */
+  private static final long MIN_EPOCH_SECONDS = 1_000_000_000L;
+
+  private final RateLimiter rateLimiter;
+  private final int defaultWaitSeconds;
+  private final RestClientMetrics metrics;
+
+  public RateLimitInterceptor(RateLimiter rateLimiter, int defaultWaitSeconds) {
+    this(rateLimiter, defaultWaitSeconds, null);
+  }
+
+  public RateLimitInterceptor(RateLimiter rateLimiter, int defaultWaitSeconds, RestClientMetrics metrics) {
+    this.rateLimiter = rateLimiter;
+    this.defaultWaitSeconds = defaultWaitSeconds;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    try {
+      long waitNanos = rateLimiter.acquire(RequestPriority.current(request.getMethod()));
+      if (metrics != null && waitNanos > 0) {
+        metrics.recordRateLimitWait(waitNanos);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for rate limit: " + request.getURI(), e);
+    }
+    ClientHttpResponse response = execution.execute(request, body);
+    HttpHeaders headers = response.getHeaders();
+    if (response.getRawStatusCode() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+      if (metrics != null) {
+        metrics.recordRateLimited();
+      }
+      long retryAfter = parseLong(headers.getFirst(HttpHeaders.RETRY_AFTER));
+      rateLimiter.pause(retryAfter > 0 ? retryAfter : defaultWaitSeconds);
+    } else {
+      for (String[] names : RATE_LIMIT_HEADERS) {
+        long remaining = parseLong(headers.getFirst(names[0]));
+        long reset = parseLong(headers.getFirst(names[1]));
+        if (remaining >= 0 && reset >= 0) {
+          if (reset > MIN_EPOCH_SECONDS) {
+            reset = Math.max(0, reset - System.currentTimeMillis() / 1000);
+          }
+          rateLimiter.update(remaining, reset);
+          break;
+        }
+      }
+    }
+    return response;
+  }
+
+  private static long parseLong(String value) {
+    if (StringUtils.hasText(value)) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        // Ignore
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket which limits the rate of requests sent to an upstream server.
+ * <p>
+ * The rate starts with the configured number of permits per second (or
+ * unlimited if not configured). With each response announcing the server's
+ * remaining request budget the rate is adapted to spread this budget over the
+ * time until the server's rate limit window is reset - so the requests stay
+ * just below the server's limit instead of running into
+ * <code>429 Too Many Requests</code>. If the budget is exhausted then all
+ * requests are paused until the window is reset.
+ * <p>
+ * The lower {@link RequestPriority priorities} only get a permit as long as the
+ * bucket holds more than the share reserved for the higher priorities - so a
+ * burst of e.g. statistics requests can't use up the permits of the sync.
+ */
+public class RateLimiter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RateLimiter.class);
+
+  /**
+   * Fraction of the server's remaining budget which is used.
+   */
+  static final double UTILIZATION = 0.9;
+
+  private final String name;
+  private final double maxPermitsPerSecond;
+  private final boolean adaptive;
+  private double permitsPerSecond;
+  private double tokens;
+  private long lastRefillNanos;
+  private long pausedUntilNanos;
+
+  /**
+   * @param maxPermitsPerSecond upper bound of the rate - values
+   *                            <code>&lt;= 0</code> mean unlimited
+   * @param adaptive            <code>true</code> if the rate is adapted to the
+   *                            server's remaining request budget
+   */
+  public RateLimiter(String name, double maxPermitsPerSecond, boolean adaptive) {
+    this.name = name;
+    this.maxPermitsPerSecond = maxPermitsPerSecond;
+    this.adaptive = adaptive;
+    this.permitsPerSecond = maxPermitsPerSecond;
+    this.tokens = getCapacity();
+    this.lastRefillNanos = System.nanoTime();
+    this.pausedUntilNanos = lastRefillNanos;
+  }
+
+  /**
+   * Blocks until a permit for the highest priority is available and returns
+   * the time waited in nanoseconds.
+   */
+  public long acquire() throws InterruptedException {
+    return acquire(RequestPriority.SYNC_WRITE);
+  }
+
+  /**
+   * Blocks until a permit for the given priority is available and returns the
+   * time waited in nanoseconds.
+   */
+  public long acquire(RequestPriority priority) throws InterruptedException {
+    long waitedNanos = 0;
+    long waitNanos;
+    while ((waitNanos = reserve(System.nanoTime(), priority)) < 0) {
+      TimeUnit.NANOSECONDS.sleep(-waitNanos);
+      waitedNanos -= waitNanos;
+    }
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+      waitedNanos += waitNanos;
+    }
+    if (waitedNanos > 0) {
+      LOG.debug("Waited {} ms for rate limit of '{}' ({})", TimeUnit.NANOSECONDS.toMillis(waitedNanos), name,
+          priority);
+    }
+    return waitedNanos;
+  }
+
+  /**
+   * Takes a permit for the highest priority and returns the time in
+   * nanoseconds the caller has to wait before using it.
+   */
+  long reserve(long now) {
+    return reserve(now, RequestPriority.SYNC_WRITE);
+  }
+
+  /**
+   * Takes a permit for the given priority and returns the time in nanoseconds
+   * the caller has to wait before using it. If the permits left are reserved
+   * for the higher priorities then no permit is taken and the negated time
+   * until the caller should try again is returned.
+   */
+  synchronized long reserve(long now, RequestPriority priority) {
+    long waitNanos = Math.max(0, pausedUntilNanos - now);
+    if (isUnlimited()) {
+      return waitNanos;
+    }
+    refill(now);
+    double reserved = (getCapacity() - 1) * priority.getReservedShare();
+    if (reserved > 0 && tokens - 1 < reserved) {
+      double missing = reserved + 1 - tokens;
+      return -Math.max(1, waitNanos + (long) (missing / permitsPerSecond * TimeUnit.SECONDS.toNanos(1)));
+    }
+    tokens -= 1;
+    if (tokens < 0) {
+      waitNanos += (long) (-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+    return waitNanos;
+  }
+
+  /**
+   * Adapts the rate to the server's remaining request budget within the
+   * current rate limit window.
+   *
+   * @param remaining    number of requests remaining in the current window
+   * @param resetSeconds seconds until the current window is reset
+   */
+  public synchronized void update(long remaining, long resetSeconds) {
+    if (!adaptive) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (remaining <= 0) {
+      pause(now, Math.max(1, resetSeconds));
+    } else {
+      double rate = remaining * UTILIZATION / Math.max(1, resetSeconds);
+      if (maxPermitsPerSecond > 0) {
+        rate = Math.min(rate, maxPermitsPerSecond);
+      }
+      refill(now);
+      permitsPerSecond = rate;
+      tokens = Math.min(tokens, getCapacity());
+    }
+  }
+
+  /**
+   * Pauses all requests for the given number of seconds, e.g. after the server
+   * responded with <code>429 Too Many Requests</code>.
+   */
+  public synchronized void pause(long seconds) {
+    pause(System.nanoTime(), seconds);
+  }
+
+  private void pause(long now, long seconds) {
+    long until = now + TimeUnit.SECONDS.toNanos(seconds);
+    if (until - pausedUntilNanos > 0) {
+      LOG.info("Pausing requests to '{}' for {} seconds due to rate limit", name, seconds);
+      pausedUntilNanos = until;
+      tokens = Math.min(tokens, 0);
+    }
+  }
+
+  public synchronized double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  private boolean isUnlimited() {
+    return permitsPerSecond <= 0;
+  }
+
+  /**
+   * The bucket holds at most the permits of one second, so no more than this
+   * burst is sent after an idle period.
+   */
+  private double getCapacity() {
+    return Math.max(1, permitsPerSecond);
+  }
+
+  private void refill(long now) {
+    if (!isUnlimited()) {
+      long elapsedNanos = now - Math.max(lastRefillNanos, Math.min(now, pausedUntilNanos));
+      if (elapsedNanos > 0) {
+        tokens = Math.min(getCapacity(), tokens + elapsedNanos * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+      }
+    }
+    lastRefillNanos = now;
+  }
+}
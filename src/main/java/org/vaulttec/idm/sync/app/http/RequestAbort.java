@@ -0,0 +1,112 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.util.function.Supplier;
+
+/**
+ * Abort of the requests sent by a call which is executed in another thread -
+ * e.g. a listing page which missed its deadline must not keep its thread, its
+ * bulkhead slot and its pooled connection until the socket timeout. So the
+ * request factory registers how to abort each request sent by a thread which
+ * executes a call via {@link #call(Supplier)}.
+ */
+public class RequestAbort {
+
+  private static final ThreadLocal<RequestAbort> CURRENT_ABORT = new ThreadLocal<>();
+
+  private Runnable abortAction;
+  private boolean running;
+  private boolean aborted;
+
+  /**
+   * Executes the given call, so the requests sent by the current thread can be
+   * aborted via {@link #abort()}.
+   */
+  public <T> T call(Supplier<T> call) {
+    RequestAbort previousAbort = CURRENT_ABORT.get();
+    CURRENT_ABORT.set(this);
+    synchronized (this) {
+      running = true;
+    }
+    try {
+      return call.get();
+    } finally {
+      synchronized (this) {
+        running = false;
+        abortAction = null;
+      }
+      if (previousAbort != null) {
+        CURRENT_ABORT.set(previousAbort);
+      } else {
+        CURRENT_ABORT.remove();
+      }
+    }
+  }
+
+  /**
+   * Aborts the request in flight and all requests sent afterwards by the call.
+   *
+   * @return <code>false</code> if the call isn't running (anymore)
+   */
+  public boolean abort() {
+    Runnable action;
+    synchronized (this) {
+      if (!running || aborted) {
+        return false;
+      }
+      aborted = true;
+      action = abortAction;
+    }
+    if (action != null) {
+      action.run();
+    }
+    return true;
+  }
+
+  public synchronized boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * Registers how to abort the request the current thread is about to send. If
+   * the call was already aborted then the request is aborted right away.
+   */
+  public static void register(Runnable abortAction) {
+    RequestAbort abort = CURRENT_ABORT.get();
+    if (abort != null) {
+      boolean aborted;
+      synchronized (abort) {
+        abort.abortAction = abortAction;
+        aborted = abort.aborted;
+      }
+      if (aborted) {
+        abortAction.run();
+      }
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the call executed by the current thread was
+   * aborted, e.g. so it isn't retried.
+   */
+  public static boolean isCurrentAborted() {
+    RequestAbort abort = CURRENT_ABORT.get();
+    return abort != null && abort.isAborted();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Priority lanes of the requests sent to an upstream server. The server's
+ * concurrency ({@link Bulkhead}) and rate budget ({@link RateLimiter}) are
+ * handed out by priority: waiting requests of a higher priority are served
+ * first and the lower priorities can only use a part of the budget. So
+ * interactive or background traffic can't starve the sync.
+ * <p>
+ * The priority is bound to the calling thread via
+ * {@link #callWithPriority(RequestPriority, Supplier)}. Requests sent without
+ * an explicit priority are sync requests - {@link #SYNC_READ} for
+ * <code>GET</code> and <code>HEAD</code> and {@link #SYNC_WRITE} for all other
+ * methods.
+ */
+public enum RequestPriority {
+
+  SYNC_WRITE(0), SYNC_READ(0), API(0.25), STATISTICS(0.5);
+
+  private static final ThreadLocal<RequestPriority> CURRENT_PRIORITY = new ThreadLocal<>();
+
+  private final double reservedShare;
+
+  RequestPriority(double reservedShare) {
+    this.reservedShare = reservedShare;
+  }
+
+  /**
+   * Share of the concurrency and rate budget which is reserved for the higher
+   * priorities.
+   */
+  public double getReservedShare() {
+    return reservedShare;
+  }
+
+  /**
+   * Executes the given call with the given priority, so the requests sent by
+   * the current thread use the corresponding lane.
+   */
+  public static <T> T callWithPriority(RequestPriority priority, Supplier<T> call) {
+    RequestPriority previousPriority = CURRENT_PRIORITY.get();
+    CURRENT_PRIORITY.set(priority);
+    try {
+      return call.get();
+    } finally {
+      if (previousPriority != null) {
+        CURRENT_PRIORITY.set(previousPriority);
+      } else {
+        CURRENT_PRIORITY.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the given call bound to the current thread's priority, so it keeps
+   * the priority when executed by another thread.
+   */
+  public static <T> Supplier<T> propagate(Supplier<T> call) {
+    RequestPriority priority = CURRENT_PRIORITY.get();
+    return priority != null ? () -> callWithPriority(priority, call) : call;
+  }
+
+  /**
+   * Returns the priority of a request with the given method sent by the
+   * current thread.
+   */
+  public static RequestPriority current(HttpMethod method) {
+    RequestPriority priority = CURRENT_PRIORITY.get();
+    if (priority == null) {
+      priority = method == HttpMethod.GET || method == HttpMethod.HEAD ? SYNC_READ : SYNC_WRITE;
+    }
+    return priority;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Socket timeouts per class of API call. A slow listing page must not share the
+ * timeout of a single-entity write - so each call is executed with a
+ * {@link Profile} which is picked up by the request factory of the calling
+ * thread's request.
+ * <p>
+ * Requests sent without an explicit profile use {@link Profile#READ} for
+ * <code>GET</code> and <code>HEAD</code> and {@link Profile#WRITE} for all
+ * other methods.
+ */
+public class RequestTimeouts {
+
+  public enum Profile {
+    READ, WRITE, LISTING
+  }
+
+  private static final ThreadLocal<Profile> CURRENT_PROFILE = new ThreadLocal<>();
+
+  private final int readTimeoutMillis;
+  private final int writeTimeoutMillis;
+  private final int listingTimeoutMillis;
+
+  public RequestTimeouts(int readTimeoutMillis, int writeTimeoutMillis, int listingTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.writeTimeoutMillis = writeTimeoutMillis;
+    this.listingTimeoutMillis = listingTimeoutMillis;
+  }
+
+  /**
+   * Executes the given call with the given profile, so the requests sent by the
+   * current thread use the corresponding timeout.
+   */
+  public static <T> T callWithProfile(Profile profile, Supplier<T> call) {
+    Profile previousProfile = CURRENT_PROFILE.get();
+    CURRENT_PROFILE.set(profile);
+    try {
+      return call.get();
+    } finally {
+      if (previousProfile != null) {
+        CURRENT_PROFILE.set(previousProfile);
+      } else {
+        CURRENT_PROFILE.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the timeout of a request with the given method sent by the current
+   * thread.
+   */
+  public int getTimeoutMillis(HttpMethod method) {
+    Profile profile = CURRENT_PROFILE.get();
+    if (profile == null) {
+      profile = method == HttpMethod.GET || method == HttpMethod.HEAD ? Profile.READ : Profile.WRITE;
+    }
+    return getTimeoutMillis(profile);
+  }
+
+  public int getTimeoutMillis(Profile profile) {
+    switch (profile) {
+    case WRITE:
+      return writeTimeoutMillis;
+    case LISTING:
+      return listingTimeoutMillis;
+    default:
+      return readTimeoutMillis;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "readTimeoutMillis=" + readTimeoutMillis + ", writeTimeoutMillis=" + writeTimeoutMillis
+        + ", listingTimeoutMillis=" + listingTimeoutMillis;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the metrics of a client's API calls in a Micrometer
+ * {@link MeterRegistry}:
+ * <ul>
+ * <li><code>idm.client.requests</code> - timer (with percentile histogram) of
+ * the HTTP requests (aborted requests with status <code>TIMEOUT</code>)</li>
+ * <li><code>idm.client.response.size</code> - distribution of the response
+ * body sizes (decompressed)</li>
+ * <li><code>idm.client.response.wire.bytes</code> - number of response body
+ * bytes transferred over the wire (compressed)</li>
+ * <li><code>idm.client.response.decoded.bytes</code> - number of response body
+ * bytes after decompression</li>
+ * <li><code>idm.client.retries</code> - number of retried API calls</li>
+ * <li><code>idm.client.rate.limited</code> - number of
+ * <code>429 Too Many Requests</code> responses</li>
+ * <li><code>idm.client.rate.limit.wait</code> - time spent waiting for the
+ * rate limiter</li>
+ * <li><code>idm.client.page.timeouts</code> - number of listing pages which
+ * weren't retrieved within their deadline</li>
+ * </ul>
+ * All meters are tagged with the <code>client</code> (e.g.
+ * <code>gitlab</code>) and the <code>upstream</code> server. The request
+ * related meters are tagged with the HTTP <code>method</code> and the
+ * <code>endpoint</code> template relative to the API path as well, e.g.
+ * <code>/groups/{groupId}/members</code>.
+ */
+public class RestClientMetrics {
+
+  /**
+   * Numeric IDs (GitLab), UUIDs (Keycloak) and 26 character IDs (Mattermost).
+   */
+  private static final Pattern ID_PATTERN = Pattern
+      .compile("\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[a-z0-9]{26}");
+
+  /**
+   * Endpoint template of the API call executed by the current thread.
+   */
+  private static final ThreadLocal<String> CURRENT_ENDPOINT = new ThreadLocal<>();
+
+  private final MeterRegistry registry;
+  private final Tags tags;
+  private final String basePath;
+  private final Counter rateLimited;
+  private final Timer rateLimitWait;
+  private final Counter pageTimeouts;
+
+  /**
+   * @param client    name of the client, e.g. <code>gitlab</code>
+   * @param serverUrl URL of the upstream server
+   * @param apiPath   path of the server's API the endpoints are relative to
+   */
+  public RestClientMetrics(MeterRegistry registry, String client, String serverUrl, String apiPath) {
+    URI serverUri = URI.create(serverUrl);
+    this.registry = registry;
+    this.tags = Tags.of("client", client, "upstream",
+        serverUri.getPort() < 0 ? serverUri.getHost() : serverUri.getHost() + ":" + serverUri.getPort());
+    this.basePath = (serverUri.getRawPath() != null ? serverUri.getRawPath() : "") + apiPath;
+    this.rateLimited = Counter.builder("idm.client.rate.limited")
+        .description("Number of responses with status 429 Too Many Requests").tags(tags).register(registry);
+    this.rateLimitWait = Timer.builder("idm.client.rate.limit.wait")
+        .description("Time spent waiting for the rate limiter").tags(tags).register(registry);
+    this.pageTimeouts = Counter.builder("idm.client.page.timeouts")
+        .description("Number of listing pages not retrieved within their deadline").tags(tags).register(registry);
+  }
+
+  /**
+   * Returns the endpoint of the given URL (or URL template) - the path relative
+   * to the API path without query and with IDs replaced by <code>{id}</code>.
+   */
+  public String getEndpoint(String url) {
+    String path = url;
+    int schemeEnd = path.indexOf("://");
+    if (schemeEnd >= 0) {
+      int pathStart = path.indexOf('/', schemeEnd + 3);
+      path = pathStart >= 0 ? path.substring(pathStart) : "";
+    }
+    int queryStart = path.indexOf('?');
+    if (queryStart >= 0) {
+      path = path.substring(0, queryStart);
+    }
+    if (path.startsWith(basePath)) {
+      path = path.substring(basePath.length());
+    }
+    String[] segments = path.split("/", -1);
+    for (int i = 0; i < segments.length; i++) {
+      if (ID_PATTERN.matcher(segments[i]).matches()) {
+        segments[i] = "{id}";
+      }
+    }
+    return String.join("/", segments);
+  }
+
+  /**
+   * Executes the given call with the given endpoint template, so the requests
+   * sent by the current thread are recorded with the template instead of the
+   * expanded URL.
+   */
+  public <T> T callWithEndpoint(String endpoint, Supplier<T> call) {
+    String previousEndpoint = CURRENT_ENDPOINT.get();
+    CURRENT_ENDPOINT.set(endpoint);
+    try {
+      return call.get();
+    } finally {
+      if (previousEndpoint != null) {
+        CURRENT_ENDPOINT.set(previousEndpoint);
+      } else {
+        CURRENT_ENDPOINT.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the endpoint template of the API call executed by the current
+   * thread or the endpoint derived from the given URI.
+   */
+  String getCurrentEndpoint(URI uri) {
+    String endpoint = CURRENT_ENDPOINT.get();
+    return endpoint != null ? endpoint : getEndpoint(uri.getRawPath());
+  }
+
+  /**
+   * @param status the response's status code, <code>TIMEOUT</code> or
+   *               <code>IO_ERROR</code>
+   */
+  public void recordRequest(String method, String endpoint, String status, long durationNanos) {
+    Timer.builder("idm.client.requests").description("HTTP requests sent to the upstream server").tags(tags)
+        .tag("method", method).tag("endpoint", endpoint).tag("status", status).publishPercentileHistogram()
+        .register(registry).record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordResponseSize(String method, String endpoint, long bytes) {
+    DistributionSummary.builder("idm.client.response.size").description("Size of the response bodies")
+        .baseUnit("bytes").tags(tags).tag("method", method).tag("endpoint", endpoint).publishPercentileHistogram()
+        .register(registry).record(bytes);
+  }
+
+  /**
+   * @param wireBytes    number of bytes transferred over the wire
+   * @param decodedBytes number of bytes after decompression
+   */
+  public void recordCompression(String method, String endpoint, long wireBytes, long decodedBytes) {
+    Counter.builder("idm.client.response.wire.bytes").description("Response body bytes transferred over the wire")
+        .baseUnit("bytes").tags(tags).tag("method", method).tag("endpoint", endpoint).register(registry)
+        .increment(wireBytes);
+    Counter.builder("idm.client.response.decoded.bytes").description("Response body bytes after decompression")
+        .baseUnit("bytes").tags(tags).tag("method", method).tag("endpoint", endpoint).register(registry)
+        .increment(decodedBytes);
+  }
+
+  public void recordRetry(String method, String endpoint) {
+    Counter.builder("idm.client.retries").description("Number of retried API calls").tags(tags)
+        .tag("method", method).tag("endpoint", endpoint).register(registry).increment();
+  }
+
+  public void recordRateLimited() {
+    rateLimited.increment();
+  }
+
+  public void recordRateLimitWait(long waitNanos) {
+    rateLimitWait.record(waitNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordPageTimeout() {
+    pageTimeouts.increment();
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Decides if (and when) a failed API call is retried.
+ */
+@FunctionalInterface
+public interface RetryPolicy {
+
+  /**
+   * Policy which never retries.
+   */
+  RetryPolicy NEVER = (method, exception, attempt, elapsedMillis) -> -1;
+
+  /**
+   * Returns the delay in milliseconds before the next attempt of the failed API
+   * call or <code>-1</code> if the call is not retried.
+   *
+   * @param method        HTTP method of the failed call
+   * @param exception     exception the call failed with
+   * @param attempt       number of the failed attempt (starting with
+   *                      <code>1</code>)
+   * @param elapsedMillis time spent on the call (all attempts) so far
+   */
+  long getRetryDelayMillis(HttpMethod method, RestClientException exception, int attempt, long elapsedMillis);
+}
@@ -0,0 +1,69 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller executes the
+ * call and all callers arriving while it's in flight share its result (or
+ * exception). Completed calls aren't cached.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+  private final LongAdder sharedCalls = new LongAdder();
+
+  public V execute(K key, Callable<V> call) throws Exception {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> inFlight = calls.putIfAbsent(key, future);
+    if (inFlight != null) {
+      sharedCalls.increment();
+      try {
+        return inFlight.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw (Exception) e.getCause();
+      }
+    }
+    try {
+      V value = call.call();
+      future.complete(value);
+      return value;
+    } catch (Exception | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      calls.remove(key, future);
+    }
+  }
+
+  /**
+   * Number of calls which shared the result of another call.
+   */
+  public long getSharedCalls() {
+    return sharedCalls.sum();
+  }
+}
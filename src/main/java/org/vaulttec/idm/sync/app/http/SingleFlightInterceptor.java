@@ -0,0 +1,129 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Sends identical concurrent GET requests (same URL, <code>Accept</code>
+ * header and {@link RequestPriority}) only once via {@link SingleFlight}. The response
+ * is buffered and every caller gets its own copy, so the deserialized entities
+ * aren't shared between callers (each one reads the buffered body itself).
+ * <p>
+ * Requests with <code>Cache-Control: no-cache</code> ask for their own
+ * response and are always sent.
+ */
+public class SingleFlightInterceptor implements ClientHttpRequestInterceptor {
+
+  private final SingleFlight<String, BufferedResponse> singleFlight = new SingleFlight<>();
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    if (request.getMethod() != HttpMethod.GET || body.length > 0 || isNoCache(request.getHeaders())) {
+      return execution.execute(request, body);
+    }
+    // A request must not wait for a leader with a lower priority (which may be
+    // held back by the rate limiter or bulkhead)
+    String key = RequestPriority.current(request.getMethod()) + " " + request.getURI() + " "
+        + request.getHeaders().getAccept();
+    try {
+      return singleFlight.execute(key, () -> BufferedResponse.of(execution.execute(request, body)));
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static boolean isNoCache(HttpHeaders headers) {
+    String cacheControl = headers.getCacheControl();
+    return cacheControl != null && cacheControl.contains("no-cache");
+  }
+
+  /**
+   * Number of requests which weren't sent because an identical request was in
+   * flight.
+   */
+  public long getSharedRequests() {
+    return singleFlight.getSharedCalls();
+  }
+
+  private static class BufferedResponse implements ClientHttpResponse {
+
+    private final int statusCode;
+    private final String statusText;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    private BufferedResponse(int statusCode, String statusText, HttpHeaders headers, byte[] body) {
+      this.statusCode = statusCode;
+      this.statusText = statusText;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    static BufferedResponse of(ClientHttpResponse response) throws IOException {
+      try (response) {
+        return new BufferedResponse(response.getRawStatusCode(), response.getStatusText(),
+            HttpHeaders.readOnlyHttpHeaders(response.getHeaders()), StreamUtils.copyToByteArray(response.getBody()));
+      }
+    }
+
+    @Override
+    public InputStream getBody() {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public HttpStatus getStatusCode() {
+      return HttpStatus.valueOf(statusCode);
+    }
+
+    @Override
+    public int getRawStatusCode() {
+      return statusCode;
+    }
+
+    @Override
+    public String getStatusText() {
+      return statusText;
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release
+    }
+  }
+}
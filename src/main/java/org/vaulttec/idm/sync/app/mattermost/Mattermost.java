@@ -108,15 +108,19 @@ public class Mattermost extends AbstractApplication {
     return false;
   }
 
+  /**
+   * Syncs the Mattermost users page by page while they are retrieved. Only the
+   * creation of new users is deferred until all users are retrieved.
+   */
   protected Map<String, MMUser> syncUsers(Map<String, MMUser> targetUsers) {
-    List<MMUser> sourceUsers = client.getUsers();
-    if (sourceUsers != null) {
-      Map<String, MMUser> syncedUsers = new HashMap<>();
-
-      // Activate existing users associated with Mattermost team now
+    Map<String, MMUser> syncedUsers = new HashMap<>();
+    Set<String> existingUsernames = new HashSet<>();
+    boolean retrieved = client.getUsers(sourceUsers -> {
       for (MMUser sourceUser : sourceUsers) {
         MMUser targetUser = targetUsers.get(sourceUser.getUsername());
         if (targetUser != null) {
+
+          // Activate existing users associated with Mattermost team now
           if (!sourceUser.isActive()) {
             if (client.updateUserActiveStatus(sourceUser, true)) {
               publishSyncEvent(MattermostEvents.userActivated(sourceUser));
@@ -125,15 +129,27 @@ public class Mattermost extends AbstractApplication {
           }
           syncedUsers.put(sourceUser.getUsername(), sourceUser);
           updateUserIdAttribute(targetUser.getIdpUser(), sourceUser);
+          existingUsernames.add(sourceUser.getUsername());
+        } else if (!sourceUser.isSystemAdmin() && !sourceUser.isBot()
+            && !excludedUsers.contains(sourceUser.getUsername())) {
+
+          // Deactivate existing users which are not associated with Mattermost groups
+          // anymore
+          if (sourceUser.isActive()) {
+            if (client.updateUserActiveStatus(sourceUser, false)) {
+              publishSyncEvent(MattermostEvents.userDeactivated(sourceUser));
+            }
+            sourceUser.setDeleteAt("1");
+          }
+          syncedUsers.put(sourceUser.getUsername(), sourceUser);
         }
       }
+    });
+    if (retrieved) {
 
-      // Mark existing users (by removing from list of current users) and create
-      // non-existing ones
+      // Create non-existing users
       for (MMUser targetUser : targetUsers.values()) {
-        if (sourceUsers.contains(targetUser)) {
-          sourceUsers.remove(targetUser);
-        } else {
+        if (!existingUsernames.contains(targetUser.getUsername())) {
           if (StringUtils.hasText(targetUser.getAuthService()) && !StringUtils.hasText(targetUser.getAuthData())) {
             LOG.warn("New user '{}' not created - missing required authentication data for authentication service '{}'",
                 targetUser.getUsername(), targetUser.getAuthService());
@@ -153,20 +169,6 @@ public class Mattermost extends AbstractApplication {
           }
         }
       }
-
-      // Deactivate existing users which are not associated with Mattermost groups
-      // anymore
-      for (MMUser sourceUser : sourceUsers) {
-        if (!sourceUser.isSystemAdmin() && !sourceUser.isBot() && !excludedUsers.contains(sourceUser.getUsername())) {
-          if (sourceUser.isActive()) {
-            if (client.updateUserActiveStatus(sourceUser, false)) {
-              publishSyncEvent(MattermostEvents.userDeactivated(sourceUser));
-            }
-            sourceUser.setDeleteAt("1");
-          }
-          syncedUsers.put(sourceUser.getUsername(), sourceUser);
-        }
-      }
       return syncedUsers;
     }
     return null;
@@ -331,6 +333,11 @@ public class Mattermost extends AbstractApplication {
     }
   }
 
+  @Override
+  public boolean probe() {
+    return client.probe();
+  }
+
   @Override
   public List<AppStatistics> getStatistics() {
     List<AppStatistics> statistics = new ArrayList<>();
@@ -22,6 +22,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,14 +33,17 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.HttpClientErrorException.TooManyRequests;
 import org.vaulttec.idm.sync.app.AbstractRestClient;
+import org.vaulttec.idm.sync.app.RestClientSettings;
 import org.vaulttec.idm.sync.app.mattermost.model.MMRole;
 import org.vaulttec.idm.sync.app.mattermost.model.MMTeam;
 import org.vaulttec.idm.sync.app.mattermost.model.MMTeamChannel;
 import org.vaulttec.idm.sync.app.mattermost.model.MMTeamMember;
 import org.vaulttec.idm.sync.app.mattermost.model.MMUser;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 public class MattermostClient extends AbstractRestClient {
 
   private static final Logger LOG = LoggerFactory.getLogger(MattermostClient.class);
@@ -53,10 +58,13 @@ public class MattermostClient extends AbstractRestClient {
   };
 
   MattermostClient(String serverUrl, int perPage, int retryWaitSeconds, String personalAccessToken, String proxyHost,
-      int proxyPort) {
-    super(serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort);
-    LOG.debug("Init: serverUrl={}, perPage={}, retryWaitSeconds={}, proxyHost={}, proxyPort={}", serverUrl, perPage,
-        retryWaitSeconds, proxyHost, proxyPort);
+      int proxyPort, RestClientSettings settings) {
+    super(serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort, settings);
+    LOG.debug("Init: serverUrl={}, perPage={}, retryWaitSeconds={}, proxyHost={}, proxyPort={}, settings=[{}]",
+        serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort, settings);
+
+    // Read the users (and members) via streaming instead of data binding
+    restTemplate.getMessageConverters().add(0, MattermostJsonReaders.createConverter());
     prepareAuthenticationEntity("Authorization", "Bearer " + personalAccessToken);
   }
 
@@ -68,43 +76,49 @@ public class MattermostClient extends AbstractRestClient {
   @Override
   protected <T> List<T> makeReadListApiCall(String apiCall, ParameterizedTypeReference<List<T>> typeReference,
       Map<String, String> uriVariables) {
+    List<T> entities = new ArrayList<>();
+    return makeReadPagedApiCall(apiCall, typeReference, uriVariables, entities::addAll) ? entities : null;
+  }
+
+  @Override
+  protected <T> boolean makeReadPagedApiCall(String apiCall, ParameterizedTypeReference<List<T>> typeReference,
+      Map<String, String> uriVariables, Consumer<List<T>> pageConsumer) {
     int page = 0;
     String url = getApiUrl(apiCall + (apiCall.contains("?") ? "&" : "?") + "page={page}&per_page={perPage}");
     uriVariables.put("page", Integer.toString(page));
     uriVariables.put("perPage", perPageAsString());
     try {
-      List<T> entities;
-      ResponseEntity<List<T>> response = null;
-      for (int retries = 1; retries >= 0; retries--) {
-        try {
-          response = restTemplate.exchange(url, HttpMethod.GET, authenticationEntity, typeReference, uriVariables);
-        } catch (TooManyRequests e) {
-
-          // API rate limit exceeded: we have to wait and retry
-          sleep(retryWaitSeconds);
-        }
+      if (isConcurrentPaging()) {
+
+        // Request several pages at once until a short page is returned
+        readPagesSpeculatively(0, currentPage -> {
+          Map<String, String> pageUriVariables = new HashMap<>(uriVariables);
+          pageUriVariables.put("page", Integer.toString(currentPage));
+          return exchangeWithRetry(url, typeReference, pageUriVariables).getBody();
+        }, pageConsumer);
+        return true;
       }
-      if (response != null) {
-        if (response.getBody().size() < perPage) {
-          entities = response.getBody();
-        } else {
-          entities = new ArrayList<>(response.getBody());
-          do {
-            checkRateLimitRemaining(response.getHeaders().getFirst("X-Ratelimit-Remaining"),
-                response.getHeaders().getFirst("X-Ratelimit-Reset"));
-            page++;
-            uriVariables.put("page", Integer.toString(page));
-            response = restTemplate.exchange(url, HttpMethod.GET, authenticationEntity, typeReference, uriVariables);
-            entities.addAll(response.getBody());
-          } while (response.getBody().size() == perPage);
-          return entities;
-        }
-        return entities;
+      ResponseEntity<List<T>> response = exchangeWithRetry(url, typeReference, uriVariables);
+      pageConsumer.accept(response.getBody());
+      while (response.getBody().size() == perPage) {
+        page++;
+        uriVariables.put("page", Integer.toString(page));
+        response = exchangeWithRetry(url, typeReference, uriVariables);
+        pageConsumer.accept(response.getBody());
       }
+      return true;
     } catch (RestClientException e) {
       LOG.error("API call {} '{}' {} failed", "GET", url, uriVariables, e);
     }
-    return null;
+    return false;
+  }
+
+  /**
+   * Warms up the connections to Mattermost by retrieving the user the access
+   * token belongs to.
+   */
+  public boolean probe() {
+    return warmUp("/users/me", createUriVariables());
   }
 
   public List<MMUser> getUsers() {
@@ -114,6 +128,26 @@ public class MattermostClient extends AbstractRestClient {
     return makeReadListApiCall(apiCall, RESPONSE_TYPE_USERS, uriVariables);
   }
 
+  /**
+   * Async variant of {@link #getUsers()}.
+   */
+  public CompletableFuture<List<MMUser>> getUsersAsync() {
+    return supplyAsync(() -> getUsers());
+  }
+
+  /**
+   * Retrieves the users page by page and hands over each page to the given
+   * consumer as soon as it's available.
+   *
+   * @return <code>false</code> if retrieving the users failed
+   */
+  public boolean getUsers(Consumer<List<MMUser>> pageConsumer) {
+    LOG.debug("Retrieving users page by page");
+    String apiCall = "/users";
+    Map<String, String> uriVariables = createUriVariables();
+    return makeReadPagedApiCall(apiCall, RESPONSE_TYPE_USERS, uriVariables, pageConsumer);
+  }
+
   public Map<String, MMUser> getUsersById() {
     List<MMUser> users = getUsers();
     if (users != null) {
@@ -132,8 +166,16 @@ public class MattermostClient extends AbstractRestClient {
     if (teams != null) {
       Map<String, MMUser> users = getUsersById();
       if (users != null) {
+
+        // Retrieve the members of all teams concurrently but add them in the
+        // caller's thread
+        List<CompletableFuture<List<MMTeamMember>>> members = new ArrayList<>(teams.size());
         for (MMTeam team : teams) {
-          List<MMTeamMember> teamMembers = getTeamMembers(team);
+          members.add(getTeamMembersAsync(team));
+        }
+        for (int i = 0; i < teams.size(); i++) {
+          MMTeam team = teams.get(i);
+          List<MMTeamMember> teamMembers = join(members.get(i));
           if (teamMembers != null) {
             for (MMTeamMember teamMember : teamMembers) {
               MMRole role = MMRole.fromJson(teamMember.getRoles()).contains(MMRole.TEAM_ADMIN) ? MMRole.TEAM_ADMIN
@@ -155,6 +197,13 @@ public class MattermostClient extends AbstractRestClient {
     return makeReadListApiCall(apiCall, RESPONSE_TYPE_TEAMS, uriVariables);
   }
 
+  /**
+   * Async variant of {@link #getTeams()}.
+   */
+  public CompletableFuture<List<MMTeam>> getTeamsAsync() {
+    return supplyAsync(() -> getTeams());
+  }
+
   public List<MMTeamMember> getTeamMembers(MMTeam team) {
     if (team == null || !StringUtils.hasText(team.getId())) {
       throw new IllegalStateException("Mattermost team with valid ID required");
@@ -165,6 +214,13 @@ public class MattermostClient extends AbstractRestClient {
     return makeReadListApiCall(apiCall, RESPONSE_TYPE_TEAM_MEMBERS, uriVariables);
   }
 
+  /**
+   * Async variant of {@link #getTeamMembers(MMTeam)}.
+   */
+  public CompletableFuture<List<MMTeamMember>> getTeamMembersAsync(MMTeam team) {
+    return supplyAsync(() -> getTeamMembers(team));
+  }
+
   public boolean addMemberToTeam(MMTeam team, MMUser user) {
     if (team == null || !StringUtils.hasText(team.getId())) {
       throw new IllegalStateException("Mattermost team with valid ID required");
@@ -175,9 +231,8 @@ public class MattermostClient extends AbstractRestClient {
     LOG.info("Adding user '{}' to team '{}' as {}", user.getUsername(), team.getName(), MMRole.TEAM_USER);
     String apiCall = "/teams/{teamId}/members";
     Map<String, String> uriVariables = createUriVariables("teamId", team.getId(), "userId", user.getId());
-    HttpEntity<String> entity = new HttpEntity<String>("{\"team_id\": \"" + team.getId() + "\", \"user_id\": \""
-        + user.getId() + "\", \"roles\": \"" + MMRole.TEAM_USER.name().toLowerCase() + "\"}",
-        authenticationEntity.getHeaders());
+    HttpEntity<String> entity = createEntity(JsonNodeFactory.instance.objectNode().put("team_id", team.getId())
+        .put("user_id", user.getId()).put("roles", MMRole.TEAM_USER.name().toLowerCase()));
     return makeWriteApiCall(apiCall, HttpMethod.POST, entity, uriVariables);
   }
 
@@ -194,13 +249,12 @@ public class MattermostClient extends AbstractRestClient {
     LOG.info("Updating user '{}' in team '{}' with roles {}", user.getUsername(), team.getName(), roles);
     String apiCall = "/teams/{teamId}/members/{userId}/roles";
     Map<String, String> uriVariables = createUriVariables("teamId", team.getId(), "userId", user.getId());
-    String rolesText = roles.get(0).name().toLowerCase();
-    for (int i = 1; i < roles.size(); i++) {
-      rolesText += " " + roles.get(i).name().toLowerCase();
+    StringBuilder rolesText = new StringBuilder(MMRole.TEAM_USER.name().toLowerCase());
+    for (MMRole role : roles) {
+      rolesText.append(' ').append(role.name().toLowerCase());
     }
-    HttpEntity<String> entity = new HttpEntity<String>(
-        "{\"roles\": \"" + MMRole.TEAM_USER.name().toLowerCase() + " " + rolesText + "\"}",
-        authenticationEntity.getHeaders());
+    HttpEntity<String> entity = createEntity(
+        JsonNodeFactory.instance.objectNode().put("roles", rolesText.toString()));
     return makeWriteApiCall(apiCall, HttpMethod.PUT, entity, uriVariables);
   }
 
@@ -226,9 +280,8 @@ public class MattermostClient extends AbstractRestClient {
       displayName = name;
     }
     String apiCall = "/teams";
-    HttpEntity<String> entity = new HttpEntity<String>(
-        "{\"name\" : \"" + name + "\", \"display_name\" : \"" + displayName + "\", \"type\" : \"I\"}",
-        authenticationEntity.getHeaders());
+    HttpEntity<String> entity = createEntity(JsonNodeFactory.instance.objectNode().put("name", name)
+        .put("display_name", displayName).put("type", "I"));
     return makeWriteApiCall(apiCall, entity, MMTeam.class);
   }
 
@@ -246,19 +299,17 @@ public class MattermostClient extends AbstractRestClient {
       lastName = "";
     }
     String apiCall = "/users";
-    String entityBody = "{\"email\": \"" + email + "\", \"username\": \"" + username + "\", \"first_name\": \""
-        + firstName + "\", \"last_name\": \"" + lastName + "\"";
+    ObjectNode body = JsonNodeFactory.instance.objectNode().put("email", email).put("username", username)
+        .put("first_name", firstName).put("last_name", lastName);
 
     // Associate user with external authentication provider (GitLab) as described in
     // https://forum.mattermost.org/t/solved-how-to-transition-a-user-to-gitlab-authentication/1070
     if (StringUtils.hasText(authService) && StringUtils.hasText(authData)) {
-      entityBody += ", \"auth_service\": \"" + authService + "\", \"auth_data\": \"" + authData + "\"";
+      body.put("auth_service", authService).put("auth_data", authData);
     } else {
-      entityBody += ", \"password\": \"" + UUID.randomUUID().toString() + "\"";
+      body.put("password", UUID.randomUUID().toString());
     }
-    entityBody += "}";
-    HttpEntity<String> entity = new HttpEntity<String>(entityBody, authenticationEntity.getHeaders());
-    return makeWriteApiCall(apiCall, entity, MMUser.class);
+    return makeWriteApiCall(apiCall, createEntity(body), MMUser.class);
   }
 
   public boolean updateUserAuthentication(MMUser user, String authService, String authData) {
@@ -268,8 +319,8 @@ public class MattermostClient extends AbstractRestClient {
     LOG.info("Updating user '{}' ({}) authentication: authService={}", user.getUsername(), user.getId(), authService);
     String apiCall = "/users/{id}/auth";
     Map<String, String> uriVariables = createUriVariables("id", user.getId());
-    HttpEntity<String> entity = new HttpEntity<String>("{\"auth_service\": \"" + authService + "\", \"auth_data\": \""
-        + authData + "\", \"password\": \"" + /* "123456" + */"\"}", authenticationEntity.getHeaders());
+    HttpEntity<String> entity = createEntity(JsonNodeFactory.instance.objectNode().put("auth_service", authService)
+        .put("auth_data", authData).put("password", ""));
     return makeWriteApiCall(apiCall, HttpMethod.PUT, entity, uriVariables);
   }
 
@@ -280,8 +331,7 @@ public class MattermostClient extends AbstractRestClient {
     LOG.info("Updating user '{}' ({}) active ({})", user.getUsername(), user.getId(), active);
     String apiCall = "/users/{id}/active";
     Map<String, String> uriVariables = createUriVariables("id", user.getId());
-    HttpEntity<String> entity = new HttpEntity<String>("{\"active\": " + active + "}",
-        authenticationEntity.getHeaders());
+    HttpEntity<String> entity = createEntity(JsonNodeFactory.instance.objectNode().put("active", active));
     return makeWriteApiCall(apiCall, HttpMethod.PUT, entity, uriVariables);
   }
 
@@ -294,4 +344,19 @@ public class MattermostClient extends AbstractRestClient {
     Map<String, String> uriVariables = createUriVariables("teamId", team.getId());
     return makeReadListApiCall(apiCall, RESPONSE_TYPE_TEAM_CHANNELS, uriVariables);
   }
+
+  /**
+   * Async variant of {@link #getTeamChannels(MMTeam)}.
+   */
+  public CompletableFuture<List<MMTeamChannel>> getTeamChannelsAsync(MMTeam team) {
+    return supplyAsync(() -> getTeamChannels(team));
+  }
+
+  /**
+   * Creates a request entity with the given JSON body (serialized by Jackson
+   * to escape the values properly) and the authentication headers.
+   */
+  private HttpEntity<String> createEntity(ObjectNode body) {
+    return new HttpEntity<String>(body.toString(), authenticationEntity.getHeaders());
+  }
 }
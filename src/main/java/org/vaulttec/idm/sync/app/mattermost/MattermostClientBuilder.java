@@ -17,6 +17,8 @@
  */
 package org.vaulttec.idm.sync.app.mattermost;
 
+import org.vaulttec.idm.sync.app.RestClientSettings;
+
 public final class MattermostClientBuilder {
 
   private final String serverUrl;
@@ -25,6 +27,7 @@ public final class MattermostClientBuilder {
   private String personalAccessToken;
   private String proxyHost;
   private int proxyPort;
+  private RestClientSettings settings;
 
   public MattermostClientBuilder(String serverUrl) {
     this.serverUrl = serverUrl;
@@ -60,6 +63,14 @@ public final class MattermostClientBuilder {
     return this;
   }
 
+  /**
+   * Sets the settings of the pooled HTTP transport (pool size, timeouts, ...).
+   */
+  public MattermostClientBuilder settings(RestClientSettings settings) {
+    this.settings = settings;
+    return this;
+  }
+
   public MattermostClient build() {
     if (serverUrl == null) {
       throw new IllegalStateException("serverUrl required");
@@ -76,6 +87,10 @@ public final class MattermostClientBuilder {
     if (proxyHost != null && proxyPort == 0) {
       throw new IllegalStateException("proxyPort required");
     }
-    return new MattermostClient(serverUrl, perPage, retryWaitSeconds, personalAccessToken, proxyHost, proxyPort);
+    if (settings == null) {
+      settings = new RestClientSettings();
+    }
+    return new MattermostClient(serverUrl, perPage, retryWaitSeconds, personalAccessToken, proxyHost, proxyPort,
+        settings);
   }
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ import org.springframework.core.env.Environment;
 import org.springframework.util.StringUtils;
 import org.vaulttec.idm.sync.app.Application;
 import org.vaulttec.idm.sync.app.ApplicationFactory;
+import org.vaulttec.idm.sync.app.RestClientSettings;
 
 public class MattermostFactory implements ApplicationFactory {
 
@@ -31,7 +32,8 @@ public class MattermostFactory implements ApplicationFactory {
   public Application createApplication(Map<String, String> config, Environment env,
       AuditEventRepository eventRepository) {
     MattermostClientBuilder mmcBuilder = new MattermostClientBuilder(config.get("serverUrl"))
-        .perPage(Integer.parseInt(config.get("perPage"))).personalAccessToken(config.get("personalAccessToken"));
+        .perPage(Integer.parseInt(config.get("perPage"))).personalAccessToken(config.get("personalAccessToken"))
+        .settings(RestClientSettings.fromConfig(config));
     if (StringUtils.hasText(env.getProperty("proxy.host"))) {
       mmcBuilder = mmcBuilder.proxyHost(env.getProperty("proxy.host"))
           .proxyPort(Integer.parseInt(env.getProperty("proxy.port")));
@@ -0,0 +1,116 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.mattermost;
+
+import java.io.IOException;
+
+import org.vaulttec.idm.sync.app.http.JsonListHttpMessageConverter;
+import org.vaulttec.idm.sync.app.mattermost.model.MMTeamMember;
+import org.vaulttec.idm.sync.app.mattermost.model.MMUser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming readers for the Mattermost listings retrieved during a sync (users
+ * and team members). Only the fields used by the sync are read - all others
+ * (e.g. the users' notification properties and timezone) are skipped without
+ * being materialized.
+ */
+public final class MattermostJsonReaders {
+
+  private MattermostJsonReaders() {
+  }
+
+  public static JsonListHttpMessageConverter createConverter() {
+    return new JsonListHttpMessageConverter().addReader(MMUser.class, MattermostJsonReaders::readUser)
+        .addReader(MMTeamMember.class, MattermostJsonReaders::readTeamMember);
+  }
+
+  public static MMUser readUser(JsonParser parser) throws IOException {
+    MMUser user = new MMUser();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+      case "id":
+        user.setId(parser.getValueAsString());
+        break;
+      case "username":
+        user.setUsername(parser.getValueAsString());
+        break;
+      case "first_name":
+      case "firstName":
+        user.setFirstName(parser.getValueAsString());
+        break;
+      case "last_name":
+      case "lastName":
+        user.setLastName(parser.getValueAsString());
+        break;
+      case "email":
+        user.setEmail(parser.getValueAsString());
+        break;
+      case "auth_service":
+      case "authService":
+        user.setAuthService(parser.getValueAsString());
+        break;
+      case "auth_data":
+      case "authData":
+        user.setAuthData(parser.getValueAsString());
+        break;
+      case "roles":
+        user.setRoles(parser.getValueAsString());
+        break;
+      case "is_bot":
+        user.setIsBot(parser.getValueAsBoolean());
+        break;
+      case "delete_at":
+      case "deleteAt":
+        user.setDeleteAt(parser.getValueAsString());
+        break;
+      default:
+        parser.skipChildren();
+      }
+    }
+    return user;
+  }
+
+  public static MMTeamMember readTeamMember(JsonParser parser) throws IOException {
+    MMTeamMember member = new MMTeamMember();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+      case "team_id":
+      case "teamId":
+        member.setTeamId(parser.getValueAsString());
+        break;
+      case "user_id":
+      case "userId":
+        member.setUserId(parser.getValueAsString());
+        break;
+      case "roles":
+        member.setRoles(parser.getValueAsString());
+        break;
+      default:
+        parser.skipChildren();
+      }
+    }
+    return member;
+  }
+}
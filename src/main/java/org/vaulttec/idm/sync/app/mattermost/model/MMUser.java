@@ -17,6 +17,7 @@
  */
 package org.vaulttec.idm.sync.app.mattermost.model;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,7 +48,8 @@ public class MMUser {
   private boolean isBot;
   @JsonAlias("delete_at")
   private String deleteAt;
-  private Map<String, MMTeam> teams = new HashMap<>();
+  // Created on demand because only a few of the retrieved users are team members
+  private Map<String, MMTeam> teams;
 
   public MMUser() {
     this.idpUser = null;
@@ -150,14 +152,17 @@ public class MMUser {
   }
 
   public Map<String, MMTeam> getTeams() {
-    return teams;
+    return teams != null ? teams : Collections.emptyMap();
   }
 
   public MMTeam getTeam(String name) {
-    return teams.get(name);
+    return teams != null ? teams.get(name) : null;
   }
 
   public void addTeam(MMTeam team) {
+    if (teams == null) {
+      teams = new HashMap<>();
+    }
     this.teams.put(team.getName(), team);
   }
 
@@ -19,6 +19,7 @@ package org.vaulttec.idm.sync.idp;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.vaulttec.idm.sync.idp.model.IdpGroup;
 import org.vaulttec.idm.sync.idp.model.IdpUser;
@@ -42,4 +43,23 @@ public interface IdentityProvider {
   boolean updateGroupAttributes(IdpGroup group, Map<String, List<String>> attributes);
 
   List<IdpUser> getGroupMembers(IdpGroup group);
+
+  /**
+   * Async variant of {@link #getGroupMembers(IdpGroup)}. By default the members
+   * are retrieved in the caller's thread.
+   */
+  default CompletableFuture<List<IdpUser>> getGroupMembersAsync(IdpGroup group) {
+    return CompletableFuture.completedFuture(getGroupMembers(group));
+  }
+
+  /**
+   * Opens connections to the identity provider's server and checks the access
+   * via a cheap API call. By default the identity provider is always
+   * available.
+   *
+   * @return <code>false</code> if the server isn't available
+   */
+  default boolean probe() {
+    return true;
+  }
 }
@@ -0,0 +1,184 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.idp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vaulttec.idm.sync.idp.model.IdpGroup;
+import org.vaulttec.idm.sync.idp.model.IdpUser;
+
+/**
+ * Immutable snapshot of the identity provider's groups and their members for
+ * a number of group searches.
+ * <p>
+ * Every group search, group and member list is retrieved only once, even if
+ * it's used by multiple applications. Each application gets a view with its
+ * own copies of the groups and users via {@link #getGroups(String)}, so the
+ * applications can't see each other's modifications.
+ */
+public final class IdpSnapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IdpSnapshot.class);
+
+  private final Map<String, List<String>> groupIdsBySearch;
+  private final Map<String, IdpGroup> groups;
+  private final Map<String, List<String>> memberIdsByGroupId;
+  private final Map<String, IdpUser> users;
+
+  private IdpSnapshot(Map<String, List<String>> groupIdsBySearch, Map<String, IdpGroup> groups,
+      Map<String, List<String>> memberIdsByGroupId, Map<String, IdpUser> users) {
+    this.groupIdsBySearch = groupIdsBySearch;
+    this.groups = groups;
+    this.memberIdsByGroupId = memberIdsByGroupId;
+    this.users = users;
+  }
+
+  /**
+   * Retrieves the groups matching the given searches with their members from
+   * the given identity provider. A group whose members couldn't be retrieved
+   * only fails the searches using this group.
+   */
+  public static IdpSnapshot retrieve(IdentityProvider idp, Collection<String> groupSearches) {
+    Map<String, List<String>> groupIdsBySearch = new HashMap<>();
+    Map<String, IdpGroup> groups = new LinkedHashMap<>();
+    for (String search : groupSearches) {
+      if (!groupIdsBySearch.containsKey(search)) {
+        List<IdpGroup> searchGroups = idp.getGroups(search);
+        List<String> groupIds = null;
+        if (searchGroups != null) {
+          groupIds = new ArrayList<>(searchGroups.size());
+          for (IdpGroup group : searchGroups) {
+            groups.putIfAbsent(group.getId(), group);
+            groupIds.add(group.getId());
+          }
+        }
+        groupIdsBySearch.put(search, groupIds);
+      }
+    }
+
+    // Retrieve the members of all groups concurrently
+    Map<String, CompletableFuture<List<IdpUser>>> groupMembers = new LinkedHashMap<>();
+    for (IdpGroup group : groups.values()) {
+      groupMembers.put(group.getId(), idp.getGroupMembersAsync(group));
+    }
+    Map<String, List<String>> memberIdsByGroupId = new HashMap<>();
+    Map<String, IdpUser> users = new LinkedHashMap<>();
+    groupMembers.forEach((groupId, future) -> {
+      List<IdpUser> members;
+      try {
+        members = future.join();
+      } catch (CompletionException | CancellationException e) {
+        LOG.error("Retrieving members of group '{}' failed", groups.get(groupId).getPath(), e);
+        members = null;
+      }
+      List<String> memberIds = null;
+      if (members != null) {
+        memberIds = new ArrayList<>(members.size());
+        for (IdpUser member : members) {
+          users.putIfAbsent(member.getId(), member);
+          memberIds.add(member.getId());
+        }
+      }
+      memberIdsByGroupId.put(groupId, memberIds);
+    });
+    LOG.debug("Retrieved {} groups with {} users for searches {}", groups.size(), users.size(), groupSearches);
+    return new IdpSnapshot(groupIdsBySearch, groups, memberIdsByGroupId, users);
+  }
+
+  /**
+   * Returns copies of the groups matching the given search. The groups and
+   * their members are linked with each other by the attributes
+   * <code>IdpGroup.members</code> and <code>IdpUser.groups</code>.
+   *
+   * @return <code>null</code> if the groups or the members of one of the
+   *         groups couldn't be retrieved
+   */
+  public List<IdpGroup> getGroups(String search) {
+    List<String> groupIds = groupIdsBySearch.get(search);
+    if (groupIds == null) {
+      return null;
+    }
+    List<IdpGroup> groupCopies = new ArrayList<>(groupIds.size());
+    Map<String, IdpUser> userCopies = new HashMap<>();
+    for (String groupId : groupIds) {
+      List<String> memberIds = memberIdsByGroupId.get(groupId);
+      if (memberIds == null) {
+        return null;
+      }
+      IdpGroup group = groups.get(groupId).copy();
+      for (String memberId : memberIds) {
+        IdpUser user = userCopies.computeIfAbsent(memberId, id -> users.get(id).copy());
+        user.addGroup(group);
+        group.addMember(user);
+      }
+      groupCopies.add(group);
+    }
+    return groupCopies;
+  }
+
+  /**
+   * Returns the attributes of the given user as retrieved from the identity
+   * provider.
+   */
+  public Map<String, List<String>> getUserAttributes(String userId) {
+    IdpUser user = users.get(userId);
+    return user != null && user.getAttributes() != null ? Collections.unmodifiableMap(user.getAttributes())
+        : Collections.emptyMap();
+  }
+
+  /**
+   * Returns a copy of this snapshot with the given attributes (by user id)
+   * written to the users. Attributes with a <code>null</code> value are
+   * removed.
+   */
+  public IdpSnapshot withUserAttributes(Map<String, Map<String, List<String>>> attributesByUserId) {
+    if (attributesByUserId.isEmpty()) {
+      return this;
+    }
+    Map<String, IdpUser> updatedUsers = new LinkedHashMap<>(users);
+    attributesByUserId.forEach((userId, attributes) -> {
+      IdpUser user = users.get(userId);
+      if (user != null) {
+        IdpUser updatedUser = user.copy();
+        if (updatedUser.getAttributes() == null) {
+          updatedUser.setAttributes(new HashMap<>());
+        }
+        attributes.forEach((name, values) -> {
+          if (values == null) {
+            updatedUser.getAttributes().remove(name);
+          } else {
+            updatedUser.getAttributes().put(name, new ArrayList<>(values));
+          }
+        });
+        updatedUsers.put(userId, updatedUser);
+      }
+    });
+    return new IdpSnapshot(groupIdsBySearch, groups, memberIdsByGroupId, updatedUsers);
+  }
+}
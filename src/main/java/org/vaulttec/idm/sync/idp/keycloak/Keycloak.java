@@ -20,6 +20,7 @@ package org.vaulttec.idm.sync.idp.keycloak;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.vaulttec.idm.sync.idp.IdentityProvider;
 import org.vaulttec.idm.sync.idp.model.IdpGroup;
@@ -48,6 +49,11 @@ public class Keycloak implements IdentityProvider {
     return client.authenticate();
   }
 
+  @Override
+  public boolean probe() {
+    return client.probe();
+  }
+
   @Override
   public List<IdpUser> getUsers(String search) {
     return client.getUsers(search);
@@ -77,4 +83,9 @@ public class Keycloak implements IdentityProvider {
   public List<IdpUser> getGroupMembers(IdpGroup group) {
     return client.getGroupMembers(group);
   }
+
+  @Override
+  public CompletableFuture<List<IdpUser>> getGroupMembersAsync(IdpGroup group) {
+    return client.getGroupMembersAsync(group);
+  }
 }
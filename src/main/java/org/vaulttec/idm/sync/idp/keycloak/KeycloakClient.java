@@ -21,8 +21,11 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +38,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClientException;
 import org.vaulttec.idm.sync.app.AbstractRestClient;
+import org.vaulttec.idm.sync.app.RestClientSettings;
 import org.vaulttec.idm.sync.idp.model.IdpGroup;
 import org.vaulttec.idm.sync.idp.model.IdpUser;
 
@@ -51,16 +55,19 @@ public class KeycloakClient extends AbstractRestClient {
   };
   protected static final ParameterizedTypeReference<List<IdpUser>> RESPONSE_TYPE_USERS = new ParameterizedTypeReference<List<IdpUser>>() {
   };
+  protected static final ParameterizedTypeReference<JsonNode> RESPONSE_TYPE_COUNT = new ParameterizedTypeReference<JsonNode>() {
+  };
 
   private final String realm;
   private final HttpEntity<String> loginEntity;
   private final ObjectMapper mapper;
 
   KeycloakClient(String serverUrl, int perPage, int retryWaitSeconds, String realm, String clientId,
-      String clientSecret, String proxyHost, int proxyPort) {
-    super(serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort);
-    LOG.debug("Init: serverUrl={}, perPage={}, retryWaitSeconds={}, realm={}, clientId={}, proxyHost={}, proxyPort={}",
-        serverUrl, perPage, retryWaitSeconds, realm, clientId, proxyHost, proxyPort);
+      String clientSecret, String proxyHost, int proxyPort, RestClientSettings settings) {
+    super(serverUrl, perPage, retryWaitSeconds, proxyHost, proxyPort, settings);
+    LOG.debug(
+        "Init: serverUrl={}, perPage={}, retryWaitSeconds={}, realm={}, clientId={}, proxyHost={}, proxyPort={}, settings=[{}]",
+        serverUrl, perPage, retryWaitSeconds, realm, clientId, proxyHost, proxyPort, settings);
     this.realm = realm;
     this.loginEntity = createLoginEntity(clientId, clientSecret);
     this.mapper = new ObjectMapper();
@@ -80,8 +87,7 @@ public class KeycloakClient extends AbstractRestClient {
     uriVariables.put("perPage", perPageAsString());
     try {
       List<T> entities;
-      ResponseEntity<List<T>> response = restTemplate.exchange(url, HttpMethod.GET, authenticationEntity, typeReference,
-          uriVariables);
+      ResponseEntity<List<T>> response = exchangeWithRetry(url, typeReference, uriVariables);
       LinkHeader linkHeader = LinkHeader.parse(response.getHeaders(), "first", "max");
       if (linkHeader == null || !linkHeader.hasLink(LinkHeader.Rel.NEXT)) {
         entities = response.getBody();
@@ -90,7 +96,7 @@ public class KeycloakClient extends AbstractRestClient {
         do {
           first += perPage;
           uriVariables.put("first", Integer.toString(first));
-          response = restTemplate.exchange(url, HttpMethod.GET, authenticationEntity, typeReference, uriVariables);
+          response = exchangeWithRetry(url, typeReference, uriVariables);
           entities.addAll(response.getBody());
           linkHeader = LinkHeader.parse(response.getHeaders(), "first", "max");
         } while (linkHeader != null && linkHeader.hasLink(LinkHeader.Rel.NEXT));
@@ -103,6 +109,62 @@ public class KeycloakClient extends AbstractRestClient {
     return null;
   }
 
+  /**
+   * Retrieves a paged listing with concurrently requested offset windows
+   * (<code>first</code>/<code>max</code>) if concurrent paging is enabled.
+   * <p>
+   * The number of windows is calculated from the number of entities returned
+   * by the given count API call. Without a count API call (Keycloak doesn't
+   * provide one for group members) the windows are requested speculatively
+   * until a window with less than <code>perPage</code> entities is returned.
+   */
+  protected <T> List<T> makeReadListApiCall(String apiCall, String countApiCall,
+      ParameterizedTypeReference<List<T>> typeReference, Map<String, String> uriVariables) {
+    if (!isConcurrentPaging()) {
+      return makeReadListApiCall(apiCall, typeReference, uriVariables);
+    }
+    String url = getApiUrl(apiCall + (apiCall.contains("?") ? "&" : "?") + "first={first}&max={perPage}");
+    uriVariables.put("perPage", perPageAsString());
+    IntFunction<List<T>> windowReader = window -> {
+      Map<String, String> windowUriVariables = new HashMap<>(uriVariables);
+      windowUriVariables.put("first", Integer.toString(window * perPage));
+      return exchangeWithRetry(url, typeReference, windowUriVariables)
+          .getBody();
+    };
+    try {
+      if (countApiCall == null) {
+        return readPagesSpeculatively(0, windowReader);
+      }
+      int count = getCount(countApiCall, uriVariables);
+      if (count < 0) {
+        return null;
+      }
+      LOG.debug("Retrieving {} entities in windows of {}", count, perPage);
+      return readPages(0, Math.max(0, (count - 1) / perPage), windowReader);
+    } catch (RestClientException e) {
+      LOG.error("API call {} '{}' {} failed", "GET", url, uriVariables, e);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of entities from a Keycloak count API call. These calls
+   * return either a plain number (<code>/users/count</code>) or an object with
+   * a <code>count</code> property (<code>/groups/count</code>).
+   */
+  protected int getCount(String countApiCall, Map<String, String> uriVariables) {
+    JsonNode node = makeReadApiCall(countApiCall, RESPONSE_TYPE_COUNT, new HashMap<>(uriVariables));
+    if (node != null) {
+      if (node.isNumber()) {
+        return node.asInt();
+      } else if (node.has("count")) {
+        return node.get("count").asInt();
+      }
+      LOG.error("Invalid count response: {}", node);
+    }
+    return -1;
+  }
+
   /**
    * Authenticate with Keycloak via <code>confidential</code> <a href=
    * "https://www.keycloak.org/docs/latest/server_admin/index.html#oidc-clients">OpenID
@@ -128,18 +190,35 @@ public class KeycloakClient extends AbstractRestClient {
     return false;
   }
 
+  /**
+   * Authenticates and warms up the connections to Keycloak by counting the
+   * realm's users.
+   */
+  public boolean probe() {
+    return authenticate() && warmUp("/admin/realms/{realm}/users/count", createUriVariables("realm", realm));
+  }
+
   public List<IdpUser> getUsers(String search) {
     if (authenticationEntity == null) {
       throw new IllegalStateException("Authentication required");
     }
     LOG.debug("Retrieving users: search={}", search);
     String apiCall = "/admin/realms/{realm}/users";
+    String countApiCall = "/admin/realms/{realm}/users/count";
     Map<String, String> uriVariables = createUriVariables("realm", realm);
     if (StringUtils.hasText(search)) {
       apiCall += "?search={search}";
+      countApiCall += "?search={search}";
       uriVariables.put("search", search);
     }
-    return makeReadListApiCall(apiCall, RESPONSE_TYPE_USERS, uriVariables);
+    return makeReadListApiCall(apiCall, countApiCall, RESPONSE_TYPE_USERS, uriVariables);
+  }
+
+  /**
+   * Async variant of {@link #getUsers(String)}.
+   */
+  public CompletableFuture<List<IdpUser>> getUsersAsync(String search) {
+    return supplyAsync(() -> getUsers(search));
   }
 
   public boolean updateUserAttributes(IdpUser user, Map<String, List<String>> attributes) {
@@ -186,12 +265,25 @@ public class KeycloakClient extends AbstractRestClient {
     }
     LOG.debug("Retrieving groups: search={}", search);
     String apiCall = "/admin/realms/{realm}/groups";
+    String countApiCall = "/admin/realms/{realm}/groups/count";
     Map<String, String> uriVariables = createUriVariables("realm", realm);
     if (StringUtils.hasText(search)) {
       apiCall += "?search={search}";
+      countApiCall += "?search={search}";
       uriVariables.put("search", search);
+    } else {
+
+      // Without top=true the count includes the subgroups which aren't listed
+      countApiCall += "?top=true";
     }
-    return makeReadListApiCall(apiCall, RESPONSE_TYPE_GROUPS, uriVariables);
+    return makeReadListApiCall(apiCall, countApiCall, RESPONSE_TYPE_GROUPS, uriVariables);
+  }
+
+  /**
+   * Async variant of {@link #getGroups(String)}.
+   */
+  public CompletableFuture<List<IdpGroup>> getGroupsAsync(String search) {
+    return supplyAsync(() -> getGroups(search));
   }
 
   public boolean updateGroupAttributes(IdpGroup group, Map<String, List<String>> attributes) {
@@ -223,7 +315,14 @@ public class KeycloakClient extends AbstractRestClient {
     LOG.debug("Retrieving group members from group '{}", group.getPath());
     String apiCall = "/admin/realms/{realm}/groups/{groupId}/members";
     Map<String, String> uriVariables = createUriVariables("realm", realm, "groupId", group.getId());
-    return makeReadListApiCall(apiCall, RESPONSE_TYPE_USERS, uriVariables);
+    return makeReadListApiCall(apiCall, null, RESPONSE_TYPE_USERS, uriVariables);
+  }
+
+  /**
+   * Async variant of {@link #getGroupMembers(IdpGroup)}.
+   */
+  public CompletableFuture<List<IdpUser>> getGroupMembersAsync(IdpGroup group) {
+    return supplyAsync(() -> getGroupMembers(group));
   }
 
   private HttpEntity<String> createLoginEntity(String clientId, String clientSecret) {
@@ -17,6 +17,8 @@
  */
 package org.vaulttec.idm.sync.idp.keycloak;
 
+import org.vaulttec.idm.sync.app.RestClientSettings;
+
 public final class KeycloakClientBuilder {
 
   private final String serverUrl;
@@ -27,6 +29,7 @@ public final class KeycloakClientBuilder {
   private String clientSecret;
   private String proxyHost;
   private int proxyPort;
+  private RestClientSettings settings;
 
   public KeycloakClientBuilder(String serverUrl) {
     this.serverUrl = serverUrl;
@@ -79,6 +82,14 @@ public final class KeycloakClientBuilder {
     return this;
   }
 
+  /**
+   * Sets the settings of the pooled HTTP transport (pool size, timeouts, ...).
+   */
+  public KeycloakClientBuilder settings(RestClientSettings settings) {
+    this.settings = settings;
+    return this;
+  }
+
   public KeycloakClient build() {
     if (serverUrl == null) {
       throw new IllegalStateException("serverUrl required");
@@ -101,7 +112,10 @@ public final class KeycloakClientBuilder {
     if (proxyHost != null && proxyPort == 0) {
       throw new IllegalStateException("proxyPort required");
     }
+    if (settings == null) {
+      settings = new RestClientSettings();
+    }
     return new KeycloakClient(serverUrl, perPage, retryWaitSeconds, realm, clientId, clientSecret, proxyHost,
-        proxyPort);
+        proxyPort, settings);
   }
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import java.util.Map;
 
 import org.springframework.core.env.Environment;
 import org.springframework.util.StringUtils;
+import org.vaulttec.idm.sync.app.RestClientSettings;
 import org.vaulttec.idm.sync.idp.IdentityProvider;
 import org.vaulttec.idm.sync.idp.IdentityProviderFactory;
 
@@ -30,7 +31,7 @@ public class KeycloakFactory implements IdentityProviderFactory {
   public IdentityProvider createIdentityProvider(Map<String, String> config, Environment env) {
     KeycloakClientBuilder builder = new KeycloakClientBuilder(config.get("serverUrl"))
         .perPage(Integer.valueOf(config.get("perPage"))).realm(config.get("realm")).clientId(config.get("client.id"))
-        .clientSecret(config.get("client.secret"));
+        .clientSecret(config.get("client.secret")).settings(RestClientSettings.fromConfig(config));
     if (StringUtils.hasText(env.getProperty("proxy.host"))) {
       builder = builder.proxyHost(env.getProperty("proxy.host"))
           .proxyPort(Integer.parseInt(env.getProperty("proxy.port")));
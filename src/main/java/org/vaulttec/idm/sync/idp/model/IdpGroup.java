@@ -78,6 +78,19 @@ public class IdpGroup {
     this.members.add(member);
   }
 
+  /**
+   * Returns a copy of this group with its own attributes but without the
+   * group's members.
+   */
+  public IdpGroup copy() {
+    IdpGroup copy = new IdpGroup();
+    copy.id = id;
+    copy.name = name;
+    copy.path = path;
+    copy.attributes = IdpUser.copyAttributes(attributes);
+    return copy;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
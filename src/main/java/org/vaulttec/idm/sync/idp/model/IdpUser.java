@@ -118,6 +118,32 @@ public class IdpUser {
     this.groups.add(group);
   }
 
+  /**
+   * Returns a copy of this user with its own attributes and required actions
+   * but without the links to the user's groups.
+   */
+  public IdpUser copy() {
+    IdpUser copy = new IdpUser();
+    copy.id = id;
+    copy.username = username;
+    copy.firstName = firstName;
+    copy.lastName = lastName;
+    copy.email = email;
+    copy.attributes = copyAttributes(attributes);
+    copy.attributesModified = attributesModified;
+    copy.requiredActions = requiredActions != null ? new ArrayList<>(requiredActions) : null;
+    return copy;
+  }
+
+  static Map<String, List<String>> copyAttributes(Map<String, List<String>> attributes) {
+    if (attributes == null) {
+      return null;
+    }
+    Map<String, List<String>> copy = new HashMap<>();
+    attributes.forEach((name, values) -> copy.put(name, values != null ? new ArrayList<>(values) : null));
+    return copy;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -0,0 +1,54 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of concurrently running tasks of an executor which starts
+ * a thread per task (e.g. a virtual thread executor). The tasks wait for a
+ * permit in their own thread, so the submitting thread isn't blocked.
+ */
+public class BoundedExecutor implements Executor {
+
+  private final Executor executor;
+  private final Semaphore semaphore;
+
+  public BoundedExecutor(Executor executor, int maxConcurrentTasks) {
+    this.executor = executor;
+    this.semaphore = new Semaphore(maxConcurrentTasks, true);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    executor.execute(() -> {
+      try {
+        semaphore.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for permit", e);
+      }
+      try {
+        command.run();
+      } finally {
+        semaphore.release();
+      }
+    });
+  }
+}
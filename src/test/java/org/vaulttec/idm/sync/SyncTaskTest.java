@@ -0,0 +1,262 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.web.client.ResourceAccessException;
+import org.vaulttec.idm.sync.app.Application;
+import org.vaulttec.idm.sync.idp.IdentityProvider;
+import org.vaulttec.idm.sync.idp.model.IdpGroup;
+import org.vaulttec.idm.sync.idp.model.IdpUser;
+
+class SyncTaskTest {
+
+  private IdentityProvider idp;
+  private SyncConfig syncConfig;
+
+  @BeforeEach
+  void setUp() {
+    idp = mock(IdentityProvider.class);
+    when(idp.authenticate()).thenReturn(true);
+    when(idp.getGroups(anyString())).thenAnswer(invocation -> List.of(createGroup()));
+    when(idp.getGroupMembersAsync(any())).thenAnswer(invocation -> CompletableFuture.completedFuture(
+        List.of(createUser("1"), createUser("2"))));
+    syncConfig = new SyncConfig();
+    syncConfig.getEnabledApps().add("*");
+    syncConfig.setConcurrency(2);
+  }
+
+  @Test
+  void testApplicationsSyncedConcurrently() {
+    CountDownLatch latch = new CountDownLatch(2);
+    Application gitlab = createApplication("gitlab", groups -> {
+      awaitOtherApplication(latch);
+      setAttribute(groups, "1", "GITLAB_USER_ID", "11");
+    });
+    Application mattermost = createApplication("mattermost", groups -> {
+      awaitOtherApplication(latch);
+      setAttribute(groups, "1", "MATTERMOST_USER_ID", "21");
+    });
+    SyncTask task = new SyncTask(idp, List.of(gitlab, mattermost), syncConfig);
+
+    task.sync();
+    assertThat(latch.getCount()).isZero();
+    verify(idp).updateUserAttributes(any(), eq(Map.of("GITLAB_USER_ID", List.of("11"), "MATTERMOST_USER_ID",
+        List.of("21"))));
+    verify(idp, times(1)).updateUserAttributes(any(), any());
+    assertThat(task.getLastSyncDurations()).containsOnlyKeys("gitlab", "mattermost");
+    assertThat(task.getLastSyncTime()).isNotNull();
+  }
+
+  @Test
+  void testSameAttributeModifiedByApplications() {
+    CountDownLatch latch = new CountDownLatch(2);
+    Application gitlab = createApplication("gitlab", groups -> {
+      awaitOtherApplication(latch);
+      setAttribute(groups, "1", "LDAP_ID", "gitlab1");
+    });
+    Application mattermost = createApplication("mattermost", groups -> {
+      awaitOtherApplication(latch);
+      setAttribute(groups, "1", "LDAP_ID", "mattermost1");
+    });
+    SyncTask task = new SyncTask(idp, List.of(gitlab, mattermost), syncConfig);
+
+    // The value of the last application wins and the user is updated once
+    task.sync();
+    verify(idp).updateUserAttributes(any(), eq(Map.of("LDAP_ID", List.of("mattermost1"))));
+    verify(idp, times(1)).updateUserAttributes(any(), any());
+  }
+
+  @Test
+  void testRequiredActionsRemovedBeforeSync() {
+    syncConfig.setRemoveRequiredActions(true);
+    when(idp.getGroupMembersAsync(any())).thenAnswer(invocation -> {
+      IdpUser user = createUser("1");
+      user.setRequiredActions(List.of("UPDATE_PASSWORD"));
+      return CompletableFuture.completedFuture(List.of(user, createUser("2")));
+    });
+    Application gitlab = createApplication("gitlab", groups -> setAttribute(groups, "1", "GITLAB_USER_ID", "11"));
+    Application mattermost = createApplication("mattermost",
+        groups -> setAttribute(groups, "1", "MATTERMOST_USER_ID", "21"));
+    SyncTask task = new SyncTask(idp, List.of(gitlab, mattermost), syncConfig);
+
+    // Each user's required actions are removed once before the applications are synced
+    task.sync();
+    for (Application app : List.of(gitlab, mattermost)) {
+      InOrder inOrder = inOrder(idp, app);
+      inOrder.verify(idp).removeRequiredActions(argThat(user -> user.getId().equals("1")));
+      inOrder.verify(app).sync(any());
+    }
+    verify(idp, times(1)).removeRequiredActions(any());
+    verify(idp, times(1)).updateUserAttributes(any(), any());
+    task.shutdown();
+  }
+
+  @Test
+  void testFailedApplicationIsolated() {
+    Application gitlab = createApplication("gitlab", groups -> {
+      throw new IllegalStateException("failed");
+    });
+    Application mattermost = createApplication("mattermost",
+        groups -> setAttribute(groups, "2", "MATTERMOST_USER_ID", "22"));
+    SyncTask task = new SyncTask(idp, List.of(gitlab, mattermost), syncConfig);
+
+    task.sync();
+    verify(mattermost).sync(any());
+    verify(idp).updateUserAttributes(any(), eq(Map.of("MATTERMOST_USER_ID", List.of("22"))));
+    assertThat(task.getLastSyncDurations()).containsOnlyKeys("gitlab", "mattermost");
+  }
+
+  @Test
+  void testApplicationsSyncedSequentially() {
+    syncConfig.setConcurrency(1);
+    Application gitlab = createApplication("gitlab", groups -> setAttribute(groups, "1", "GITLAB_USER_ID", "11"));
+    List<String> gitlabUserIds = new ArrayList<>();
+    Application mattermost = createApplication("mattermost",
+        groups -> groups.get(0).getMembers().forEach(user -> gitlabUserIds.add(user.getAttribute("GITLAB_USER_ID"))));
+    when(idp.updateUserAttributes(any(), any())).thenReturn(true);
+    SyncTask task = new SyncTask(idp, List.of(gitlab, mattermost), syncConfig);
+
+    // The attributes are written back before the next application is synced
+    task.sync();
+    InOrder inOrder = inOrder(idp, mattermost);
+    inOrder.verify(idp).updateUserAttributes(any(), eq(Map.of("GITLAB_USER_ID", List.of("11"))));
+    inOrder.verify(mattermost).sync(any());
+    assertThat(gitlabUserIds).containsExactly("11", null);
+  }
+
+  @Test
+  void testSnapshotSharedByApplications() {
+    List<IdpGroup> syncedGroups = Collections.synchronizedList(new ArrayList<>());
+    Application gitlab = createApplication("gitlab", groups -> {
+      syncedGroups.addAll(groups);
+      setAttribute(groups, "1", "GITLAB_USER_ID", "11");
+    });
+    Application mattermost = createApplication("mattermost", groups -> {
+      syncedGroups.addAll(groups);
+      assertThat(groups.get(0).getMembers()).allMatch(user -> user.getAttribute("GITLAB_USER_ID") == null);
+    });
+    when(mattermost.getGroupSearch()).thenReturn("APP_gitlab");
+    SyncTask task = new SyncTask(idp, List.of(gitlab, mattermost), syncConfig);
+
+    // Groups and members are retrieved once but each application gets its own copies
+    task.sync();
+    verify(idp, times(1)).getGroups("APP_gitlab");
+    verify(idp, times(1)).getGroupMembersAsync(any());
+    assertThat(syncedGroups).hasSize(2);
+    assertThat(syncedGroups.get(0)).isNotSameAs(syncedGroups.get(1));
+    assertThat(syncedGroups.get(0).getMembers().get(0)).isNotSameAs(syncedGroups.get(1).getMembers().get(0));
+  }
+
+  @Test
+  void testFailedGroupMembersIsolated() {
+    when(idp.getGroups(anyString())).thenAnswer(invocation -> {
+      IdpGroup group = createGroup();
+      group.setId(invocation.getArgument(0));
+      return List.of(group);
+    });
+    when(idp.getGroupMembersAsync(any())).thenAnswer(invocation -> {
+      String groupId = invocation.<IdpGroup>getArgument(0).getId();
+      if (groupId.equals("APP_gitlab")) {
+        return CompletableFuture.failedFuture(new ResourceAccessException("Page 2 not retrieved"));
+      }
+      return CompletableFuture.completedFuture(List.of(createUser(groupId)));
+    });
+    Application gitlab = createApplication("gitlab", groups -> assertThat(groups).hasSize(1));
+    Application mattermost = createApplication("mattermost", groups -> assertThat(groups).hasSize(1));
+    SyncTask task = new SyncTask(idp, List.of(gitlab, mattermost), syncConfig);
+
+    // Only the application using the group with the failed member listing is skipped
+    task.sync();
+    verify(gitlab, never()).sync(any());
+    verify(mattermost).sync(any());
+  }
+
+  private interface GroupsSync {
+    void sync(List<IdpGroup> groups);
+  }
+
+  private Application createApplication(String id, GroupsSync sync) {
+    Application app = mock(Application.class);
+    when(app.getId()).thenReturn(id);
+    when(app.getName()).thenReturn(id);
+    when(app.getGroupSearch()).thenReturn("APP_" + id);
+    doAnswer(invocation -> {
+      sync.sync(invocation.getArgument(0));
+      return true;
+    }).when(app).sync(any());
+    return app;
+  }
+
+  private void awaitOtherApplication(CountDownLatch latch) {
+    latch.countDown();
+    try {
+      assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void setAttribute(List<IdpGroup> groups, String userId, String name, String value) {
+    for (IdpUser user : groups.get(0).getMembers()) {
+      if (user.getId().equals(userId)) {
+        user.getAttributes().put(name, List.of(value));
+        user.setAttributesModified(true);
+      }
+    }
+  }
+
+  private IdpGroup createGroup() {
+    IdpGroup group = new IdpGroup();
+    group.setId("g1");
+    group.setName("APP_group1");
+    return group;
+  }
+
+  private IdpUser createUser(String id) {
+    IdpUser user = new IdpUser();
+    user.setId(id);
+    user.setUsername("user" + id);
+    user.getAttributes().put("LDAP_ID", List.of("ldap" + id));
+    user.setRequiredActions(List.of());
+    return user;
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.vaulttec.idm.sync.stub.StubServer;
+import org.vaulttec.idm.sync.stub.StubServer.StubResponse;
+
+class AbstractRestClientTest {
+
+  @Test
+  void testConnectionsLimitedPerRoute() throws Exception {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setMaxConnectionsPerRoute(1);
+    settings.setConnectionRequestTimeoutMillis(100);
+    assertPoolExhausted(settings);
+  }
+
+  @Test
+  void testConnectionsLimitedInTotal() throws Exception {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setMaxConnections(1);
+    settings.setConnectionRequestTimeoutMillis(100);
+    assertPoolExhausted(settings);
+  }
+
+  @Test
+  void testIdleConnectionsEvicted() throws Exception {
+    try (StubServer server = StubServer.start()) {
+      server.route("GET", "/api/test", request -> StubResponse.ok("{}"));
+      RestClientSettings settings = new RestClientSettings();
+      settings.setIdleConnectionTimeoutSeconds(1);
+      TestClient client = new TestClient(server.getUrl(), settings);
+      HttpClient httpClient = client.createHttpClient(null, 0, settings);
+
+      get(httpClient, server.getUrl() + "/api/test");
+      assertThat(client.connectionManager.getTotalStats().getAvailable()).isEqualTo(1);
+      for (int i = 0; i < 50 && client.connectionManager.getTotalStats().getAvailable() > 0; i++) {
+        Thread.sleep(100);
+      }
+      assertThat(client.connectionManager.getTotalStats().getAvailable()).isZero();
+    }
+  }
+
+  @Test
+  void testExplicitProxyUsed() throws Exception {
+    try (StubServer proxy = StubServer.start()) {
+      proxy.route("GET", "/api/test", request -> StubResponse.ok("{\"host\": \"" + request.getUri().getHost()
+          + "\"}"));
+      RestClientSettings settings = new RestClientSettings();
+      int proxyPort = Integer.parseInt(proxy.getUrl().substring(proxy.getUrl().lastIndexOf(':') + 1));
+      TestClient client = new TestClient("http://upstream.invalid", settings);
+      HttpClient httpClient = client.createHttpClient("localhost", proxyPort, settings);
+
+      assertThat(get(httpClient, "http://upstream.invalid/api/test")).isEqualTo("{\"host\": \"upstream.invalid\"}");
+      assertThat(proxy.getRequestCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void testRateLimitPauseDoesNotHoldBulkhead() throws Exception {
+    try (StubServer server = StubServer.start()) {
+      AtomicInteger calls = new AtomicInteger();
+      server.route("GET", "/api/test", request -> calls.getAndIncrement() == 0
+          ? StubResponse.status(429).header("Retry-After", "1")
+          : StubResponse.ok("{}"));
+      RestClientSettings settings = new RestClientSettings();
+      settings.setBulkheadMaxConcurrentCalls(1);
+      settings.setBulkheadMaxWaitMillis(200);
+      settings.setSingleFlightEnabled(false);
+      TestClient client = new TestClient(server.getUrl(), settings);
+      String url = server.getUrl() + "/api/test";
+
+      // Pauses the rate limiter longer than the bulkhead's max wait time
+      assertThatThrownBy(() -> client.restTemplate.getForObject(url, String.class))
+          .isInstanceOf(HttpClientErrorException.TooManyRequests.class);
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      try {
+        List<CompletableFuture<String>> requests = IntStream.range(0, 3)
+            .mapToObj(i -> CompletableFuture.supplyAsync(() -> client.restTemplate.getForObject(url, String.class),
+                executor))
+            .collect(Collectors.toList());
+        for (CompletableFuture<String> request : requests) {
+          assertThat(request.get(5, TimeUnit.SECONDS)).isEqualTo("{}");
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      assertThat(calls).hasValue(4);
+    }
+  }
+
+  /**
+   * Holds the only available connection with a slow request, so a second
+   * request doesn't get a connection from the pool.
+   */
+  private void assertPoolExhausted(RestClientSettings settings) throws Exception {
+    try (StubServer server = StubServer.start()) {
+      CountDownLatch received = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      server.route("GET", "/api/slow", request -> {
+        received.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return StubResponse.ok("{}");
+      });
+      HttpClient httpClient = new TestClient(server.getUrl(), settings).createHttpClient(null, 0, settings);
+
+      CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+        try {
+          return get(httpClient, server.getUrl() + "/api/slow");
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThatThrownBy(() -> get(httpClient, server.getUrl() + "/api/slow"))
+          .isInstanceOf(ConnectionPoolTimeoutException.class);
+      release.countDown();
+      assertThat(slow.get(5, TimeUnit.SECONDS)).isEqualTo("{}");
+    }
+  }
+
+  private String get(HttpClient httpClient, String url) throws IOException {
+    HttpResponse response = httpClient.execute(new HttpGet(url));
+    return EntityUtils.toString(response.getEntity());
+  }
+
+  private static class TestClient extends AbstractRestClient {
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    TestClient(String serverUrl, RestClientSettings settings) {
+      super(serverUrl, 10, 1, null, 0, settings);
+    }
+
+    @Override
+    protected PoolingHttpClientConnectionManager createConnectionManager(RestClientSettings settings) {
+      connectionManager = super.createConnectionManager(settings);
+      return connectionManager;
+    }
+
+    @Override
+    protected String getApiPath() {
+      return "/api";
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RestClientSettingsTest {
+
+  @Test
+  void testConnectionSettingsFromConfig() {
+    RestClientSettings settings = RestClientSettings.fromConfig(Map.of("transport", "http2", "connection.maxTotal",
+        "30", "connection.maxPerRoute", "15", "connection.connectTimeout", "1000", "connection.readTimeout", "2000",
+        "connection.requestTimeout", "3000", "connection.idleTimeout", "40"));
+    assertThat(settings.getTransport()).isEqualTo(RestClientSettings.Transport.HTTP2);
+    assertThat(settings.getMaxConnections()).isEqualTo(30);
+    assertThat(settings.getMaxConnectionsPerRoute()).isEqualTo(15);
+    assertThat(settings.getConnectTimeoutMillis()).isEqualTo(1000);
+    assertThat(settings.getReadTimeoutMillis()).isEqualTo(2000);
+    assertThat(settings.getConnectionRequestTimeoutMillis()).isEqualTo(3000);
+    assertThat(settings.getIdleConnectionTimeoutSeconds()).isEqualTo(40);
+  }
+
+  @Test
+  void testPagingSettingsFromConfig() {
+    RestClientSettings settings = RestClientSettings.fromConfig(
+        Map.of("paging.concurrency", "4", "paging.pageDeadline", "5000", "paging.keyset", "true"));
+    assertThat(settings.getPagingConcurrency()).isEqualTo(4);
+    assertThat(settings.getPagingPageDeadlineMillis()).isEqualTo(5000);
+    assertThat(settings.isPagingKeyset()).isTrue();
+  }
+
+  @Test
+  void testDefaultsWithoutConfig() {
+    RestClientSettings defaults = new RestClientSettings();
+    RestClientSettings settings = RestClientSettings.fromConfig(Map.of());
+    assertThat(settings.getTransport()).isEqualTo(RestClientSettings.Transport.HTTP1);
+    assertThat(settings.getMaxConnections()).isEqualTo(defaults.getMaxConnections());
+    assertThat(settings.getMaxConnectionsPerRoute()).isEqualTo(defaults.getMaxConnectionsPerRoute());
+    assertThat(settings.getIdleConnectionTimeoutSeconds()).isEqualTo(defaults.getIdleConnectionTimeoutSeconds());
+    assertThat(settings.isPagingKeyset()).isFalse();
+  }
+}
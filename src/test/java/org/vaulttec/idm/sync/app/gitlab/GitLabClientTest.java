@@ -0,0 +1,259 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.gitlab;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import org.vaulttec.idm.sync.app.RestClientSettings;
+import org.vaulttec.idm.sync.app.gitlab.model.GLGroup;
+import org.vaulttec.idm.sync.app.gitlab.model.GLProject;
+import org.vaulttec.idm.sync.app.gitlab.model.GLUser;
+import org.vaulttec.idm.sync.stub.StubApis;
+import org.vaulttec.idm.sync.stub.StubServer;
+
+class GitLabClientTest {
+
+  private static final String SERVER_URL = "http://gitlab";
+
+  @Test
+  void testGetUsersWithConcurrentPaging() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setPagingConcurrency(3);
+    GitLabClient client = createClient(settings);
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).ignoreExpectOrder(true)
+        .build();
+    server.expect(requestTo(SERVER_URL + "/api/v4/users?exclude_internal=true&per_page=2"))
+        .andExpect(method(HttpMethod.GET)).andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON)
+            .headers(pageHeaders("/api/v4/users?exclude_internal=true&per_page=2", 1, 4, true)));
+    for (int page = 2; page <= 4; page++) {
+      server.expect(requestTo(SERVER_URL + "/api/v4/users?exclude_internal=true&per_page=2&page=" + page))
+          .andExpect(method(HttpMethod.GET))
+          .andRespond(withSuccess(usersJson(page * 2 - 1, page < 4 ? 2 : 1), MediaType.APPLICATION_JSON));
+    }
+
+    List<GLUser> users = client.getUsers(null);
+    assertThat(users).extracting(GLUser::getUsername).containsExactly("user1", "user2", "user3", "user4", "user5",
+        "user6", "user7");
+    server.verify();
+  }
+
+  @Test
+  void testGetUsersPageByPage() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setPagingConcurrency(2);
+    GitLabClient client = createClient(settings);
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).ignoreExpectOrder(true)
+        .build();
+    server.expect(requestTo(SERVER_URL + "/api/v4/users?exclude_internal=true&per_page=2"))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON)
+            .headers(pageHeaders("/api/v4/users?exclude_internal=true&per_page=2", 1, 4, true)));
+    for (int page = 2; page <= 4; page++) {
+      server.expect(requestTo(SERVER_URL + "/api/v4/users?exclude_internal=true&per_page=2&page=" + page))
+          .andRespond(withSuccess(usersJson(page * 2 - 1, page < 4 ? 2 : 1), MediaType.APPLICATION_JSON));
+    }
+
+    List<List<String>> pages = new ArrayList<>();
+    assertThat(client.getUsers(null,
+        users -> pages.add(users.stream().map(GLUser::getUsername).collect(Collectors.toList())))).isTrue();
+    assertThat(pages).containsExactly(List.of("user1", "user2"), List.of("user3", "user4"),
+        List.of("user5", "user6"), List.of("user7"));
+    server.verify();
+  }
+
+  @Test
+  void testGetUsersWithoutTotalPages() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setPagingConcurrency(3);
+    GitLabClient client = createClient(settings);
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).build();
+    server.expect(requestTo(SERVER_URL + "/api/v4/users?exclude_internal=true&per_page=2"))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON)
+            .headers(pageHeaders("/api/v4/users?exclude_internal=true&per_page=2", 1, -1, true)));
+    server.expect(requestTo(SERVER_URL + "/api/v4/users?exclude_internal=true&per_page=2&page=2"))
+        .andRespond(withSuccess(usersJson(3, 1), MediaType.APPLICATION_JSON)
+            .headers(pageHeaders("/api/v4/users?exclude_internal=true&per_page=2", 2, -1, false)));
+
+    List<GLUser> users = client.getUsers(null);
+    assertThat(users).extracting(GLUser::getUsername).containsExactly("user1", "user2", "user3");
+    server.verify();
+  }
+
+  @Test
+  void testGetUsersWithKeysetPagination() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setPagingConcurrency(3);
+    settings.setPagingKeyset(true);
+    GitLabClient client = new GitLabClientBuilder(SERVER_URL).perPage(2).personalAccessToken("token")
+        .settings(settings).build();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).build();
+    String path = "/api/v4/users?exclude_internal=true&pagination=keyset&order_by=id&sort=asc&per_page=2";
+    server.expect(requestTo(SERVER_URL + path))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON).headers(keysetHeaders(path, "c2")));
+    server.expect(requestTo(SERVER_URL + path + "&cursor=c2"))
+        .andRespond(withSuccess(usersJson(3, 2), MediaType.APPLICATION_JSON).headers(keysetHeaders(path, "c4")));
+    server.expect(requestTo(SERVER_URL + path + "&cursor=c4"))
+        .andRespond(withSuccess(usersJson(5, 1), MediaType.APPLICATION_JSON));
+
+    List<GLUser> users = client.getUsers(null);
+    assertThat(users).extracting(GLUser::getUsername).containsExactly("user1", "user2", "user3", "user4", "user5");
+    server.verify();
+  }
+
+  @Test
+  void testGetUsersWithKeysetPaginationFailsOnListingTimeout() throws IOException {
+    try (StubServer server = StubServer.start()) {
+      StubApis.gitLab(server, 25, 1, 1);
+      server.latency(300);
+      RestClientSettings settings = new RestClientSettings();
+      settings.setPagingKeyset(true);
+      settings.setListingTimeoutMillis(100);
+      settings.setRetryMaxAttempts(1);
+      GitLabClient client = new GitLabClientBuilder(server.getUrl()).perPage(10).personalAccessToken("token")
+          .settings(settings).build();
+
+      assertThat(client.getUsers(null)).isNull();
+    }
+  }
+
+  @Test
+  void testGetGroupsWithMembers() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setAsyncConcurrency(2);
+    GitLabClient client = createClient(settings);
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).ignoreExpectOrder(true)
+        .build();
+    server.expect(requestTo(SERVER_URL + "/api/v4/groups?statistics=false&per_page=2"))
+        .andRespond(withSuccess("[{\"id\": \"1\", \"path\": \"group1\"}, {\"id\": \"2\", \"path\": \"group2\"}]",
+            MediaType.APPLICATION_JSON));
+    server.expect(requestTo(SERVER_URL + "/api/v4/groups/1/members?per_page=2"))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON));
+    server.expect(requestTo(SERVER_URL + "/api/v4/groups/2/members?per_page=2"))
+        .andRespond(withSuccess(usersJson(3, 1), MediaType.APPLICATION_JSON));
+
+    List<GLGroup> groups = client.getGroupsWithMembers(null, false);
+    assertThat(groups).extracting(GLGroup::getPath).containsExactly("group1", "group2");
+    assertThat(groups.get(0).getMembers()).extracting(GLUser::getUsername).containsExactlyInAnyOrder("user1", "user2");
+    assertThat(groups.get(1).getMembers()).extracting(GLUser::getUsername).containsExactly("user3");
+    server.verify();
+  }
+
+  @Test
+  void testGetProjectsFromGroupWithSimpleRepresentation() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setLeanEnabled(true);
+    GitLabClient client = createClient(settings);
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).build();
+    server.expect(requestTo(SERVER_URL + "/api/v4/groups/1/projects?with_shared=false&simple=true&per_page=2"))
+        .andExpect(method(HttpMethod.GET)).andRespond(withSuccess("[{\"id\": 101, \"path\": \"project1\", "
+            + "\"name\": \"Project 1\"}]", MediaType.APPLICATION_JSON));
+    GLGroup group = new GLGroup();
+    group.setId("1");
+
+    List<GLProject> projects = client.getProjectsFromGroup(group, null, false);
+    assertThat(projects).extracting(GLProject::getPath).containsExactly("project1");
+    server.verify();
+  }
+
+  @Test
+  void testProbeWarmsUpConnections() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setWarmUpConnections(3);
+    GitLabClient client = createClient(settings);
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).build();
+    server.expect(times(3), requestTo(SERVER_URL + "/api/v4/version")).andExpect(method(HttpMethod.GET))
+        .andExpect(header("PRIVATE-TOKEN", "token"))
+        .andRespond(withSuccess("{\"version\": \"16.0.0\"}", MediaType.APPLICATION_JSON));
+
+    assertThat(client.probe()).isTrue();
+    server.verify();
+  }
+
+  @Test
+  void testProbeFailsForUnavailableServer() {
+    GitLabClient client = createClient(new RestClientSettings());
+    MockRestServiceServer server = MockRestServiceServer.bindTo(getRestTemplate(client)).build();
+    server.expect(times(2), requestTo(SERVER_URL + "/api/v4/version"))
+        .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+    assertThat(client.probe()).isFalse();
+    server.verify();
+  }
+
+  private GitLabClient createClient(RestClientSettings settings) {
+    return new GitLabClientBuilder(SERVER_URL).perPage(2).personalAccessToken("token").settings(settings).build();
+  }
+
+  private RestTemplate getRestTemplate(GitLabClient client) {
+    return (RestTemplate) ReflectionTestUtils.getField(client, "restTemplate");
+  }
+
+  private String usersJson(int first, int count) {
+    return "[" + IntStream.range(first, first + count)
+        .mapToObj(i -> "{\"id\": \"" + i + "\", \"username\": \"user" + i + "\", \"state\": \"active\"}")
+        .collect(Collectors.joining(",")) + "]";
+  }
+
+  /**
+   * Creates GitLab's paging headers. Without total pages (<code>-1</code>)
+   * neither <code>X-Total-Pages</code> nor <code>rel="last"</code> is added.
+   */
+  private HttpHeaders pageHeaders(String path, int page, int totalPages, boolean hasNext) {
+    HttpHeaders headers = new HttpHeaders();
+    StringBuilder link = new StringBuilder();
+    if (hasNext) {
+      link.append("<" + SERVER_URL + path + "&page=" + (page + 1) + ">; rel=\"next\", ");
+    }
+    link.append("<" + SERVER_URL + path + "&page=1>; rel=\"first\"");
+    if (totalPages > 0) {
+      link.append(", <" + SERVER_URL + path + "&page=" + totalPages + ">; rel=\"last\"");
+      headers.add("X-Total-Pages", Integer.toString(totalPages));
+    }
+    headers.add(HttpHeaders.LINK, link.toString());
+    return headers;
+  }
+
+  /**
+   * Creates GitLab's keyset paging header which only provides a
+   * <code>rel="next"</code> link with an opaque cursor.
+   */
+  private HttpHeaders keysetHeaders(String path, String cursor) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.LINK, "<" + SERVER_URL + path + "&cursor=" + cursor + ">; rel=\"next\"");
+    return headers;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.gitlab;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vaulttec.idm.sync.app.gitlab.model.GLUser;
+import org.vaulttec.idm.sync.app.http.JsonListHttpMessageConverter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Compares reading a page of GitLab users via Jackson data binding (as done by
+ * the <code>RestTemplate</code>'s default converter) with the streaming
+ * {@link GitLabJsonReaders}. Run via {@link #main(String[])} from the test
+ * classpath - the GC profiler reports the allocation per operation
+ * (<code>gc.alloc.rate.norm</code>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitLabJsonReadersBenchmark {
+
+  @Param({ "100", "1000" })
+  private int users;
+
+  private byte[] json;
+  private ObjectReader dataBindingReader;
+  private JsonListHttpMessageConverter streamingConverter;
+
+  @Setup
+  public void setUp() {
+    json = IntStream.range(0, users).mapToObj(GitLabJsonReadersBenchmark::userJson)
+        .collect(Collectors.joining(",", "[", "]")).getBytes(StandardCharsets.UTF_8);
+    dataBindingReader = new ObjectMapper().readerFor(new TypeReference<List<GLUser>>() {
+    });
+    streamingConverter = GitLabJsonReaders.createConverter();
+  }
+
+  @Benchmark
+  public List<GLUser> dataBinding() throws IOException {
+    return dataBindingReader.readValue(new ByteArrayInputStream(json));
+  }
+
+  @Benchmark
+  public List<GLUser> streaming() throws IOException {
+    return streamingConverter.readList(new ByteArrayInputStream(json), GitLabJsonReaders::readUser);
+  }
+
+  /**
+   * Creates a user as returned by GitLab's admin API (<code>/users</code>).
+   */
+  private static String userJson(int id) {
+    return "{\"id\": " + id + ", \"username\": \"user" + id + "\", \"name\": \"User " + id + "\", "
+        + "\"state\": \"active\", \"avatar_url\": \"https://gitlab.example.com/uploads/user/avatar/" + id
+        + "/avatar.png\", \"web_url\": \"https://gitlab.example.com/user" + id + "\", "
+        + "\"created_at\": \"2020-01-01T00:00:00.000Z\", \"bio\": \"\", \"location\": null, \"public_email\": \"\", "
+        + "\"skype\": \"\", \"linkedin\": \"\", \"twitter\": \"\", \"website_url\": \"\", \"organization\": null, "
+        + "\"job_title\": \"\", \"last_sign_in_at\": \"2021-01-01T00:00:00.000Z\", "
+        + "\"confirmed_at\": \"2020-01-01T00:00:00.000Z\", \"last_activity_on\": \"2021-01-01\", "
+        + "\"email\": \"user" + id + "@example.com\", \"theme_id\": 1, \"color_scheme_id\": 1, \"projects_limit\": 100, "
+        + "\"current_sign_in_at\": \"2021-01-01T00:00:00.000Z\", \"identities\": [{\"provider\": \"ldapmain\", "
+        + "\"extern_uid\": \"cn=user" + id + ",ou=people,dc=example,dc=com\", \"saml_provider_id\": null}], "
+        + "\"can_create_group\": true, \"can_create_project\": true, \"two_factor_enabled\": false, "
+        + "\"external\": false, \"private_profile\": false, \"is_admin\": false, \"note\": null, \"bot\": false}";
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(GitLabJsonReadersBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class).build()).run();
+  }
+}
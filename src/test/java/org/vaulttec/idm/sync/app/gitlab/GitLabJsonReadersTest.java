@@ -0,0 +1,75 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.gitlab;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.vaulttec.idm.sync.app.gitlab.model.GLPermission;
+import org.vaulttec.idm.sync.app.gitlab.model.GLState;
+import org.vaulttec.idm.sync.app.gitlab.model.GLUser;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class GitLabJsonReadersTest {
+
+  private static final String USERS_JSON = "[{\"id\": 1, \"username\": \"john\", \"name\": \"John Doe\", "
+      + "\"state\": \"blocked\", \"avatar_url\": \"http://gitlab/a.png\", \"email\": \"john@acme.com\", "
+      + "\"is_admin\": true, \"bot\": null, \"access_level\": 30, \"custom_attributes\": [{\"key\": \"k\"}], "
+      + "\"identities\": [{\"provider\": \"ldapmain\", \"extern_uid\": \"cn=john\", \"saml_provider_id\": null}]}, "
+      + "{\"id\": 2, \"username\": \"project_1_bot\", \"state\": \"active\", \"bot\": true, "
+      + "\"namespace\": {\"id\": 7, \"path\": \"x\"}, \"identities\": []}]";
+
+  @Test
+  void testReadUsers() throws Exception {
+    List<GLUser> users = GitLabJsonReaders.createConverter().readList(
+        new ByteArrayInputStream(USERS_JSON.getBytes(StandardCharsets.UTF_8)), GitLabJsonReaders::readUser);
+
+    assertThat(users).hasSize(2);
+    GLUser user = users.get(0);
+    assertThat(user.getId()).isEqualTo("1");
+    assertThat(user.getUsername()).isEqualTo("john");
+    assertThat(user.getName()).isEqualTo("John Doe");
+    assertThat(user.getEmail()).isEqualTo("john@acme.com");
+    assertThat(user.getState()).isEqualTo(GLState.BLOCKED);
+    assertThat(user.isAdmin()).isTrue();
+    assertThat(user.getBot()).isNull();
+    assertThat(user.getPermission()).isEqualTo(GLPermission.DEVELOPER);
+    assertThat(user.getIdentities()).hasSize(1);
+    assertThat(user.getIdentities().get(0).getProvider()).isEqualTo("ldapmain");
+    assertThat(user.getIdentities().get(0).getExternUid()).isEqualTo("cn=john");
+    assertThat(users.get(1).isBot()).isTrue();
+    assertThat(users.get(1).getIdentities()).isEmpty();
+  }
+
+  @Test
+  void testReadUsersLikeDataBinding() throws Exception {
+    List<GLUser> expectedUsers = new ObjectMapper().readValue(USERS_JSON, new TypeReference<List<GLUser>>() {
+    });
+    List<GLUser> users = GitLabJsonReaders.createConverter().readList(
+        new ByteArrayInputStream(USERS_JSON.getBytes(StandardCharsets.UTF_8)), GitLabJsonReaders::readUser);
+
+    assertThat(users).usingRecursiveFieldByFieldElementComparatorIgnoringFields("groups")
+        .containsExactlyElementsOf(expectedUsers);
+  }
+}
@@ -26,9 +26,11 @@ import org.vaulttec.idm.sync.idp.model.IdpGroup;
 import org.vaulttec.idm.sync.idp.model.IdpUser;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class GitLabTest {
@@ -57,6 +59,7 @@ class GitLabTest {
     glGroup.setPath("grp1");
     glGroup.setName("grp1");
 
+    mockUsers(new ArrayList<>());
     when(client.createGroup("grp1", "grp1", null)).thenReturn(glGroup);
 
     List<IdpGroup> idpGroups = new ArrayList<>();
@@ -71,7 +74,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createUser(null, null, null, null, null);
     verify(client).createGroup("grp1", "grp1", null);
@@ -96,7 +99,7 @@ class GitLabTest {
     glGroup.setPath("grp1");
     glGroup.setName("grp1");
 
-    when(client.getUsers(null)).thenReturn(new ArrayList<>());
+    mockUsers(new ArrayList<>());
     when(client.createUser("user1", "User 1", "user1@acme.com", PROVIDER_NAME, EXTERNAL_UID)).thenReturn(glUser);
     when(client.getGroupsWithMembers(null, false)).thenReturn(new ArrayList<>());
     when(client.createGroup("grp1", "grp1", null)).thenReturn(glGroup);
@@ -120,7 +123,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client).createGroup("grp1", "grp1", null);
     verify(client).createUser("user1", "User 1", "user1@acme.com", PROVIDER_NAME, EXTERNAL_UID);
@@ -158,7 +161,7 @@ class GitLabTest {
     glGroup.addMember(glUser, GLPermission.MAINTAINER);
     glGroups.add(glGroup);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.createUser("user2", "User 2", "user2@acme.com", PROVIDER_NAME, EXTERNAL_UID)).thenReturn(glUser2);
     when(client.addMemberToGroup(glGroup, glUser2, GLPermission.DEVELOPER)).thenReturn(true);
@@ -192,7 +195,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", PROVIDER_NAME, EXTERNAL_UID);
@@ -226,7 +229,7 @@ class GitLabTest {
     glGroups.add(glGroup);
     glGroup.addMember(glUser, GLPermission.MAINTAINER);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.removeMemberFromGroup(glGroup, glUser)).thenReturn(true);
     when(client.blockUser(glUser)).thenReturn(true);
@@ -239,7 +242,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", null, null);
@@ -268,7 +271,7 @@ class GitLabTest {
     glGroups.add(glGroup);
     glGroup.addMember(glUser, GLPermission.MAINTAINER);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.removeMemberFromGroup(glGroup, glUser)).thenReturn(true);
     when(client.blockUser(glUser)).thenReturn(true);
@@ -277,7 +280,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", null, null);
@@ -319,7 +322,7 @@ class GitLabTest {
     glGroup2.addMember(glUser2, GLPermission.MAINTAINER);
     glGroups.add(glGroup2);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.removeMemberFromGroup(glGroup, glUser2)).thenReturn(true);
     when(client.removeMemberFromGroup(glGroup2, glUser)).thenReturn(true);
@@ -356,7 +359,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", null, null);
@@ -403,7 +406,7 @@ class GitLabTest {
     glGroup.addMember(glUser2, GLPermission.MAINTAINER);
     glGroups.add(glGroup);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.addMemberToGroup(glGroup, glUser, GLPermission.MAINTAINER)).thenReturn(true);
     when(client.removeMemberFromGroup(glGroup, glUser2)).thenReturn(true);
@@ -427,7 +430,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", null, null);
@@ -462,7 +465,7 @@ class GitLabTest {
     glGroup.setName("grp1");
     glGroups.add(glGroup);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.addMemberToGroup(glGroup, glUser, GLPermission.MAINTAINER)).thenReturn(true);
     when(client.unblockUser(glUser)).thenReturn(true);
@@ -485,7 +488,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", null, null);
@@ -526,7 +529,7 @@ class GitLabTest {
     glSubGroup.addMember(glUser, GLPermission.DEVELOPER);
     glGroups.add(glSubGroup);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
 
     IdpUser idpUser = new IdpUser();
@@ -547,7 +550,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).removeMemberFromGroup(glSubGroup, glUser);
 
@@ -572,7 +575,7 @@ class GitLabTest {
     glGroups.add(glGroup);
     glGroup.addMember(glUser, GLPermission.REPORTER);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.addMemberToGroup(glGroup, glUser, GLPermission.MAINTAINER)).thenReturn(true);
     when(client.removeMemberFromGroup(glGroup, glUser)).thenReturn(true);
@@ -605,7 +608,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", null, null);
@@ -656,7 +659,7 @@ class GitLabTest {
     when(client.blockUser(glUser2)).thenReturn(true);
     when(client.removeMemberFromProject(glProject, glUser2)).thenReturn(true);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.getProjectsFromGroup(glGroup, null, false)).thenReturn(glProjects);
     when(client.getProjectUsers(glProject)).thenReturn(glProjectUsers);
@@ -686,7 +689,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", null, null);
@@ -719,7 +722,7 @@ class GitLabTest {
     glGroup.addMember(glUser, GLPermission.MAINTAINER);
     glGroups.add(glGroup);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
 
     IdpUser idpUser = new IdpUser();
@@ -740,7 +743,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createUser("user1", "User 1", "user1@acme.com", PROVIDER_NAME, EXTERNAL_UID);
@@ -778,7 +781,7 @@ class GitLabTest {
     glGroup2.setName("grp2");
     glGroups.add(glGroup2);
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
     when(client.createUser("user1", "User 1", "user1@acme.com", PROVIDER_NAME, EXTERNAL_UID)).thenReturn(glUser);
     when(client.addMemberToGroup(glGroup1, glUser, GLPermission.DEVELOPER)).thenReturn(true);
@@ -807,7 +810,7 @@ class GitLabTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).createGroup("grp1", "grp1", null);
     verify(client, never()).createGroup("grp2", "grp2", null);
@@ -837,14 +840,14 @@ class GitLabTest {
 
     List<GLGroup> glGroups = new ArrayList<>();
 
-    when(client.getUsers(null)).thenReturn(glUsers);
+    mockUsers(glUsers);
     when(client.getGroupsWithMembers(null, false)).thenReturn(glGroups);
 
     List<IdpGroup> idpGroups = new ArrayList<>();
 
     app.sync(idpGroups);
 
-    verify(client).getUsers(null);
+    verify(client).getUsers(isNull(), any());
     verify(client).getGroupsWithMembers(null, false);
     verify(client, never()).blockUser(glUser);
 
@@ -852,4 +855,11 @@ class GitLabTest {
 
     assertThat(glUser.getState()).isEqualTo(GLState.ACTIVE);
   }
+
+  private void mockUsers(List<GLUser> users) {
+    doAnswer(invocation -> {
+      invocation.<Consumer<List<GLUser>>>getArgument(1).accept(users);
+      return true;
+    }).when(client).getUsers(isNull(), any());
+  }
 }
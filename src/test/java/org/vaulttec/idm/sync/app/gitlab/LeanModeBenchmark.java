@@ -0,0 +1,134 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.gitlab;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vaulttec.idm.sync.app.RestClientSettings;
+import org.vaulttec.idm.sync.app.gitlab.model.GLGroup;
+import org.vaulttec.idm.sync.stub.StubApis;
+import org.vaulttec.idm.sync.stub.StubServer;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Compares the retrieval of the projects of 100 GitLab groups from the
+ * {@link StubServer} with the full representation and with lean mode (simple
+ * representation). Run via {@link #main(String[])} from the test classpath -
+ * the GC profiler reports the allocation per retrieval
+ * (<code>gc.alloc.rate.norm</code>) and the auxiliary counter
+ * <code>responseBytes</code> the response body size per retrieval.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LeanModeBenchmark {
+
+  private static final int GROUPS = 100;
+
+  @Param({ "false", "true" })
+  private boolean lean;
+
+  private StubServer server;
+  private MeterRegistry registry;
+  private GitLabClient client;
+  private List<GLGroup> groups;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class ResponseSize {
+
+    private double bytes;
+    private long retrievals;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      bytes = 0;
+      retrievals = 0;
+    }
+
+    public double responseBytes() {
+      return retrievals > 0 ? bytes / retrievals : 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    server = StubServer.start();
+    StubApis.gitLab(server, 10, GROUPS, 2);
+    registry = new SimpleMeterRegistry();
+    RestClientSettings settings = new RestClientSettings();
+    settings.setLeanEnabled(lean);
+    settings.setMeterRegistry(registry);
+    client = new GitLabClientBuilder(server.getUrl()).perPage(100).personalAccessToken("token").settings(settings)
+        .build();
+    groups = client.getGroups(null, false);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public int getProjects(ResponseSize responseSize) {
+    double bytes = getResponseBytes();
+    int projects = 0;
+    for (GLGroup group : groups) {
+      projects += client.getProjectsFromGroup(group, null, false).size();
+    }
+    responseSize.bytes += getResponseBytes() - bytes;
+    responseSize.retrievals++;
+    return projects;
+  }
+
+  private double getResponseBytes() {
+    return registry.find("idm.client.response.size").summaries().stream()
+        .mapToDouble(DistributionSummary::totalAmount).sum();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(LeanModeBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class).build()).run();
+  }
+}
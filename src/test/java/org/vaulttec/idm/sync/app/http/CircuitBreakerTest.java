@@ -0,0 +1,207 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.vaulttec.idm.sync.app.http.CircuitBreaker.State;
+
+class CircuitBreakerTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void testOpenAfterConsecutiveFailures() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 3, 1000, 1);
+    long now = System.nanoTime();
+    for (int i = 0; i < 2; i++) {
+      assertThat(breaker.tryAcquirePermission(now)).isTrue();
+      breaker.onFailure(now);
+    }
+    assertThat(breaker.tryAcquirePermission(now)).isTrue();
+    breaker.onSuccess();
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(breaker.tryAcquirePermission(now)).isTrue();
+      breaker.onFailure(now);
+    }
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    assertThat(breaker.tryAcquirePermission(now + SECOND / 2)).isFalse();
+  }
+
+  @Test
+  void testHalfOpen() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 1, 1000, 2);
+    long now = System.nanoTime();
+    breaker.onFailure(now);
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+
+    // Two trial requests - the third one is rejected
+    assertThat(breaker.tryAcquirePermission(now + SECOND)).isTrue();
+    assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+    assertThat(breaker.tryAcquirePermission(now + SECOND)).isTrue();
+    assertThat(breaker.tryAcquirePermission(now + SECOND)).isFalse();
+    breaker.onSuccess();
+    breaker.releasePermission();
+    assertThat(breaker.tryAcquirePermission(now + SECOND)).isTrue();
+    breaker.onSuccess();
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+    // Failed trial request opens the breaker again
+    breaker.onFailure(now + SECOND);
+    assertThat(breaker.tryAcquirePermission(now + 2 * SECOND)).isTrue();
+    breaker.onFailure(now + 2 * SECOND);
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    assertThat(breaker.tryAcquirePermission(now + 2 * SECOND)).isFalse();
+  }
+
+  @Test
+  void testDisabled() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 0, 1000, 1);
+    for (int i = 0; i < 100; i++) {
+      breaker.onFailure();
+    }
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    assertThat(breaker.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  void testInterceptorFailsFast() {
+    CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000, 1);
+    Bulkhead bulkhead = new Bulkhead("test", 1, 0);
+    RestTemplate restTemplate = new RestTemplate();
+    restTemplate.getInterceptors().add(new CircuitBreakerInterceptor(breaker, bulkhead));
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server.expect(times(2), requestTo("http://test/api")).andRespond(withServerError());
+
+    for (int i = 0; i < 2; i++) {
+      assertThatThrownBy(() -> restTemplate.getForObject("http://test/api", String.class))
+          .isInstanceOf(HttpServerErrorException.class);
+    }
+    assertThatThrownBy(() -> restTemplate.getForObject("http://test/api", String.class))
+        .isInstanceOf(ResourceAccessException.class).hasCauseInstanceOf(CallNotPermittedException.class);
+    assertThat(bulkhead.getConcurrentCalls()).isZero();
+    server.verify();
+  }
+
+  @Test
+  void testBulkheadReleasedOnUnreadableStatus() throws IOException {
+    CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000, 1);
+    Bulkhead bulkhead = new Bulkhead("test", 1, 0);
+    RestTemplate restTemplate = new RestTemplate();
+    restTemplate.getInterceptors().add(new CircuitBreakerInterceptor(breaker, bulkhead));
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    ClientHttpResponse response = mock(ClientHttpResponse.class);
+    when(response.getRawStatusCode()).thenThrow(new IOException("Connection reset"));
+    server.expect(requestTo("http://test/api")).andRespond(request -> response);
+
+    assertThatThrownBy(() -> restTemplate.getForObject("http://test/api", String.class))
+        .isInstanceOf(ResourceAccessException.class).hasCauseInstanceOf(IOException.class);
+    assertThat(bulkhead.getConcurrentCalls()).isZero();
+    verify(response).close();
+    server.verify();
+  }
+
+  @Test
+  void testBulkheadFull() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000, 1);
+    Bulkhead bulkhead = new Bulkhead("test", 1, 0);
+    RestTemplate restTemplate = new RestTemplate();
+    restTemplate.getInterceptors().add(new CircuitBreakerInterceptor(breaker, bulkhead));
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server.expect(requestTo("http://test/api")).andRespond(withSuccess("ok", MediaType.TEXT_PLAIN));
+
+    assertThat(bulkhead.tryAcquire()).isTrue();
+    assertThatThrownBy(() -> restTemplate.getForObject("http://test/api", String.class))
+        .hasCauseInstanceOf(CallNotPermittedException.class);
+    bulkhead.release();
+    assertThat(restTemplate.getForObject("http://test/api", String.class)).isEqualTo("ok");
+    assertThat(bulkhead.getConcurrentCalls()).isZero();
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    server.verify();
+  }
+
+  @Test
+  void testBulkheadLanes() throws InterruptedException {
+    Bulkhead bulkhead = new Bulkhead("test", 4, 0);
+    assertThat(bulkhead.getMaxConcurrentCalls(RequestPriority.STATISTICS)).isEqualTo(2);
+    assertThat(bulkhead.getMaxConcurrentCalls(RequestPriority.API)).isEqualTo(3);
+
+    assertThat(bulkhead.tryAcquire(RequestPriority.STATISTICS)).isTrue();
+    assertThat(bulkhead.tryAcquire(RequestPriority.STATISTICS)).isTrue();
+    assertThat(bulkhead.tryAcquire(RequestPriority.STATISTICS)).isFalse();
+    assertThat(bulkhead.tryAcquire(RequestPriority.API)).isTrue();
+    assertThat(bulkhead.tryAcquire(RequestPriority.API)).isFalse();
+    assertThat(bulkhead.tryAcquire(RequestPriority.SYNC_READ)).isTrue();
+    assertThat(bulkhead.tryAcquire(RequestPriority.SYNC_WRITE)).isFalse();
+    assertThat(bulkhead.getConcurrentCalls()).isEqualTo(4);
+  }
+
+  @Test
+  void testBulkheadServesHigherPriorityFirst() throws Exception {
+    Bulkhead bulkhead = new Bulkhead("test", 1, 5000);
+    assertThat(bulkhead.tryAcquire()).isTrue();
+    CompletableFuture<Boolean> statistics = acquireAsync(bulkhead, RequestPriority.STATISTICS, 1);
+    CompletableFuture<Boolean> write = acquireAsync(bulkhead, RequestPriority.SYNC_WRITE, 2);
+
+    // The slot is handed to the write although the statistics were waiting longer
+    bulkhead.release();
+    assertThat(write.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(statistics).isNotDone();
+    bulkhead.release();
+    assertThat(statistics.get(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private CompletableFuture<Boolean> acquireAsync(Bulkhead bulkhead, RequestPriority priority, int waitingCalls)
+      throws InterruptedException {
+    CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> tryAcquire(bulkhead, priority));
+    while (bulkhead.getWaitingCalls() < waitingCalls) {
+      Thread.sleep(10);
+    }
+    return future;
+  }
+
+  private boolean tryAcquire(Bulkhead bulkhead, RequestPriority priority) {
+    try {
+      return bulkhead.tryAcquire(priority);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
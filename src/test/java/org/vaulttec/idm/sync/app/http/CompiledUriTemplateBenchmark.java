@@ -0,0 +1,101 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriTemplateHandler;
+
+/**
+ * Compares 100k expansions of an API call's URL template via the
+ * <code>RestTemplate</code>'s default {@link UriTemplateHandler} (which parses
+ * the template on every call) with a {@link CompiledUriTemplate}. Run via
+ * {@link #main(String[])} from the test classpath - the GC profiler reports the
+ * allocation per expansion (<code>gc.alloc.rate.norm</code>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompiledUriTemplateBenchmark {
+
+  private static final int EXPANSIONS = 100_000;
+  private static final String TEMPLATE = "https://gitlab.example.com/api/v4/groups/{groupId}/projects"
+      + "?with_shared={withShared}&search={search}&per_page={perPage}&page={page}";
+
+  private UriTemplateHandler uriTemplateHandler;
+  private CompiledUriTemplate compiledTemplate;
+  private Map<String, String> uriVariables;
+
+  @Setup
+  public void setUp() {
+    uriTemplateHandler = new RestTemplate().getUriTemplateHandler();
+    compiledTemplate = CompiledUriTemplate.compile(TEMPLATE);
+    uriVariables = new HashMap<>();
+    uriVariables.put("groupId", "4711");
+    uriVariables.put("withShared", "false");
+    uriVariables.put("search", "team_GIT_project");
+    uriVariables.put("perPage", "100");
+    uriVariables.put("page", "2");
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EXPANSIONS)
+  public void uriTemplateHandler(Blackhole blackhole) {
+    for (int i = 0; i < EXPANSIONS; i++) {
+      URI uri = uriTemplateHandler.expand(TEMPLATE, uriVariables);
+      blackhole.consume(uri);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EXPANSIONS)
+  public void compiledTemplate(Blackhole blackhole) {
+    for (int i = 0; i < EXPANSIONS; i++) {
+      URI uri = compiledTemplate.expand(uriVariables);
+      blackhole.consume(uri);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(CompiledUriTemplateBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class).build()).run();
+  }
+}
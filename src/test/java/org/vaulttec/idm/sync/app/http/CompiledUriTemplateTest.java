@@ -0,0 +1,69 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriTemplateHandler;
+
+class CompiledUriTemplateTest {
+
+  private static final String TEMPLATE = "http://gitlab/api/v4/groups/{groupId}/projects"
+      + "?search={search}&per_page={perPage}";
+
+  @Test
+  void testExpandLikeRestTemplate() {
+    UriTemplateHandler uriTemplateHandler = new RestTemplate().getUriTemplateHandler();
+    CompiledUriTemplate template = CompiledUriTemplate.compile(TEMPLATE);
+    assertThat(template.getVariableNames()).containsExactly("groupId", "search", "perPage");
+    for (String value : new String[] { "simple", "with space", "%\\_GIT\\_%", "a&b=c", "a/b?c#d", "1+1", "äöü",
+        "" }) {
+      Map<String, String> uriVariables = createUriVariables(value, value, "20");
+      assertThat(template.expand(uriVariables)).isEqualTo(uriTemplateHandler.expand(TEMPLATE, uriVariables));
+    }
+  }
+
+  @Test
+  void testExpandWithoutVariables() {
+    CompiledUriTemplate template = CompiledUriTemplate.compile("http://gitlab/api/v4/users");
+    assertThat(template.expand(null)).hasToString("http://gitlab/api/v4/users");
+  }
+
+  @Test
+  void testExpandWithMissingVariable() {
+    CompiledUriTemplate template = CompiledUriTemplate.compile(TEMPLATE);
+    Map<String, String> uriVariables = createUriVariables("1", null, "20");
+    assertThat(template.expand(uriVariables)).hasToString("http://gitlab/api/v4/groups/1/projects?search=&per_page=20");
+    uriVariables.remove("perPage");
+    assertThatThrownBy(() -> template.expand(uriVariables)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private Map<String, String> createUriVariables(String groupId, String search, String perPage) {
+    Map<String, String> uriVariables = new HashMap<>();
+    uriVariables.put("groupId", groupId);
+    uriVariables.put("search", search);
+    uriVariables.put("perPage", perPage);
+    return uriVariables;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CompressionInterceptorTest {
+
+  private static final String JSON = "[" + "{\"id\": 1, \"username\": \"user\"},".repeat(100) + "{}]";
+
+  private MeterRegistry registry;
+  private RestClientMetrics metrics;
+  private RestTemplate restTemplate;
+  private MockRestServiceServer server;
+
+  @BeforeEach
+  void setUp() {
+    registry = new SimpleMeterRegistry();
+    metrics = new RestClientMetrics(registry, "test", "http://test", "");
+    restTemplate = new RestTemplate();
+    restTemplate.getInterceptors().add(new CompressionInterceptor(metrics));
+    server = MockRestServiceServer.bindTo(restTemplate).build();
+  }
+
+  @Test
+  void testGzip() throws IOException {
+    byte[] compressed = gzip();
+    server.expect(requestTo("http://test/api/v4/groups/42/members"))
+        .andExpect(header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+        .andRespond(withSuccess(compressed, MediaType.APPLICATION_JSON).headers(contentEncoding("gzip")));
+
+    assertThat(restTemplate.getForObject("http://test/api/v4/groups/42/members", String.class)).isEqualTo(JSON);
+    assertThat(wireBytes("/api/v4/groups/{id}/members")).isEqualTo(compressed.length);
+    assertThat(decodedBytes("/api/v4/groups/{id}/members")).isEqualTo(JSON.length());
+    server.verify();
+  }
+
+  @Test
+  void testDeflate() throws IOException {
+    byte[] zlib = deflate(new Deflater());
+    byte[] raw = deflate(new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    server.expect(requestTo("http://test/users"))
+        .andRespond(withSuccess(zlib, MediaType.APPLICATION_JSON).headers(contentEncoding("deflate")));
+    server.expect(requestTo("http://test/users"))
+        .andRespond(withSuccess(raw, MediaType.APPLICATION_JSON).headers(contentEncoding("deflate")));
+
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo(JSON);
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo(JSON);
+    assertThat(wireBytes("/users")).isEqualTo(zlib.length + raw.length);
+    assertThat(decodedBytes("/users")).isEqualTo(2.0 * JSON.length());
+    server.verify();
+  }
+
+  @Test
+  void testUncompressed() {
+    server.expect(requestTo("http://test/users")).andRespond(withSuccess(JSON, MediaType.APPLICATION_JSON));
+
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo(JSON);
+    assertThat(wireBytes("/users")).isEqualTo(JSON.length());
+    assertThat(decodedBytes("/users")).isEqualTo(JSON.length());
+    server.verify();
+  }
+
+  @Test
+  void testEndpoint() {
+    assertThat(metrics.getEndpoint("/api/v4/users/12/identities/ldapmain"))
+        .isEqualTo("/api/v4/users/{id}/identities/ldapmain");
+    assertThat(metrics.getEndpoint("/auth/admin/realms/test/groups/0b5d3f4e-6c1a-4f3e-9a55-2c1d7e8f9a0b"))
+        .isEqualTo("/auth/admin/realms/test/groups/{id}");
+    assertThat(metrics.getEndpoint("/api/v4/teams/4xp9fdt7pbgium38k5k6w95oyr/members"))
+        .isEqualTo("/api/v4/teams/{id}/members");
+  }
+
+  private double wireBytes(String endpoint) {
+    return registry.get("idm.client.response.wire.bytes").tags("method", "GET", "endpoint", endpoint).counter()
+        .count();
+  }
+
+  private double decodedBytes(String endpoint) {
+    return registry.get("idm.client.response.decoded.bytes").tags("method", "GET", "endpoint", endpoint).counter()
+        .count();
+  }
+
+  private byte[] gzip() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(JSON.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  private byte[] deflate(Deflater deflater) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+      out.write(JSON.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  private HttpHeaders contentEncoding(String encoding) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.CONTENT_ENCODING, encoding);
+    return headers;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.headerDoesNotExist;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+class ConditionalGetCacheTest {
+
+  private ConditionalGetCache cache;
+  private RestTemplate restTemplate;
+  private MockRestServiceServer server;
+
+  @BeforeEach
+  void setUp() {
+    cache = new ConditionalGetCache(2);
+    restTemplate = new RestTemplate();
+    restTemplate.getInterceptors().add(cache);
+    server = MockRestServiceServer.bindTo(restTemplate).build();
+  }
+
+  @Test
+  void testNotModified() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag("\"v1\"");
+    headers.add("X-Total-Pages", "1");
+    server.expect(requestTo("http://test/users")).andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+        .andRespond(withSuccess("[1]", MediaType.APPLICATION_JSON).headers(headers));
+    HttpHeaders notModifiedHeaders = new HttpHeaders();
+    notModifiedHeaders.add("RateLimit-Remaining", "99");
+    server.expect(requestTo("http://test/users")).andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+        .andRespond(withStatus(HttpStatus.NOT_MODIFIED).headers(notModifiedHeaders));
+
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo("[1]");
+    ResponseEntity<String> response = restTemplate.getForEntity("http://test/users", String.class);
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(response.getBody()).isEqualTo("[1]");
+    assertThat(response.getHeaders().getFirst("X-Total-Pages")).isEqualTo("1");
+    assertThat(response.getHeaders().getFirst("RateLimit-Remaining")).isEqualTo("99");
+    assertThat(cache.getHits()).isEqualTo(1);
+    server.verify();
+  }
+
+  @Test
+  void testModified() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT");
+    server.expect(requestTo("http://test/users"))
+        .andRespond(withSuccess("[1]", MediaType.APPLICATION_JSON).headers(headers));
+    server.expect(requestTo("http://test/users"))
+        .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2015 07:28:00 GMT"))
+        .andRespond(withSuccess("[1,2]", MediaType.APPLICATION_JSON));
+    server.expect(requestTo("http://test/users")).andExpect(headerDoesNotExist(HttpHeaders.IF_MODIFIED_SINCE))
+        .andRespond(withSuccess("[1,2]", MediaType.APPLICATION_JSON));
+
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo("[1]");
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo("[1,2]");
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo("[1,2]");
+    assertThat(cache.getHits()).isZero();
+    assertThat(cache.size()).isZero();
+    server.verify();
+  }
+
+  @Test
+  void testCachedPerAccept() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag("\"v1\"");
+    server.expect(requestTo("http://test/users")).andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+        .andRespond(withSuccess("[1]", MediaType.APPLICATION_JSON).headers(headers));
+    server.expect(requestTo("http://test/users")).andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+        .andRespond(withSuccess("user1", MediaType.TEXT_PLAIN));
+
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo("[1]");
+    assertThat(restTemplate.exchange(RequestEntity.get("http://test/users").accept(MediaType.TEXT_PLAIN).build(),
+        String.class).getBody()).isEqualTo("user1");
+    assertThat(cache.size()).isEqualTo(1);
+    server.verify();
+  }
+
+  @Test
+  void testNoCacheBypassed() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag("\"v1\"");
+    server.expect(requestTo("http://test/users"))
+        .andRespond(withSuccess("[1]", MediaType.APPLICATION_JSON).headers(headers));
+    server.expect(requestTo("http://test/users")).andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+        .andRespond(withSuccess("[1,2]", MediaType.APPLICATION_JSON).headers(headers));
+
+    assertThat(restTemplate.getForObject("http://test/users", String.class)).isEqualTo("[1]");
+    assertThat(restTemplate.exchange(RequestEntity.get("http://test/users").header(HttpHeaders.CACHE_CONTROL,
+        "no-cache").build(), String.class).getBody()).isEqualTo("[1,2]");
+    assertThat(cache.getHits()).isZero();
+    server.verify();
+  }
+
+  @Test
+  void testLeastRecentlyUsedEvicted() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag("\"v1\"");
+    for (int i = 1; i <= 3; i++) {
+      server.expect(requestTo("http://test/users/" + i))
+          .andRespond(withSuccess("{}", MediaType.APPLICATION_JSON).headers(headers));
+    }
+    server.expect(requestTo("http://test/users/1")).andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+        .andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+
+    for (int i = 1; i <= 3; i++) {
+      restTemplate.getForObject("http://test/users/" + i, String.class);
+    }
+    assertThat(cache.size()).isEqualTo(2);
+    restTemplate.getForObject("http://test/users/1", String.class);
+    server.verify();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+class ExponentialBackoffRetryPolicyTest {
+
+  private final ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(4, 100, 300, 1000);
+
+  @Test
+  void testExponentialBackoffWithJitter() {
+    HttpServerErrorException exception = serverError(HttpStatus.SERVICE_UNAVAILABLE);
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET, exception, 1, 0)).isBetween(50L, 100L);
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET, exception, 2, 0)).isBetween(100L, 200L);
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET, exception, 3, 0)).isBetween(150L, 300L);
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET, exception, 4, 0)).isNegative();
+  }
+
+  @Test
+  void testRetryAfter() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.RETRY_AFTER, "0");
+    HttpClientErrorException exception = HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", headers,
+        null, null);
+    assertThat(policy.getRetryDelayMillis(HttpMethod.POST, exception, 1, 0)).isZero();
+  }
+
+  @Test
+  void testTimeBudget() {
+    HttpServerErrorException exception = serverError(HttpStatus.SERVICE_UNAVAILABLE);
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET, exception, 1, 960)).isNegative();
+    assertThat(new ExponentialBackoffRetryPolicy(4, 100, 300, 0).getRetryDelayMillis(HttpMethod.GET, exception, 1,
+        Long.MAX_VALUE / 2)).isPositive();
+  }
+
+  @Test
+  void testIdempotentMethodsOnly() {
+    HttpServerErrorException badGateway = serverError(HttpStatus.BAD_GATEWAY);
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET, badGateway, 1, 0)).isPositive();
+    assertThat(policy.getRetryDelayMillis(HttpMethod.POST, badGateway, 1, 0)).isNegative();
+
+    ResourceAccessException reset = new ResourceAccessException("I/O error", new SocketException("Connection reset"));
+    assertThat(policy.getRetryDelayMillis(HttpMethod.DELETE, reset, 1, 0)).isPositive();
+    assertThat(policy.getRetryDelayMillis(HttpMethod.POST, reset, 1, 0)).isNegative();
+
+    ResourceAccessException refused = new ResourceAccessException("I/O error",
+        new ConnectException("Connection refused"));
+    assertThat(policy.getRetryDelayMillis(HttpMethod.POST, refused, 1, 0)).isPositive();
+  }
+
+  @Test
+  void testNotRetryable() {
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET, serverError(HttpStatus.INTERNAL_SERVER_ERROR), 1, 0))
+        .isNegative();
+    assertThat(policy.getRetryDelayMillis(HttpMethod.GET,
+        HttpClientErrorException.create(HttpStatus.NOT_FOUND, "", new HttpHeaders(), null, null), 1, 0)).isNegative();
+  }
+
+  private HttpServerErrorException serverError(HttpStatus status) {
+    return HttpServerErrorException.create(status, "", new HttpHeaders(), null, null);
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.net.ssl.SSLSession;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.vaulttec.idm.sync.app.RestClientSettings;
+import org.vaulttec.idm.sync.app.gitlab.GitLabClient;
+import org.vaulttec.idm.sync.app.gitlab.GitLabClientBuilder;
+import org.vaulttec.idm.sync.stub.StubApis;
+import org.vaulttec.idm.sync.stub.StubServer;
+import org.vaulttec.idm.sync.stub.StubServer.StubResponse;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+class JdkClientHttpRequestFactoryTest {
+
+  private final Logger logger = (Logger) LoggerFactory.getLogger(JdkClientHttpRequestFactory.class);
+  private StubServer server;
+  private ListAppender<ILoggingEvent> appender;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = StubServer.start();
+    appender = new ListAppender<>();
+    appender.start();
+    logger.addAppender(appender);
+    logger.setLevel(Level.INFO);
+  }
+
+  @AfterEach
+  void tearDown() {
+    logger.setLevel(null);
+    logger.detachAppender(appender);
+    server.close();
+  }
+
+  @Test
+  void testClientWithHttp2Transport() {
+    StubApis.gitLab(server, 25, 2, 10);
+    RestClientSettings settings = RestClientSettings.fromConfig(Map.of("transport", "http2", "paging.concurrency",
+        "3"));
+    GitLabClient client = new GitLabClientBuilder(server.getUrl()).perPage(10).personalAccessToken("token")
+        .settings(settings).build();
+
+    assertThat(client.getUsers(null)).hasSize(25);
+    assertThat(client.getGroups(null, false)).hasSize(2);
+
+    // The stub server only speaks HTTP/1.1 which is logged once
+    assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage)
+        .containsExactly("Negotiated protocol HTTP_1_1 with '" + server.getUrl() + "'");
+  }
+
+  @Test
+  void testRestrictedHeadersSkipped() {
+    server.route("GET", "/test", request -> StubResponse.ok("{\"custom\": \"" + request.getHeader("X-Custom")
+        + "\", \"host\": \"" + request.getHeader("Host") + "\"}"));
+    RestTemplate restTemplate = createRestTemplate(new RequestTimeouts(1000, 1000, 1000));
+    org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
+    headers.set("X-Custom", "value");
+    headers.set("Host", "other.invalid");
+    headers.set("Connection", "close");
+    headers.set("Expect", "100-continue");
+    headers.set("Upgrade", "websocket");
+
+    String body = restTemplate.exchange(server.getUrl() + "/test", HttpMethod.GET, new HttpEntity<>(headers),
+        String.class).getBody();
+    assertThat(body).isEqualTo("{\"custom\": \"value\", \"host\": \"" + server.getUrl().substring(7) + "\"}");
+  }
+
+  @Test
+  void testTimeoutPerProfile() {
+    server.route("GET", "/test", request -> StubResponse.ok("{}"));
+    server.latency(300);
+    RestTemplate restTemplate = createRestTemplate(new RequestTimeouts(100, 100, 2000));
+
+    assertThatThrownBy(() -> restTemplate.getForObject(server.getUrl() + "/test", String.class))
+        .isInstanceOf(ResourceAccessException.class).hasCauseInstanceOf(HttpTimeoutException.class);
+    assertThat(RequestTimeouts.callWithProfile(RequestTimeouts.Profile.LISTING,
+        () -> restTemplate.getForObject(server.getUrl() + "/test", String.class))).isEqualTo("{}");
+  }
+
+  @Test
+  void testPseudoHeadersSkipped() {
+    HttpHeaders headers = HttpHeaders.of(Map.of(":status", List.of("200"), "content-type",
+        List.of("application/json")), (name, value) -> true);
+    JdkClientHttpRequestFactory.JdkClientHttpResponse response = new JdkClientHttpRequestFactory.JdkClientHttpResponse(
+        new TestResponse(headers));
+    assertThat(response.getHeaders()).containsOnlyKeys("content-type");
+  }
+
+  private RestTemplate createRestTemplate(RequestTimeouts timeouts) {
+    return new RestTemplate(new JdkClientHttpRequestFactory(HttpClient.Version.HTTP_2, null, 0, 1000, timeouts));
+  }
+
+  private static class TestResponse implements HttpResponse<InputStream> {
+
+    private final HttpHeaders headers;
+
+    TestResponse(HttpHeaders headers) {
+      this.headers = headers;
+    }
+
+    @Override
+    public int statusCode() {
+      return 200;
+    }
+
+    @Override
+    public HttpRequest request() {
+      return null;
+    }
+
+    @Override
+    public Optional<HttpResponse<InputStream>> previousResponse() {
+      return Optional.empty();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return headers;
+    }
+
+    @Override
+    public InputStream body() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+      return URI.create("http://test");
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_2;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+class RateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void testUnlimited() {
+    RateLimiter limiter = new RateLimiter("test", 0, true);
+    long now = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      assertThat(limiter.reserve(now)).isZero();
+    }
+  }
+
+  @Test
+  void testFixedRate() {
+    RateLimiter limiter = new RateLimiter("test", 10, false);
+    long now = System.nanoTime();
+
+    // Burst of one second, then one permit every 100 ms
+    for (int i = 0; i < 10; i++) {
+      assertThat(limiter.reserve(now)).isZero();
+    }
+    assertThat(limiter.reserve(now)).isCloseTo(SECOND / 10, within(1000L));
+    assertThat(limiter.reserve(now)).isCloseTo(2 * SECOND / 10, within(1000L));
+    assertThat(limiter.reserve(now + SECOND)).isCloseTo(0L, within(1000L));
+  }
+
+  @Test
+  void testPermitsReservedForHigherPriorities() {
+    RateLimiter limiter = new RateLimiter("test", 11, false);
+    long now = System.nanoTime();
+
+    // Statistics leave half of the burst to the higher priorities
+    for (int i = 0; i < 6; i++) {
+      assertThat(limiter.reserve(now, RequestPriority.STATISTICS)).isZero();
+    }
+    assertThat(limiter.reserve(now, RequestPriority.STATISTICS)).isCloseTo(-SECOND / 11, within(1000L));
+    assertThat(limiter.reserve(now, RequestPriority.API)).isZero();
+    assertThat(limiter.reserve(now, RequestPriority.API)).isZero();
+    assertThat(limiter.reserve(now, RequestPriority.API)).isNegative();
+    for (int i = 0; i < 3; i++) {
+      assertThat(limiter.reserve(now, RequestPriority.SYNC_READ)).isZero();
+    }
+    assertThat(limiter.reserve(now, RequestPriority.SYNC_WRITE)).isCloseTo(SECOND / 11, within(1000L));
+  }
+
+  @Test
+  void testAdaptToRemainingBudget() {
+    RateLimiter limiter = new RateLimiter("test", 0, true);
+    limiter.update(100, 10);
+    assertThat(limiter.getPermitsPerSecond()).isEqualTo(100 * RateLimiter.UTILIZATION / 10);
+
+    // Never above the configured maximum
+    RateLimiter maxLimiter = new RateLimiter("test", 5, true);
+    maxLimiter.update(1000, 10);
+    assertThat(maxLimiter.getPermitsPerSecond()).isEqualTo(5);
+
+    // Not adapted if disabled
+    RateLimiter fixedLimiter = new RateLimiter("test", 5, false);
+    fixedLimiter.update(1, 10);
+    assertThat(fixedLimiter.getPermitsPerSecond()).isEqualTo(5);
+  }
+
+  @Test
+  void testPauseIfBudgetExhausted() {
+    RateLimiter limiter = new RateLimiter("test", 0, true);
+    limiter.update(0, 3);
+    assertThat(limiter.reserve(System.nanoTime())).isGreaterThan(2 * SECOND).isLessThanOrEqualTo(3 * SECOND);
+  }
+
+  @Test
+  void testInterceptor() {
+    RateLimiter limiter = new RateLimiter("test", 0, true);
+    RestTemplate restTemplate = new RestTemplate();
+    restTemplate.getInterceptors().add(new RateLimitInterceptor(limiter, 1));
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    HttpHeaders headers = new HttpHeaders();
+    headers.add("RateLimit-Remaining", "20");
+    headers.add("RateLimit-Reset", Long.toString(System.currentTimeMillis() / 1000 + 10));
+    server.expect(requestTo("http://gitlab/users")).andRespond(withSuccess().headers(headers));
+    HttpHeaders retryHeaders = new HttpHeaders();
+    retryHeaders.add(HttpHeaders.RETRY_AFTER, "5");
+    server.expect(requestTo("http://gitlab/users")).andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS)
+        .headers(retryHeaders));
+
+    restTemplate.getForEntity("http://gitlab/users", String.class);
+    assertThat(limiter.getPermitsPerSecond()).isBetween(20 * RateLimiter.UTILIZATION / 10,
+        20 * RateLimiter.UTILIZATION / 9);
+    assertThatThrownBy(() -> restTemplate.getForEntity("http://gitlab/users", String.class))
+        .isInstanceOf(HttpClientErrorException.TooManyRequests.class);
+    assertThat(limiter.reserve(System.nanoTime())).isGreaterThan(4 * SECOND);
+    server.verify();
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+class SingleFlightTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testConcurrentCallsShared() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+
+    List<Future<String>> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+        calls.incrementAndGet();
+        latch.await();
+        return "value";
+      })));
+    }
+    awaitSharedCalls(singleFlight::getSharedCalls, 2);
+    latch.countDown();
+    for (Future<String> result : results) {
+      assertThat(result.get(1, TimeUnit.SECONDS)).isEqualTo("value");
+    }
+    assertThat(calls).hasValue(1);
+
+    // Completed calls aren't cached
+    assertThat(singleFlight.execute("key", () -> "next")).isEqualTo("next");
+  }
+
+  @Test
+  void testExceptionShared() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch latch = new CountDownLatch(1);
+    Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+      started.countDown();
+      latch.await();
+      throw new IOException("failed");
+    }));
+    assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+    CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> {
+      try {
+        return singleFlight.execute("key", () -> "not called");
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }, executor);
+    awaitSharedCalls(singleFlight::getSharedCalls, 1);
+    latch.countDown();
+    assertThatThrownBy(() -> leader.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+    assertThatThrownBy(() -> follower.get(1, TimeUnit.SECONDS)).hasRootCauseInstanceOf(IOException.class);
+  }
+
+  @Test
+  void testInterceptorCopiesResponse() throws Exception {
+    SingleFlightInterceptor interceptor = new SingleFlightInterceptor();
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicInteger requests = new AtomicInteger();
+    ClientHttpRequestExecution execution = (request, body) -> {
+      requests.incrementAndGet();
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return new MockClientHttpResponse("[1,2]".getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+    };
+
+    List<Future<String>> bodies = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      bodies.add(executor.submit(() -> {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://test/users"));
+        try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], execution)) {
+          return StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+        }
+      }));
+    }
+    awaitSharedCalls(interceptor::getSharedRequests, 1);
+    latch.countDown();
+    for (Future<String> body : bodies) {
+      assertThat(body.get(1, TimeUnit.SECONDS)).isEqualTo("[1,2]");
+    }
+    assertThat(requests).hasValue(1);
+  }
+
+  @Test
+  void testInterceptorSeparatesPriorities() throws Exception {
+    SingleFlightInterceptor interceptor = new SingleFlightInterceptor();
+    CountDownLatch latch = new CountDownLatch(2);
+    AtomicInteger requests = new AtomicInteger();
+    ClientHttpRequestExecution execution = (request, body) -> {
+      requests.incrementAndGet();
+      latch.countDown();
+      try {
+        latch.await(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return new MockClientHttpResponse("[1,2]".getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+    };
+
+    List<Future<String>> bodies = new ArrayList<>();
+    for (RequestPriority priority : List.of(RequestPriority.STATISTICS, RequestPriority.SYNC_READ)) {
+      bodies.add(executor.submit(() -> RequestPriority.callWithPriority(priority, () -> {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://test/users"));
+        try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], execution)) {
+          return StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      })));
+    }
+    for (Future<String> body : bodies) {
+      assertThat(body.get(2, TimeUnit.SECONDS)).isEqualTo("[1,2]");
+    }
+    assertThat(requests).hasValue(2);
+    assertThat(interceptor.getSharedRequests()).isZero();
+  }
+
+  private void awaitSharedCalls(LongSupplier sharedCalls, long expected)
+      throws InterruptedException {
+    for (int i = 0; i < 100 && sharedCalls.getAsLong() < expected; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(sharedCalls.getAsLong()).isEqualTo(expected);
+  }
+}
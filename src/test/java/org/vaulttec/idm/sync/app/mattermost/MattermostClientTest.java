@@ -0,0 +1,239 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.mattermost;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import org.vaulttec.idm.sync.app.RestClientSettings;
+import org.vaulttec.idm.sync.app.mattermost.model.MMTeam;
+import org.vaulttec.idm.sync.app.mattermost.model.MMUser;
+import org.vaulttec.idm.sync.stub.StubApis;
+import org.vaulttec.idm.sync.stub.StubServer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MattermostClientTest {
+
+  private static final String SERVER_URL = "http://mattermost";
+
+  @Test
+  void testGetUsers() {
+    MattermostClient client = createClient(new RestClientSettings());
+    MockRestServiceServer server = createServer(client, false);
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=0&per_page=2"))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON).headers(rateLimitHeaders()));
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=1&per_page=2"))
+        .andRespond(withSuccess(usersJson(3, 1), MediaType.APPLICATION_JSON).headers(rateLimitHeaders()));
+
+    List<MMUser> users = client.getUsers();
+    assertThat(users).extracting(MMUser::getUsername).containsExactly("user1", "user2", "user3");
+    server.verify();
+  }
+
+  @Test
+  void testGetUsersWithSpeculativePaging() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setPagingConcurrency(3);
+    MattermostClient client = createClient(settings);
+    MockRestServiceServer server = createServer(client, true);
+    for (int page = 0; page <= 5; page++) {
+      server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=" + page + "&per_page=2"))
+          .andRespond(withSuccess(page < 3 ? usersJson(page * 2 + 1, 2) : page == 3 ? usersJson(7, 1) : "[]",
+              MediaType.APPLICATION_JSON).headers(rateLimitHeaders()));
+    }
+
+    List<MMUser> users = client.getUsers();
+    assertThat(users).extracting(MMUser::getUsername).containsExactly("user1", "user2", "user3", "user4", "user5",
+        "user6", "user7");
+    server.verify();
+  }
+
+  @Test
+  void testGetUsersWithRetry() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setRetryInitialBackoffMillis(1);
+    MattermostClient client = createClient(settings);
+    MockRestServiceServer server = createServer(client, false);
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=0&per_page=2"))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON).headers(rateLimitHeaders()));
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=1&per_page=2"))
+        .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=1&per_page=2"))
+        .andRespond(withStatus(HttpStatus.GATEWAY_TIMEOUT));
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=1&per_page=2"))
+        .andRespond(withSuccess(usersJson(3, 1), MediaType.APPLICATION_JSON).headers(rateLimitHeaders()));
+
+    List<MMUser> users = client.getUsers();
+    assertThat(users).extracting(MMUser::getUsername).containsExactly("user1", "user2", "user3");
+    server.verify();
+  }
+
+  @Test
+  void testGetUsersRecordsMetrics() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setRetryInitialBackoffMillis(1);
+    settings.setMeterRegistry(new SimpleMeterRegistry());
+    MattermostClient client = createClient(settings);
+    MockRestServiceServer server = createServer(client, false);
+    String users = usersJson(1, 1);
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=0&per_page=2"))
+        .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users?page=0&per_page=2"))
+        .andRespond(withSuccess(users, MediaType.APPLICATION_JSON).headers(rateLimitHeaders()));
+
+    assertThat(client.getUsers()).hasSize(1);
+    server.verify();
+    MeterRegistry registry = settings.getMeterRegistry();
+    assertThat(registry.get("idm.client.requests").tags("client", "mattermost", "upstream", "mattermost", "method",
+        "GET", "endpoint", "/users", "status", "503").timer().count()).isEqualTo(1);
+    assertThat(registry.get("idm.client.requests").tags("endpoint", "/users", "status", "200").timer().count())
+        .isEqualTo(1);
+    assertThat(registry.get("idm.client.retries").tags("endpoint", "/users").counter().count()).isEqualTo(1);
+    assertThat(registry.get("idm.client.response.size").tags("endpoint", "/users").summary().totalAmount())
+        .isEqualTo(users.length());
+  }
+
+  @Test
+  void testWriteAbortedByWriteTimeout() throws IOException {
+    try (StubServer server = StubServer.start()) {
+      StubApis.mattermost(server, 3, 1, 3);
+      server.latency(300);
+      RestClientSettings settings = new RestClientSettings();
+      settings.setWriteTimeoutMillis(100);
+      settings.setMeterRegistry(new SimpleMeterRegistry());
+      MattermostClient client = new MattermostClientBuilder(server.getUrl()).perPage(10)
+          .personalAccessToken("token").settings(settings).build();
+
+      assertThat(client.getUsers()).hasSize(3);
+      assertThat(client.createTeam("team2", "Team 2")).isNull();
+      assertThat(settings.getMeterRegistry().get("idm.client.requests").tags("method", "POST", "endpoint", "/teams",
+          "status", "TIMEOUT").timer().count()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void testGetUsersFailsOnPageDeadline() throws IOException {
+    try (StubServer server = StubServer.start()) {
+      StubApis.mattermost(server, 30, 1, 3);
+      server.latency(300);
+      RestClientSettings settings = new RestClientSettings();
+      settings.setPagingConcurrency(2);
+      settings.setPagingPageDeadlineMillis(100);
+      settings.setMeterRegistry(new SimpleMeterRegistry());
+      MattermostClient client = new MattermostClientBuilder(server.getUrl()).perPage(10)
+          .personalAccessToken("token").settings(settings).build();
+
+      assertThat(client.getUsers()).isNull();
+      assertThat(settings.getMeterRegistry().get("idm.client.page.timeouts").counter().count()).isPositive();
+    }
+  }
+
+  @Test
+  void testPageMissingDeadlineFreesPagingThread() throws IOException {
+    for (RestClientSettings.Transport transport : RestClientSettings.Transport.values()) {
+      try (StubServer server = StubServer.start()) {
+        StubApis.mattermost(server, 30, 1, 3);
+        server.latency(10000);
+        RestClientSettings settings = new RestClientSettings();
+        settings.setTransport(transport);
+        settings.setPagingConcurrency(2);
+        settings.setPagingPageDeadlineMillis(200);
+        MattermostClient client = new MattermostClientBuilder(server.getUrl()).perPage(10)
+            .personalAccessToken("token").settings(settings).build();
+
+        long start = System.currentTimeMillis();
+        assertThat(client.getUsers()).isNull();
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+
+        // The aborted pages don't block the paging threads until the socket timeout
+        server.latency(0);
+        start = System.currentTimeMillis();
+        assertThat(client.getUsers()).hasSize(30);
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+      }
+    }
+  }
+
+  @Test
+  void testCreateUserNotRetriedOnBadGateway() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setRetryInitialBackoffMillis(1);
+    MattermostClient client = createClient(settings);
+    MockRestServiceServer server = createServer(client, false);
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/users")).andExpect(method(HttpMethod.POST))
+        .andRespond(withStatus(HttpStatus.BAD_GATEWAY));
+
+    assertThat(client.createUser("user1", "first", "last", "user1@example.com", "gitlab", "user1")).isNull();
+    server.verify();
+  }
+
+  @Test
+  void testCreateTeamWithEscapedBody() {
+    MattermostClient client = createClient(new RestClientSettings());
+    MockRestServiceServer server = createServer(client, false);
+    server.expect(once(), requestTo(SERVER_URL + "/api/v4/teams")).andExpect(method(HttpMethod.POST))
+        .andExpect(content().string("{\"name\":\"team1\",\"display_name\":\"Team \\\"1\\\"\",\"type\":\"I\"}"))
+        .andRespond(withSuccess("{\"id\": \"t1\", \"name\": \"team1\"}", MediaType.APPLICATION_JSON));
+
+    assertThat(client.createTeam("team1", "Team \"1\"")).extracting(MMTeam::getId).isEqualTo("t1");
+    server.verify();
+  }
+
+  private MattermostClient createClient(RestClientSettings settings) {
+    return new MattermostClientBuilder(SERVER_URL).perPage(2).personalAccessToken("token").settings(settings)
+        .build();
+  }
+
+  private MockRestServiceServer createServer(MattermostClient client, boolean ignoreExpectOrder) {
+    return MockRestServiceServer.bindTo((RestTemplate) ReflectionTestUtils.getField(client, "restTemplate"))
+        .ignoreExpectOrder(ignoreExpectOrder).build();
+  }
+
+  private HttpHeaders rateLimitHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.add("X-Ratelimit-Remaining", "100");
+    headers.add("X-Ratelimit-Reset", "1");
+    return headers;
+  }
+
+  private String usersJson(int first, int count) {
+    return "[" + IntStream.range(first, first + count)
+        .mapToObj(i -> "{\"id\": \"" + i + "\", \"username\": \"user" + i + "\", \"delete_at\": \"0\"}")
+        .collect(Collectors.joining(",")) + "]";
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.mattermost;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.vaulttec.idm.sync.app.mattermost.model.MMTeamMember;
+import org.vaulttec.idm.sync.app.mattermost.model.MMUser;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class MattermostJsonReadersTest {
+
+  private static final String USERS_JSON = "[{\"id\": \"u1\", \"create_at\": 1511983200000, \"delete_at\": 0, "
+      + "\"username\": \"john\", \"auth_data\": \"42\", \"auth_service\": \"gitlab\", \"email\": \"john@acme.com\", "
+      + "\"nickname\": \"\", \"first_name\": \"John\", \"last_name\": \"Doe\", \"roles\": \"system_admin system_user\", "
+      + "\"notify_props\": {\"desktop\": \"all\", \"channel\": \"true\"}, \"timezone\": {\"automaticTimezone\": \"\"}}, "
+      + "{\"id\": \"u2\", \"delete_at\": 1611983200000, \"username\": \"bot\", \"roles\": null, \"is_bot\": true}]";
+  private static final String TEAM_MEMBERS_JSON = "[{\"team_id\": \"t1\", \"user_id\": \"u1\", "
+      + "\"roles\": \"team_user team_admin\", \"delete_at\": 0, \"scheme_guest\": false}]";
+
+  @Test
+  void testReadUsersLikeDataBinding() throws Exception {
+    List<MMUser> expectedUsers = new ObjectMapper().readValue(USERS_JSON, new TypeReference<List<MMUser>>() {
+    });
+    List<MMUser> users = MattermostJsonReaders.createConverter().readList(
+        new ByteArrayInputStream(USERS_JSON.getBytes(StandardCharsets.UTF_8)), MattermostJsonReaders::readUser);
+
+    assertThat(users).usingRecursiveFieldByFieldElementComparatorIgnoringFields("teams")
+        .containsExactlyElementsOf(expectedUsers);
+    assertThat(users.get(0).isSystemAdmin()).isTrue();
+    assertThat(users.get(0).isActive()).isTrue();
+    assertThat(users.get(1).isActive()).isFalse();
+    assertThat(users.get(1).isBot()).isTrue();
+  }
+
+  @Test
+  void testReadTeamMembers() throws Exception {
+    List<MMTeamMember> members = MattermostJsonReaders.createConverter().readList(
+        new ByteArrayInputStream(TEAM_MEMBERS_JSON.getBytes(StandardCharsets.UTF_8)),
+        MattermostJsonReaders::readTeamMember);
+
+    assertThat(members).hasSize(1);
+    assertThat(members.get(0).getTeamId()).isEqualTo("t1");
+    assertThat(members.get(0).getUserId()).isEqualTo("u1");
+    assertThat(members.get(0).getRoles()).isEqualTo("team_user team_admin");
+  }
+}
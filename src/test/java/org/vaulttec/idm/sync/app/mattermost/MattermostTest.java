@@ -31,6 +31,7 @@ import org.vaulttec.idm.sync.idp.model.IdpGroup;
 import org.vaulttec.idm.sync.idp.model.IdpUser;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -60,6 +61,7 @@ class MattermostTest {
     MMTeam team = new MMTeam();
     team.setName("team1");
 
+    mockUsers(new ArrayList<>());
     when(client.createTeam("team1", "team1")).thenReturn(team);
 
     List<IdpGroup> idpGroups = new ArrayList<>();
@@ -74,7 +76,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createUser(null, null, null, null, null, null);
     verify(client).createTeam("team1", "team1");
@@ -99,7 +101,7 @@ class MattermostTest {
     MMTeam team = new MMTeam();
     team.setName("team1");
 
-    when(client.getUsers()).thenReturn(new ArrayList<>());
+    mockUsers(new ArrayList<>());
     when(client.createUser("user1", "John", "Doo 1", "user1@acme.com", null, null /*AUTH_SERVICE, AUTH_DATA*/)).thenReturn(mmUser);
     when(client.getTeamsWithMembers()).thenReturn(new ArrayList<>());
     when(client.createTeam("team1", "team1")).thenReturn(team);
@@ -124,7 +126,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client).createTeam("team1", "team1");
     verify(client).createUser("user1", "John", "Doo 1", "user1@acme.com", null, null /*AUTH_SERVICE, AUTH_DATA*/);
@@ -165,7 +167,7 @@ class MattermostTest {
     team.addMember(mmUser, MMRole.TEAM_USER);
     teams.add(team);
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
     when(client.createUser("user2", "User", "2", "user2@acme.com", null, null /*AUTH_SERVICE, AUTH_DATA*/)).thenReturn(mmUser2);
     when(client.addMemberToTeam(team, mmUser2)).thenReturn(true);
@@ -200,7 +202,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createTeam("team1", "team1");
     verify(client, never()).createUser("user1", "User", "1", "user1@acme.com", AUTH_SERVICE, AUTH_DATA);
@@ -232,7 +234,7 @@ class MattermostTest {
     teams.add(team);
     team.addMember(mmUser, MMRole.TEAM_USER);
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
     when(client.removeMemberFromTeam(team, mmUser)).thenReturn(true);
     when(client.updateUserActiveStatus(mmUser, false)).thenReturn(true);
@@ -245,7 +247,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createTeam("team1", "team1");
     verify(client, never()).createUser("user1", "User", "1", "user1@acme.com", AUTH_SERVICE, AUTH_DATA);
@@ -274,7 +276,7 @@ class MattermostTest {
     teams.add(team);
     team.addMember(mmUser, MMRole.TEAM_USER);
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
     when(client.removeMemberFromTeam(team, mmUser)).thenReturn(true);
     when(client.updateUserActiveStatus(mmUser, false)).thenReturn(true);
@@ -283,7 +285,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createTeam("team1", "team1");
     verify(client, never()).createUser("user1", "User", "1", "user1@acme.com", AUTH_SERVICE, AUTH_DATA);
@@ -319,7 +321,7 @@ class MattermostTest {
     team.addMember(mmUser2, MMRole.TEAM_USER);
     teams.add(team);
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
     when(client.addMemberToTeam(team, mmUser)).thenReturn(true);
     when(client.updateTeamMemberRoles(team, mmUser, Arrays.asList(MMRole.TEAM_ADMIN))).thenReturn(true);
@@ -344,7 +346,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createTeam("team1", "team1");
     verify(client, never()).createUser("user1", "User", "1", "user1@acme.com", AUTH_SERVICE, AUTH_DATA);
@@ -372,7 +374,7 @@ class MattermostTest {
     team.setName("team1");
     teams.add(team);
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
     when(client.addMemberToTeam(team, mmUser)).thenReturn(true);
     when(client.updateTeamMemberRoles(team, mmUser, Arrays.asList(MMRole.TEAM_ADMIN))).thenReturn(true);
@@ -396,7 +398,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createTeam("team1", "team1");
     verify(client, never()).createUser("user1", "User", "1", "user1@acme.com", AUTH_SERVICE, AUTH_DATA);
@@ -435,7 +437,7 @@ class MattermostTest {
     team.addMember(mmUser2, MMRole.TEAM_ADMIN);
     teams.add(team);
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
     when(client.removeMemberFromTeam(team, mmUser2)).thenReturn(true);
     when(client.updateUserActiveStatus(mmUser2, false)).thenReturn(true);
@@ -459,7 +461,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createTeam("team1", "team1");
     verify(client, never()).createUser("user1", "User", "1", "user1@acme.com", AUTH_SERVICE, AUTH_DATA);
@@ -492,7 +494,7 @@ class MattermostTest {
     team.addMember(mmUser, MMRole.TEAM_USER);
     teams.add(team);
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
     when(client.updateTeamMemberRoles(team, mmUser, Arrays.asList(MMRole.TEAM_ADMIN))).thenReturn(true);
 
@@ -514,7 +516,7 @@ class MattermostTest {
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client).getTeamsWithMembers();
     verify(client, never()).createTeam("team1", "team1");
     verify(client, never()).createUser("user1", "User", "1", "user1@acme.com", AUTH_SERVICE, AUTH_DATA);
@@ -543,14 +545,14 @@ class MattermostTest {
 
     List<MMTeam> teams = new ArrayList<>();
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
 
     List<IdpGroup> idpGroups = new ArrayList<>();
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client, never()).updateUserActiveStatus(mmUser, false);
 
     verify(eventRepository, never()).add(any(AuditEvent.class));
@@ -571,16 +573,23 @@ class MattermostTest {
 
     List<MMTeam> teams = new ArrayList<>();
 
-    when(client.getUsers()).thenReturn(mmUsers);
+    mockUsers(mmUsers);
     when(client.getTeamsWithMembers()).thenReturn(teams);
 
     List<IdpGroup> idpGroups = new ArrayList<>();
 
     app.sync(idpGroups);
 
-    verify(client).getUsers();
+    verify(client).getUsers(any());
     verify(client, never()).updateUserActiveStatus(mmUser, false);
 
     verify(eventRepository, never()).add(any(AuditEvent.class));
   }
+
+  private void mockUsers(List<MMUser> users) {
+    doAnswer(invocation -> {
+      invocation.<Consumer<List<MMUser>>>getArgument(0).accept(users);
+      return true;
+    }).when(client).getUsers(any());
+  }
 }
@@ -0,0 +1,104 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.app.mattermost;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vaulttec.idm.sync.app.RestClientSettings;
+import org.vaulttec.idm.sync.app.RestClientSettings.AsyncMode;
+import org.vaulttec.idm.sync.app.mattermost.model.MMTeam;
+import org.vaulttec.idm.sync.stub.StubApis;
+import org.vaulttec.idm.sync.stub.StubServer;
+
+/**
+ * Compares the fan-out of {@link MattermostClient#getTeamsWithMembers()} with
+ * platform and virtual threads against a {@link StubServer} which answers each
+ * request after a fixed latency. Run via {@link #main(String[])} from the test
+ * classpath.
+ * <p>
+ * On Java 17 the virtual mode falls back to platform threads - so both modes
+ * are expected to perform the same.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TeamMembersFanOutBenchmark {
+
+  private static final int USERS = 1000;
+  private static final int TEAMS = 200;
+  private static final int MEMBERS_PER_TEAM = 20;
+  private static final int LATENCY_MILLIS = 5;
+
+  @Param({ "PLATFORM", "VIRTUAL" })
+  private AsyncMode mode;
+
+  @Param({ "4", "32" })
+  private int concurrency;
+
+  private StubServer server;
+  private MattermostClient client;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = StubServer.start();
+    StubApis.mattermost(server, USERS, TEAMS, MEMBERS_PER_TEAM);
+    server.latency(LATENCY_MILLIS);
+
+    RestClientSettings settings = new RestClientSettings();
+    settings.setAsyncMode(mode);
+    settings.setAsyncConcurrency(concurrency);
+    settings.setBulkheadMaxConcurrentCalls(0);
+    settings.setCacheMaxEntries(0);
+    client = new MattermostClientBuilder(server.getUrl()).perPage(USERS).personalAccessToken("token")
+        .settings(settings).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public List<MMTeam> getTeamsWithMembers() {
+    return client.getTeamsWithMembers();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(TeamMembersFanOutBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.idp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import org.vaulttec.idm.sync.app.RestClientSettings;
+import org.vaulttec.idm.sync.idp.keycloak.KeycloakClient;
+import org.vaulttec.idm.sync.idp.keycloak.KeycloakClientBuilder;
+import org.vaulttec.idm.sync.idp.model.IdpGroup;
+import org.vaulttec.idm.sync.idp.model.IdpUser;
+
+class KeycloakClientTest {
+
+  private static final String SERVER_URL = "http://keycloak";
+  private static final String ADMIN_URL = SERVER_URL + "/auth/admin/realms/test";
+
+  private KeycloakClient client;
+  private MockRestServiceServer server;
+
+  @BeforeEach
+  void setUp() {
+    RestClientSettings settings = new RestClientSettings();
+    settings.setPagingConcurrency(2);
+    client = createClient(settings);
+    server = createServer(client);
+  }
+
+  @Test
+  void testGetUsersWithCountedWindows() {
+    server.expect(requestTo(ADMIN_URL + "/users/count")).andRespond(withSuccess("5", MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/users?first=0&max=2"))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/users?first=2&max=2"))
+        .andRespond(withSuccess(usersJson(3, 2), MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/users?first=4&max=2"))
+        .andRespond(withSuccess(usersJson(5, 1), MediaType.APPLICATION_JSON));
+
+    List<IdpUser> users = client.getUsers(null);
+    assertThat(users).extracting(IdpUser::getUsername).containsExactly("user1", "user2", "user3", "user4", "user5");
+    server.verify();
+  }
+
+  @Test
+  void testGetGroupsCountsTopLevelGroups() {
+    server.expect(requestTo(ADMIN_URL + "/groups/count?top=true"))
+        .andRespond(withSuccess("{\"count\": 3}", MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/groups?first=0&max=2"))
+        .andRespond(withSuccess(groupsJson(1, 2), MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/groups?first=2&max=2"))
+        .andRespond(withSuccess(groupsJson(3, 1), MediaType.APPLICATION_JSON));
+
+    List<IdpGroup> groups = client.getGroups(null);
+    assertThat(groups).extracting(IdpGroup::getName).containsExactly("group1", "group2", "group3");
+    server.verify();
+  }
+
+  @Test
+  void testGetGroupMembersWithSpeculativeWindows() {
+    IdpGroup group = new IdpGroup();
+    group.setId("g1");
+    server.expect(requestTo(ADMIN_URL + "/groups/g1/members?first=0&max=2"))
+        .andRespond(withSuccess(usersJson(1, 2), MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/groups/g1/members?first=2&max=2"))
+        .andRespond(withSuccess(usersJson(3, 2), MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/groups/g1/members?first=4&max=2"))
+        .andRespond(withSuccess(usersJson(5, 1), MediaType.APPLICATION_JSON));
+    server.expect(requestTo(ADMIN_URL + "/groups/g1/members?first=6&max=2"))
+        .andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+
+    List<IdpUser> members = client.getGroupMembers(group);
+    assertThat(members).extracting(IdpUser::getUsername).containsExactly("user1", "user2", "user3", "user4",
+        "user5");
+    server.verify();
+  }
+
+  private KeycloakClient createClient(RestClientSettings settings) {
+    KeycloakClient client = new KeycloakClientBuilder(SERVER_URL).perPage(2).realm("test").clientId("id")
+        .clientSecret("secret").settings(settings).build();
+    ReflectionTestUtils.setField(client, "authenticationEntity", new HttpEntity<>(""));
+    return client;
+  }
+
+  private MockRestServiceServer createServer(KeycloakClient client) {
+    return MockRestServiceServer.bindTo((RestTemplate) ReflectionTestUtils.getField(client, "restTemplate"))
+        .ignoreExpectOrder(true).build();
+  }
+
+  private String usersJson(int first, int count) {
+    return "[" + IntStream.range(first, first + count)
+        .mapToObj(i -> "{\"id\": \"" + i + "\", \"username\": \"user" + i + "\"}").collect(Collectors.joining(","))
+        + "]";
+  }
+
+  private String groupsJson(int first, int count) {
+    return "[" + IntStream.range(first, first + count).mapToObj(i -> "{\"id\": \"g" + i + "\", \"name\": \"group" + i
+        + "\", \"path\": \"/group" + i + "\"}").collect(Collectors.joining(",")) + "]";
+  }
+}
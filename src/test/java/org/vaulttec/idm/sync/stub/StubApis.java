@@ -0,0 +1,263 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.stub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.vaulttec.idm.sync.stub.StubServer.StubRequest;
+import org.vaulttec.idm.sync.stub.StubServer.StubResponse;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Registers synthetic data for all endpoints used by the Keycloak, GitLab and
+ * Mattermost clients with a {@link StubServer}.
+ * <p>
+ * There are <code>users</code> users numbered from 1. Group (or team) number
+ * <code>g</code> (numbered from 1) has <code>membersPerGroup</code> members
+ * starting with user <code>(g - 1) * membersPerGroup / 2 + 1</code> - so
+ * neighbouring groups share half of their members. Write calls are accepted
+ * without changing the data.
+ */
+public final class StubApis {
+
+  /**
+   * Number of requests per rate limit window reported in the rate limit
+   * headers. The remaining requests are always reported as the full limit.
+   */
+  public static final int RATE_LIMIT = 2000;
+
+  private StubApis() {
+  }
+
+  /**
+   * Returns the numbers of the members of the given group.
+   */
+  public static List<Integer> getMembers(int group, int users, int membersPerGroup) {
+    int first = (group - 1) * membersPerGroup / 2;
+    return IntStream.range(0, Math.min(users, membersPerGroup)).mapToObj(i -> (first + i) % users + 1)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * GitLab API (<code>/api/v4</code>) with offset and keyset pagination and
+   * GitLab's rate limit headers. Each group has two projects (in the full or
+   * the simple representation) with the group's members as project users.
+   */
+  public static void gitLab(StubServer server, int users, int groups, int membersPerGroup) {
+    String api = "/api/v4";
+    List<String> userList = elements(users, i -> "{\"id\": " + i + ", \"username\": \"user" + i
+        + "\", \"name\": \"User " + i + "\", \"email\": \"user" + i + "@example.com\", \"state\": \"active\", "
+        + "\"identities\": [{\"provider\": \"ldapmain\", \"extern_uid\": \"uid=user" + i + "\"}], "
+        + "\"is_admin\": false, \"bot\": false}");
+    List<String> groupList = elements(groups, g -> "{\"id\": " + g + ", \"path\": \"group" + g
+        + "\", \"name\": \"Group " + g + "\", \"description\": \"\"}");
+    server.route("GET", api + "/users", request -> gitLabRateLimit(StubPaging.gitLab(request,
+        filter(userList, request.getQueryParam("search")))));
+    server.route("GET", api + "/groups", request -> gitLabRateLimit(StubPaging.gitLab(request,
+        filter(groupList, request.getQueryParam("search")))));
+    server.route("GET", api + "/groups/{id}/members", request -> gitLabRateLimit(StubPaging.gitLab(request,
+        gitLabMembers(request.getPathVariable("id"), users, groups, membersPerGroup))));
+    server.route("GET", api + "/groups/{id}/projects", request -> {
+      int group = Integer.parseInt(request.getPathVariable("id"));
+      boolean simple = "true".equals(request.getQueryParam("simple"));
+      return gitLabRateLimit(StubPaging.gitLab(request, elements(2, p -> gitLabProject(group, p, simple))));
+    });
+    server.route("GET", api + "/projects/{id}/users", request -> gitLabRateLimit(StubPaging.gitLab(request,
+        gitLabMembers(Integer.toString(Integer.parseInt(request.getPathVariable("id")) / 100), users, groups,
+            membersPerGroup))));
+    server.route("POST", api + "/groups/{id}/members", request -> gitLabRateLimit(StubResponse.status(201)
+        .json("{\"id\": " + request.getQueryParam("user_id") + "}")));
+    server.route("DELETE", api + "/groups/{id}/members/{userId}",
+        request -> gitLabRateLimit(StubResponse.status(204)));
+    server.route("POST", api + "/groups", request -> gitLabRateLimit(StubResponse.status(201)
+        .json(object("id", Integer.toString(groups + 1)).put("path", request.getQueryParam("path"))
+            .put("name", request.getQueryParam("name")).toString())));
+    server.route("POST", api + "/users", request -> gitLabRateLimit(StubResponse.status(201)
+        .json(object("id", Integer.toString(users + 1)).put("username", request.getQueryParam("username"))
+            .put("name", request.getQueryParam("name")).put("email", request.getQueryParam("email"))
+            .put("state", "active").toString())));
+    server.route("POST", api + "/users/{id}/block", request -> gitLabRateLimit(StubResponse.status(201)
+        .json("true")));
+    server.route("POST", api + "/users/{id}/unblock", request -> gitLabRateLimit(StubResponse.status(201)
+        .json("true")));
+    server.route("PUT", api + "/users/{id}", request -> gitLabRateLimit(StubResponse.ok(
+        object("id", request.getPathVariable("id")).toString())));
+    server.route("DELETE", api + "/users/{id}", request -> gitLabRateLimit(StubResponse.status(204)));
+  }
+
+  /**
+   * Mattermost API (<code>/api/v4</code>) with zero-based pagination and
+   * Mattermost's rate limit headers. Each team has two channels.
+   */
+  public static void mattermost(StubServer server, int users, int teams, int membersPerTeam) {
+    String api = "/api/v4";
+    List<String> userList = elements(users, i -> "{\"id\": \"u" + i + "\", \"username\": \"user" + i
+        + "\", \"email\": \"user" + i + "@example.com\", \"first_name\": \"User\", \"last_name\": \"" + i
+        + "\", \"auth_service\": \"gitlab\", \"auth_data\": \"" + i + "\", \"roles\": \"system_user\", "
+        + "\"delete_at\": 0}");
+    List<String> teamList = elements(teams, t -> "{\"id\": \"t" + t + "\", \"name\": \"team" + t
+        + "\", \"display_name\": \"Team " + t + "\", \"type\": \"I\"}");
+    server.route("GET", api + "/users", request -> mattermostRateLimit(StubPaging.mattermost(request, userList)));
+    server.route("GET", api + "/teams", request -> mattermostRateLimit(StubPaging.mattermost(request, teamList)));
+    server.route("GET", api + "/teams/{id}/members", request -> {
+      int team = Integer.parseInt(request.getPathVariable("id").substring(1));
+      List<String> members = getMembers(team, users, membersPerTeam).stream().map(i -> "{\"team_id\": \"t" + team
+          + "\", \"user_id\": \"u" + i + "\", \"roles\": \"team_user\"}").collect(Collectors.toList());
+      return mattermostRateLimit(StubPaging.mattermost(request, team <= teams ? members : List.of()));
+    });
+    server.route("GET", api + "/teams/{id}/channels", request -> mattermostRateLimit(StubPaging.mattermost(request,
+        elements(2, c -> "{\"id\": \"" + request.getPathVariable("id") + "c" + c + "\", \"name\": \"channel" + c
+            + "\", \"last_post_at\": 0, \"total_msg_count\": 0}"))));
+    server.route("POST", api + "/teams/{id}/members", request -> mattermostRateLimit(StubResponse.status(201)
+        .json(request.getBody())));
+    server.route("PUT", api + "/teams/{id}/members/{userId}/roles",
+        request -> mattermostRateLimit(StubResponse.ok("{\"status\": \"OK\"}")));
+    server.route("DELETE", api + "/teams/{id}/members/{userId}",
+        request -> mattermostRateLimit(StubResponse.ok("{\"status\": \"OK\"}")));
+    server.route("POST", api + "/teams", request -> mattermostRateLimit(StubResponse.status(201)
+        .json(withId(request, "t" + (teams + 1)))));
+    server.route("POST", api + "/users", request -> mattermostRateLimit(StubResponse.status(201)
+        .json(withId(request, "u" + (users + 1)))));
+    server.route("PUT", api + "/users/{id}/auth", request -> mattermostRateLimit(StubResponse.ok(
+        object("id", request.getPathVariable("id")).toString())));
+    server.route("PUT", api + "/users/{id}/active",
+        request -> mattermostRateLimit(StubResponse.ok("{\"status\": \"OK\"}")));
+  }
+
+  /**
+   * Keycloak's admin API (<code>/auth/admin/realms/{realm}</code>) with offset
+   * windows and count endpoints. The group names are
+   * created from the given format with the group number (e.g.
+   * <code>"IDM_GIT_group%d_Developer"</code>).
+   */
+  public static void keycloak(StubServer server, String realm, int users, int groups, int membersPerGroup,
+      String groupNameFormat) {
+    String api = "/auth/admin/realms/" + realm;
+    List<String> groupList = elements(groups, g -> "{\"id\": \"g" + g + "\", \"name\": \""
+        + String.format(Locale.ROOT, groupNameFormat, g) + "\", \"path\": \"/"
+        + String.format(Locale.ROOT, groupNameFormat, g) + "\", \"attributes\": {}}");
+    server.route("POST", "/auth/realms/" + realm + "/protocol/openid-connect/token", request -> StubResponse
+        .ok("{\"access_token\": \"token\", \"expires_in\": 300, \"token_type\": \"Bearer\"}"));
+
+    server.route("PUT", api + "/users/{id}", request -> StubResponse.status(204));
+    server.route("GET", api + "/users", request -> StubPaging.keycloak(request,
+        filter(keycloakUsers(IntStream.rangeClosed(1, users).boxed().collect(Collectors.toList())),
+            request.getQueryParam("search"))));
+    server.route("GET", api + "/users/count", request -> StubResponse.ok(Integer.toString(
+        filter(keycloakUsers(IntStream.rangeClosed(1, users).boxed().collect(Collectors.toList())),
+            request.getQueryParam("search")).size())));
+    server.route("GET", api + "/groups", request -> StubPaging.keycloak(request,
+        filter(groupList, request.getQueryParam("search"))));
+    server.route("GET", api + "/groups/count", request -> StubResponse.ok("{\"count\": "
+        + filter(groupList, request.getQueryParam("search")).size() + "}"));
+    server.route("GET", api + "/groups/{id}/members", request -> {
+      int group = Integer.parseInt(request.getPathVariable("id").substring(1));
+      return StubPaging.keycloak(request,
+          group <= groups ? keycloakUsers(getMembers(group, users, membersPerGroup)) : List.of());
+    });
+    server.route("PUT", api + "/groups/{id}", request -> StubResponse.status(204));
+  }
+
+  private static List<String> keycloakUsers(List<Integer> users) {
+    return users.stream().map(StubApis::keycloakUser).collect(Collectors.toList());
+  }
+
+  private static String keycloakUser(int i) {
+    return "{\"id\": \"k" + i + "\", \"username\": \"user" + i + "\", \"firstName\": \"User\", "
+        + "\"lastName\": \"" + i + "\", \"email\": \"user" + i + "@example.com\", \"enabled\": true, "
+        + "\"attributes\": {\"LDAP_ID\": [\"uid=user" + i + "\"], \"GITLAB_USER_ID\": [\"" + i
+        + "\"], \"MATTERMOST_USER_ID\": [\"u" + i + "\"]}, \"requiredActions\": [], \"federationLink\": \"ldap\", "
+        + "\"access\": {\"manageGroupMembership\": true, \"view\": true, \"mapRoles\": true, "
+        + "\"impersonate\": false, \"manage\": true}}";
+  }
+
+  private static String gitLabProject(int group, int p, boolean simple) {
+    String project = "{\"id\": " + (group * 100 + p) + ", \"path\": \"project" + p + "\", \"name\": \"Project " + p
+        + "\", \"description\": \"\", \"path_with_namespace\": \"group" + group + "/project" + p + "\", "
+        + "\"default_branch\": \"main\", \"web_url\": \"https://gitlab.example.com/group" + group + "/project" + p
+        + "\"";
+    if (!simple) {
+      project += ", \"visibility\": \"private\", \"issues_enabled\": true, \"merge_requests_enabled\": true, "
+          + "\"wiki_enabled\": true, \"jobs_enabled\": true, \"snippets_enabled\": true, \"archived\": false, "
+          + "\"namespace\": {\"id\": " + group + ", \"name\": \"Group " + group + "\", \"path\": \"group" + group
+          + "\", \"kind\": \"group\", \"full_path\": \"group" + group + "\"}, \"open_issues_count\": 0, "
+          + "\"permissions\": {\"project_access\": null, \"group_access\": {\"access_level\": 50, "
+          + "\"notification_level\": 3}}, \"container_registry_enabled\": true, \"shared_runners_enabled\": true, "
+          + "\"only_allow_merge_if_pipeline_succeeds\": false, \"request_access_enabled\": false, "
+          + "\"merge_method\": \"merge\", \"statistics\": {\"commit_count\": 37, \"storage_size\": 1038090, "
+          + "\"repository_size\": 1038090, \"lfs_objects_size\": 0, \"job_artifacts_size\": 0}";
+    }
+    return project + "}";
+  }
+
+  private static List<String> gitLabMembers(String groupId, int users, int groups, int membersPerGroup) {
+    int group = Integer.parseInt(groupId);
+    if (group < 1 || group > groups) {
+      return List.of();
+    }
+    return getMembers(group, users, membersPerGroup).stream().map(i -> "{\"id\": " + i + ", \"username\": \"user"
+        + i + "\", \"name\": \"User " + i + "\", \"state\": \"active\", \"access_level\": 30}")
+        .collect(Collectors.toList());
+  }
+
+  private static List<String> elements(int count, IntFunction<String> element) {
+    List<String> elements = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++) {
+      elements.add(element.apply(i));
+    }
+    return elements;
+  }
+
+  /**
+   * Keeps the elements containing the given search text. SQL wildcards and
+   * escapes (as used in group searches) are ignored.
+   */
+  private static List<String> filter(List<String> elements, String search) {
+    if (search == null || search.isEmpty()) {
+      return elements;
+    }
+    String text = search.replace("%", "").replace("\\", "");
+    return elements.stream().filter(element -> element.contains(text)).collect(Collectors.toList());
+  }
+
+  private static ObjectNode object(String name, String value) {
+    return JsonNodeFactory.instance.objectNode().put(name, value);
+  }
+
+  private static String withId(StubRequest request, String id) {
+    return "{\"id\": \"" + id + "\", " + request.getBody().trim().substring(1);
+  }
+
+  private static StubResponse gitLabRateLimit(StubResponse response) {
+    return response.header("RateLimit-Limit", Integer.toString(RATE_LIMIT))
+        .header("RateLimit-Remaining", Integer.toString(RATE_LIMIT))
+        .header("RateLimit-Reset", Long.toString(System.currentTimeMillis() / 1000 + 60));
+  }
+
+  private static StubResponse mattermostRateLimit(StubResponse response) {
+    return response.header("X-Ratelimit-Limit", Integer.toString(RATE_LIMIT))
+        .header("X-Ratelimit-Remaining", Integer.toString(RATE_LIMIT)).header("X-Ratelimit-Reset", "1");
+  }
+}
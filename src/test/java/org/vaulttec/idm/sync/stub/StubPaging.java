@@ -0,0 +1,115 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.stub;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.web.util.UriUtils;
+import org.vaulttec.idm.sync.stub.StubServer.StubRequest;
+import org.vaulttec.idm.sync.stub.StubServer.StubResponse;
+
+/**
+ * Creates a page of a listing in the style of the different APIs.
+ */
+public final class StubPaging {
+
+  private StubPaging() {
+  }
+
+  /**
+   * GitLab's offset pagination (<code>page</code> starting with 1 and
+   * <code>per_page</code>) with <code>X-Total</code>,
+   * <code>X-Total-Pages</code> and <code>Link</code> headers, or keyset
+   * pagination (<code>pagination=keyset</code> with an opaque
+   * <code>cursor</code>) with a <code>Link</code> header only.
+   */
+  public static StubResponse gitLab(StubRequest request, List<String> elements) {
+    int perPage = request.getQueryParam("per_page", 20);
+    if ("keyset".equals(request.getQueryParam("pagination"))) {
+      int offset = request.getQueryParam("cursor", 0);
+      StubResponse response = StubResponse.ok(toJson(elements, offset, perPage));
+      if (offset + perPage < elements.size()) {
+        response.header("Link", "<" + link(request, Map.of("cursor", offset + perPage)) + ">; rel=\"next\"");
+      }
+      return response;
+    }
+    int page = request.getQueryParam("page", 1);
+    int totalPages = Math.max(1, (elements.size() + perPage - 1) / perPage);
+    StringBuilder links = new StringBuilder();
+    if (page < totalPages) {
+      links.append("<").append(link(request, Map.of("page", page + 1))).append(">; rel=\"next\", ");
+    }
+    links.append("<").append(link(request, Map.of("page", 1))).append(">; rel=\"first\", ");
+    links.append("<").append(link(request, Map.of("page", totalPages))).append(">; rel=\"last\"");
+    return StubResponse.ok(toJson(elements, (page - 1) * perPage, perPage)).header("Link", links.toString())
+        .header("X-Page", Integer.toString(page)).header("X-Per-Page", Integer.toString(perPage))
+        .header("X-Total", Integer.toString(elements.size())).header("X-Total-Pages", Integer.toString(totalPages));
+  }
+
+  /**
+   * Mattermost's pagination (<code>page</code> starting with 0 and
+   * <code>per_page</code>) without any paging headers.
+   */
+  public static StubResponse mattermost(StubRequest request, List<String> elements) {
+    int perPage = request.getQueryParam("per_page", 60);
+    int page = request.getQueryParam("page", 0);
+    return StubResponse.ok(toJson(elements, page * perPage, perPage));
+  }
+
+  /**
+   * Keycloak's offset windows (<code>first</code> and <code>max</code>)
+   * without any paging headers.
+   */
+  public static StubResponse keycloak(StubRequest request, List<String> elements) {
+    int max = request.getQueryParam("max", 100);
+    int first = request.getQueryParam("first", 0);
+    return StubResponse.ok(toJson(elements, first, max));
+  }
+
+  private static String toJson(List<String> elements, int offset, int count) {
+    if (offset >= elements.size()) {
+      return "[]";
+    }
+    return elements.subList(offset, Math.min(elements.size(), offset + count)).stream()
+        .collect(Collectors.joining(",", "[", "]"));
+  }
+
+  /**
+   * Returns the URL of the given request with the given query parameters
+   * replaced (or added).
+   */
+  private static String link(StubRequest request, Map<String, Object> params) {
+    StringBuilder link = new StringBuilder(request.getServerUrl()).append(request.getUri().getRawPath());
+    char separator = '?';
+    for (Map.Entry<String, String> param : request.getQueryParams().entrySet()) {
+      if (!params.containsKey(param.getKey())) {
+        link.append(separator).append(param.getKey()).append('=')
+            .append(UriUtils.encodeQueryParam(param.getValue(), StandardCharsets.UTF_8));
+        separator = '&';
+      }
+    }
+    for (Map.Entry<String, Object> param : params.entrySet()) {
+      link.append(separator).append(param.getKey()).append('=').append(param.getValue());
+      separator = '&';
+    }
+    return link.toString();
+  }
+}
@@ -0,0 +1,529 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.stub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server (JDK's <code>com.sun.net.httpserver</code>) which
+ * stands in for Keycloak, GitLab and Mattermost in tests and benchmarks.
+ * <p>
+ * Responses are either created by handlers registered for a method and a path
+ * template (e.g. <code>/api/v4/groups/{id}/members</code>) - see
+ * {@link StubApis} for synthetic data of all endpoints used by the clients -
+ * or replayed from a recording. A recording is created by proxying the
+ * requests to a real server via {@link #record(String)}.
+ * <p>
+ * Latency and errors can be injected for every request. Errors are chosen by
+ * a seeded random generator, so a test run is repeatable.
+ */
+public class StubServer implements Closeable {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String SERVER_URL_PLACEHOLDER = "${serverUrl}";
+  private static final Set<String> UNFORWARDED_HEADERS = Set.of("accept-encoding", "connection", "content-length",
+      "expect", "host", "upgrade");
+  private static final Set<String> UNRECORDED_HEADERS = Set.of("connection", "content-length", "date",
+      "transfer-encoding", "keep-alive");
+
+  static {
+
+    // Without TCP_NODELAY the separately written headers and body of a response
+    // are delayed by the client's delayed ACK (~40 ms per request)
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final List<Route> routes = new CopyOnWriteArrayList<>();
+  private final Map<String, Exchange> replays = new LinkedHashMap<>();
+  private final List<Exchange> recording = new CopyOnWriteArrayList<>();
+  private final LongAdder requests = new LongAdder();
+  private final AtomicInteger pendingFailures = new AtomicInteger();
+  private volatile int latencyMillis;
+  private volatile double errorRate;
+  private volatile int errorStatus = 503;
+  private volatile Random random = new Random(0);
+  private volatile String recordedServerUrl;
+  private volatile HttpClient recordingClient;
+
+  /**
+   * A request handler which creates the response.
+   */
+  @FunctionalInterface
+  public interface Handler {
+    StubResponse handle(StubRequest request) throws IOException;
+  }
+
+  private StubServer() throws IOException {
+    this.executor = Executors.newCachedThreadPool();
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /**
+   * Starts a stub server on a free port of the loopback interface.
+   */
+  public static StubServer start() throws IOException {
+    return new StubServer();
+  }
+
+  public String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Registers a handler for the given method and path template. Path
+   * variables (e.g. <code>{id}</code>) match a single path segment and are
+   * available via {@link StubRequest#getPathVariable(String)}. Later routes
+   * take precedence over earlier ones.
+   */
+  public StubServer route(String method, String pathTemplate, Handler handler) {
+    routes.add(0, new Route(method, pathTemplate, handler));
+    return this;
+  }
+
+  /**
+   * Delays every response by the given number of milliseconds.
+   */
+  public StubServer latency(int latencyMillis) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  /**
+   * Fails the given fraction of requests (0.0 - 1.0) with the given status.
+   */
+  public StubServer errorRate(double errorRate, int errorStatus) {
+    this.errorRate = errorRate;
+    this.errorStatus = errorStatus;
+    this.random = new Random(0);
+    return this;
+  }
+
+  /**
+   * Fails the next <code>count</code> requests with the given status.
+   */
+  public StubServer failNext(int count, int errorStatus) {
+    this.errorStatus = errorStatus;
+    pendingFailures.set(count);
+    return this;
+  }
+
+  public int getRequestCount() {
+    return requests.intValue();
+  }
+
+  public void resetRequestCount() {
+    requests.reset();
+  }
+
+  /**
+   * Forwards all requests without a route to the given server and records the
+   * exchanges. The recording is retrieved via {@link #getRecording()} or
+   * {@link #writeRecording(OutputStream)}.
+   */
+  public StubServer record(String serverUrl) {
+    this.recordingClient = HttpClient.newHttpClient();
+    this.recordedServerUrl = serverUrl;
+    return this;
+  }
+
+  public List<Exchange> getRecording() {
+    return Collections.unmodifiableList(recording);
+  }
+
+  public void writeRecording(OutputStream out) throws IOException {
+    MAPPER.writerWithDefaultPrettyPrinter().writeValue(out, recording);
+  }
+
+  /**
+   * Replays the exchanges of the given recording (written by
+   * {@link #writeRecording(OutputStream)}) for requests without a route. The
+   * exchanges are matched by method, path and query.
+   */
+  public StubServer replay(InputStream in) throws IOException {
+    List<Exchange> exchanges = MAPPER.readValue(in, new TypeReference<List<Exchange>>() {
+    });
+    synchronized (replays) {
+      for (Exchange exchange : exchanges) {
+        replays.put(exchange.getMethod() + " " + exchange.getUri(), exchange);
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange httpExchange) throws IOException {
+    requests.increment();
+    try {
+      if (latencyMillis > 0) {
+        Thread.sleep(latencyMillis);
+      }
+      StubResponse response;
+      if (isInjectedFailure()) {
+        response = StubResponse.status(errorStatus).json("{\"message\": \"Injected failure\"}");
+      } else {
+        response = createResponse(httpExchange);
+      }
+      send(httpExchange, response);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      httpExchange.close();
+    } catch (RuntimeException | IOException e) {
+      send(httpExchange, StubResponse.status(500).json("{\"message\": \"" + e.getClass().getSimpleName() + "\"}"));
+    }
+  }
+
+  private boolean isInjectedFailure() {
+    if (pendingFailures.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+      return true;
+    }
+    if (errorRate > 0) {
+      synchronized (this) {
+        return random.nextDouble() < errorRate;
+      }
+    }
+    return false;
+  }
+
+  private StubResponse createResponse(HttpExchange httpExchange) throws IOException, InterruptedException {
+    String method = httpExchange.getRequestMethod();
+    URI uri = httpExchange.getRequestURI();
+    byte[] body;
+    try (InputStream in = httpExchange.getRequestBody()) {
+      body = in.readAllBytes();
+    }
+    for (Route route : routes) {
+      Matcher matcher = route.match(method, uri.getRawPath());
+      if (matcher != null) {
+        Map<String, String> pathVariables = new LinkedHashMap<>();
+        for (int i = 0; i < route.variableNames.size(); i++) {
+          pathVariables.put(route.variableNames.get(i), decode(matcher.group(i + 1)));
+        }
+        return route.handler.handle(new StubRequest(getUrl(), method, uri, pathVariables,
+            httpExchange.getRequestHeaders(), body));
+      }
+    }
+    Exchange replay;
+    synchronized (replays) {
+      replay = replays.get(method + " " + uri.toString());
+    }
+    if (replay != null) {
+      return replay.toResponse(getUrl());
+    }
+    if (recordingClient != null) {
+      return forward(httpExchange, method, uri, body);
+    }
+    return StubResponse.status(404).json("{\"message\": \"404 Not found\"}");
+  }
+
+  private StubResponse forward(HttpExchange httpExchange, String method, URI uri, byte[] body)
+      throws IOException, InterruptedException {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(recordedServerUrl + uri.toString()))
+        .method(method, HttpRequest.BodyPublishers.ofByteArray(body));
+    httpExchange.getRequestHeaders().forEach((name, values) -> {
+      if (!UNFORWARDED_HEADERS.contains(name.toLowerCase())) {
+        values.forEach(value -> request.header(name, value));
+      }
+    });
+    HttpResponse<byte[]> response = recordingClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    Exchange exchange = new Exchange();
+    exchange.setMethod(method);
+    exchange.setUri(uri.toString());
+    exchange.setStatus(response.statusCode());
+    response.headers().map().forEach((name, values) -> {
+      if (!UNRECORDED_HEADERS.contains(name.toLowerCase()) && !name.startsWith(":")) {
+        exchange.getHeaders().put(name, values.get(0).replace(recordedServerUrl, SERVER_URL_PLACEHOLDER));
+      }
+    });
+    exchange.setBody(new String(response.body(), StandardCharsets.UTF_8));
+    recording.add(exchange);
+    return exchange.toResponse(getUrl());
+  }
+
+  private void send(HttpExchange httpExchange, StubResponse response) throws IOException {
+    response.getHeaders().forEach((name, value) -> httpExchange.getResponseHeaders().add(name, value));
+    byte[] body = response.getBody();
+    httpExchange.sendResponseHeaders(response.getStatus(), body.length == 0 ? -1 : body.length);
+    try (OutputStream out = httpExchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static String decode(String value) {
+    return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+  }
+
+  private static class Route {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{([^}]+)\\}");
+
+    private final String method;
+    private final Pattern pattern;
+    private final List<String> variableNames = new ArrayList<>();
+    private final Handler handler;
+
+    Route(String method, String pathTemplate, Handler handler) {
+      this.method = method;
+      this.handler = handler;
+      StringBuilder regex = new StringBuilder();
+      Matcher matcher = VARIABLE.matcher(pathTemplate);
+      int start = 0;
+      while (matcher.find()) {
+        regex.append(Pattern.quote(pathTemplate.substring(start, matcher.start()))).append("([^/]+)");
+        variableNames.add(matcher.group(1));
+        start = matcher.end();
+      }
+      regex.append(Pattern.quote(pathTemplate.substring(start)));
+      this.pattern = Pattern.compile(regex.toString());
+    }
+
+    Matcher match(String requestMethod, String path) {
+      if (method.equals(requestMethod)) {
+        Matcher matcher = pattern.matcher(path);
+        if (matcher.matches()) {
+          return matcher;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * A request received by the stub server.
+   */
+  public static class StubRequest {
+
+    private final String serverUrl;
+    private final String method;
+    private final URI uri;
+    private final Map<String, String> pathVariables;
+    private final Map<String, String> queryParams = new LinkedHashMap<>();
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    StubRequest(String serverUrl, String method, URI uri, Map<String, String> pathVariables,
+        Map<String, List<String>> headers, byte[] body) {
+      this.serverUrl = serverUrl;
+      this.method = method;
+      this.uri = uri;
+      this.pathVariables = pathVariables;
+      this.headers = headers;
+      this.body = body;
+      if (uri.getRawQuery() != null) {
+        for (String param : uri.getRawQuery().split("&")) {
+          int index = param.indexOf('=');
+          queryParams.putIfAbsent(decode(index < 0 ? param : param.substring(0, index)),
+              index < 0 ? "" : decode(param.substring(index + 1)));
+        }
+      }
+    }
+
+    public String getServerUrl() {
+      return serverUrl;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public URI getUri() {
+      return uri;
+    }
+
+    public String getPathVariable(String name) {
+      return pathVariables.get(name);
+    }
+
+    public String getQueryParam(String name) {
+      return queryParams.get(name);
+    }
+
+    public int getQueryParam(String name, int defaultValue) {
+      String value = queryParams.get(name);
+      return value != null && !value.isEmpty() ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public Map<String, String> getQueryParams() {
+      return queryParams;
+    }
+
+    /**
+     * Returns the first value of the given request header (case-insensitive).
+     */
+    public String getHeader(String name) {
+      for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+        if (entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty()) {
+          return entry.getValue().get(0);
+        }
+      }
+      return null;
+    }
+
+    public String getBody() {
+      return new String(body, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * A response created by a {@link Handler}.
+   */
+  public static class StubResponse {
+
+    private final int status;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private byte[] body = new byte[0];
+
+    private StubResponse(int status) {
+      this.status = status;
+    }
+
+    public static StubResponse status(int status) {
+      return new StubResponse(status);
+    }
+
+    public static StubResponse ok(String json) {
+      return status(200).json(json);
+    }
+
+    public StubResponse json(String json) {
+      headers.put("Content-Type", "application/json");
+      body = json.getBytes(StandardCharsets.UTF_8);
+      return this;
+    }
+
+    public StubResponse header(String name, String value) {
+      headers.put(name, value);
+      return this;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+  }
+
+  /**
+   * A recorded exchange (serialized as JSON).
+   */
+  public static class Exchange {
+
+    private String method;
+    private String uri;
+    private int status;
+    private Map<String, String> headers = new LinkedHashMap<>();
+    private String body;
+
+    public String getMethod() {
+      return method;
+    }
+
+    public void setMethod(String method) {
+      this.method = method;
+    }
+
+    public String getUri() {
+      return uri;
+    }
+
+    public void setUri(String uri) {
+      this.uri = uri;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public void setStatus(int status) {
+      this.status = status;
+    }
+
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public void setHeaders(Map<String, String> headers) {
+      this.headers = headers;
+    }
+
+    public String getBody() {
+      return body;
+    }
+
+    public void setBody(String body) {
+      this.body = body;
+    }
+
+    /**
+     * Creates the response with the links in the headers (e.g.
+     * <code>Link</code>) pointing to the given server.
+     */
+    StubResponse toResponse(String serverUrl) {
+      StubResponse response = StubResponse.status(status);
+      headers.forEach((name, value) -> response.header(name, value.replace(SERVER_URL_PLACEHOLDER, serverUrl)));
+      if (body != null) {
+        response.body = body.getBytes(StandardCharsets.UTF_8);
+      }
+      return response;
+    }
+  }
+}
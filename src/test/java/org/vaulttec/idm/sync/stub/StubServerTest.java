@@ -0,0 +1,137 @@
+/*
+ * IDM Syncronizer
+ * Copyright (c) 2018 Torsten Juergeleit
+ * mailto:torsten AT vaulttec DOT org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaulttec.idm.sync.stub;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.vaulttec.idm.sync.app.RestClientSettings;
+import org.vaulttec.idm.sync.app.gitlab.GitLabClient;
+import org.vaulttec.idm.sync.app.gitlab.GitLabClientBuilder;
+import org.vaulttec.idm.sync.app.gitlab.model.GLGroup;
+import org.vaulttec.idm.sync.app.gitlab.model.GLUser;
+import org.vaulttec.idm.sync.app.mattermost.MattermostClient;
+import org.vaulttec.idm.sync.app.mattermost.MattermostClientBuilder;
+import org.vaulttec.idm.sync.app.mattermost.model.MMTeam;
+import org.vaulttec.idm.sync.app.mattermost.model.MMUser;
+import org.vaulttec.idm.sync.idp.keycloak.KeycloakClient;
+import org.vaulttec.idm.sync.idp.keycloak.KeycloakClientBuilder;
+import org.vaulttec.idm.sync.idp.model.IdpGroup;
+import org.vaulttec.idm.sync.idp.model.IdpUser;
+
+class StubServerTest {
+
+  @Test
+  void testGitLab() throws IOException {
+    try (StubServer server = StubServer.start()) {
+      StubApis.gitLab(server, 25, 4, 10);
+      RestClientSettings settings = new RestClientSettings();
+      settings.setPagingConcurrency(3);
+      GitLabClient client = new GitLabClientBuilder(server.getUrl()).perPage(10).personalAccessToken("token")
+          .settings(settings).build();
+      assertThat(client.getUsers(null)).hasSize(25).extracting(GLUser::getUsername).startsWith("user1", "user2");
+
+      List<GLGroup> groups = client.getGroupsWithMembers(null, false);
+      assertThat(groups).extracting(GLGroup::getPath).containsExactly("group1", "group2", "group3", "group4");
+      assertThat(groups.get(3).getMembers()).extracting(GLUser::getUsername).contains("user16", "user25");
+
+      RestClientSettings keysetSettings = new RestClientSettings();
+      keysetSettings.setPagingKeyset(true);
+      GitLabClient keysetClient = new GitLabClientBuilder(server.getUrl()).perPage(10).personalAccessToken("token")
+          .settings(keysetSettings).build();
+      assertThat(keysetClient.getUsers(null)).hasSize(25);
+    }
+  }
+
+  @Test
+  void testMattermost() throws IOException {
+    try (StubServer server = StubServer.start()) {
+      StubApis.mattermost(server, 30, 3, 20);
+      MattermostClient client = new MattermostClientBuilder(server.getUrl()).perPage(10)
+          .personalAccessToken("token").settings(new RestClientSettings()).build();
+      List<MMTeam> teams = client.getTeamsWithMembers();
+      assertThat(teams).extracting(MMTeam::getName).containsExactly("team1", "team2", "team3");
+      assertThat(teams.get(2).getMembers()).hasSize(20).extracting(MMUser::getUsername).contains("user21", "user10");
+    }
+  }
+
+  @Test
+  void testKeycloak() throws IOException {
+    try (StubServer server = StubServer.start()) {
+      StubApis.keycloak(server, "test", 20, 5, 8, "IDM_GIT_group%d_Developer");
+      RestClientSettings settings = new RestClientSettings();
+      settings.setPagingConcurrency(2);
+      KeycloakClient client = new KeycloakClientBuilder(server.getUrl()).perPage(3).realm("test").clientId("id")
+          .clientSecret("secret").settings(settings).build();
+      assertThat(client.authenticate()).isTrue();
+      List<IdpUser> users = client.getUsers(null);
+      assertThat(users).hasSize(20);
+      assertThat(users.get(1).getAttribute("GITLAB_USER_ID")).isEqualTo("2");
+
+      List<IdpGroup> groups = client.getGroups("%\\_GIT\\_%");
+      assertThat(groups).hasSize(5);
+      List<IdpUser> members = client.getGroupMembers(groups.get(1));
+      assertThat(members).hasSize(8);
+      assertThat(members.get(0).getAttribute("GITLAB_USER_ID")).isEqualTo("5");
+    }
+  }
+
+  @Test
+  void testErrorInjection() throws IOException {
+    try (StubServer server = StubServer.start()) {
+      StubApis.mattermost(server, 15, 1, 1);
+      RestClientSettings settings = new RestClientSettings();
+      settings.setRetryInitialBackoffMillis(1);
+      MattermostClient client = new MattermostClientBuilder(server.getUrl()).perPage(10)
+          .personalAccessToken("token").settings(settings).build();
+      server.failNext(2, 503);
+      assertThat(client.getUsers()).hasSize(15);
+      assertThat(server.getRequestCount()).isEqualTo(4);
+
+      server.errorRate(1.0, 500);
+      assertThat(client.getUsers()).isNull();
+    }
+  }
+
+  @Test
+  void testRecordAndReplay() throws IOException {
+    ByteArrayOutputStream recording = new ByteArrayOutputStream();
+    try (StubServer upstream = StubServer.start(); StubServer recorder = StubServer.start()) {
+      StubApis.gitLab(upstream, 12, 2, 4);
+      recorder.record(upstream.getUrl());
+      assertThat(createGitLabClient(recorder).getUsers(null)).hasSize(12);
+      assertThat(recorder.getRecording()).hasSize(3);
+      recorder.writeRecording(recording);
+    }
+    try (StubServer server = StubServer.start()) {
+      server.replay(new ByteArrayInputStream(recording.toByteArray()));
+      assertThat(createGitLabClient(server).getUsers(null)).hasSize(12).extracting(GLUser::getUsername)
+          .endsWith("user12");
+    }
+  }
+
+  private GitLabClient createGitLabClient(StubServer server) {
+    return new GitLabClientBuilder(server.getUrl()).perPage(5).personalAccessToken("token")
+        .settings(new RestClientSettings()).build();
+  }
+}